@@ -21,6 +21,7 @@ package nya.miku.wishmaster.api;
 import java.io.OutputStream;
 
 import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.api.interfaces.PostsStreamListener;
 import nya.miku.wishmaster.api.interfaces.ProgressListener;
 import nya.miku.wishmaster.api.models.BoardModel;
 import nya.miku.wishmaster.api.models.CaptchaModel;
@@ -136,7 +137,9 @@ public interface ChanModule {
      * В случае, если список каждый раз загружается с нуля (а не только последние посты), рекомендуется использовать метод
      * {@link ChanModels#mergePostsLists(java.util.List, java.util.List)} для объединения старого и нового списков (если старый список не равен null),
      * таким образом не будут потеряны удалённые посты (которые присутствовали в старом списке, но отсутствуют в новом),
-     * к ним лишь будет добавлена отметка о том, что сообщение удалено.
+     * к ним лишь будет добавлена отметка о том, что сообщение удалено.<br>
+     * Если listener является {@link PostsStreamListener}, модуль может передавать ему посты по мере разбора страницы
+     * (поддержка необязательна, такие модули отмечаются интерфейсом {@link nya.miku.wishmaster.api.interfaces.PostsStreamingModule}).
      * @param boardName название доски (напр, "b", "int")
      * @param threadNumber номер треда
      * @param listener интерфейс отслеживания прогресса (может принимать null)
@@ -18,11 +18,16 @@
 
 package nya.miku.wishmaster.api.interfaces;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Интерфейс задачи, которая может быть отменена.<br>
  * Задачу можно отменить методом {@link #cancel()}.<br>
  * Фоновая задача регулярно проверяет значение методом {@link #isCancelled()}
- * и при получении true должна немедленно завершить работу.
+ * и при получении true должна немедленно завершить работу.<br>
+ * Задачи {@link BaseCancellableTask} также уведомляют об отмене слушателей ({@link CancelListener}),
+ * что позволяет сразу прервать блокирующие операции (например, HTTP-запрос в процессе соединения или чтения).
  * @author miku-nyan
  *
  */
@@ -52,10 +57,20 @@ public interface CancellableTask {
      */
     public static class BaseCancellableTask implements CancellableTask {
         private volatile boolean cancelled = false;
+        private List<CancelListener> listeners = null;
         
         @Override
         public void cancel() {
-            cancelled = true;
+            List<CancelListener> toNotify;
+            synchronized (this) {
+                if (cancelled) return;
+                cancelled = true;
+                toNotify = listeners;
+                listeners = null;
+            }
+            if (toNotify != null) {
+                for (CancelListener listener : toNotify) listener.onCancel();
+            }
         }
 
         @Override
@@ -63,5 +78,36 @@ public interface CancellableTask {
             return cancelled;
         }
         
+        /**
+         * Добавить слушателя отмены. Если задача уже отменена, слушатель будет вызван сразу (в текущем потоке).
+         */
+        public void addCancelListener(CancelListener listener) {
+            synchronized (this) {
+                if (!cancelled) {
+                    if (listeners == null) listeners = new ArrayList<CancelListener>(2);
+                    listeners.add(listener);
+                    return;
+                }
+            }
+            listener.onCancel();
+        }
+        
+        /**
+         * Удалить слушателя отмены
+         */
+        public synchronized void removeCancelListener(CancelListener listener) {
+            if (listeners != null) listeners.remove(listener);
+        }
+        
+    }
+    
+    /**
+     * Слушатель отмены задачи {@link BaseCancellableTask}
+     * @author miku-nyan
+     *
+     */
+    public interface CancelListener {
+        /** Вызывается в потоке, отменившем задачу, сразу после отмены. Не должен выполнять длительных операций. */
+        void onCancel();
     }
 }
@@ -0,0 +1,39 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *     
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.api.interfaces;
+
+import nya.miku.wishmaster.api.models.PostModel;
+
+/**
+ * Интерфейс отслеживания загрузки списка постов, с передачей постов по мере разбора страницы.<br>
+ * Передаётся в {@link nya.miku.wishmaster.api.ChanModule#getPostsList} вместо обычного {@link ProgressListener}.
+ * Модули, которые не поддерживают потоковую передачу, используют объект как обычный {@link ProgressListener},
+ * в этом случае посты будут получены только из результата метода.
+ * @author miku-nyan
+ *
+ */
+public interface PostsStreamListener extends ProgressListener {
+    /**
+     * Вызывается в потоке загрузки, когда разобрана очередная часть постов треда.
+     * Части передаются по порядку следования постов на странице, до объединения со старым списком.
+     * Переданные объекты войдут в результат {@link nya.miku.wishmaster.api.ChanModule#getPostsList}, изменять их нельзя.
+     * @param posts очередные посты
+     */
+    public void onPostsParsed(PostModel[] posts);
+}
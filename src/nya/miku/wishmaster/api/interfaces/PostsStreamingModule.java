@@ -0,0 +1,30 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *     
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.api.interfaces;
+
+/**
+ * Отметка модуля ({@link nya.miku.wishmaster.api.ChanModule}), который передаёт посты {@link PostsStreamListener}
+ * по мере разбора страницы при загрузке треда.<br>
+ * Только для таких модулей загрузчик страниц заранее получает модель доски, чтобы показывать посты до завершения загрузки;
+ * для остальных модулей модель доски загружается один раз, после списка постов.
+ * @author miku-nyan
+ *
+ */
+public interface PostsStreamingModule {
+}
@@ -70,4 +70,8 @@ public class PostModel implements Serializable {
     
     /** Отметка об удалении (должно принимать true, если на самом деле пост уже удалён). */
     @Tag(12) public boolean deleted;
+    
+    /** Отпечаток (длина и хэш) исходного текста поста на странице, используется парсерами при обновлении,
+     *  чтобы не разбирать неизменившиеся посты повторно. 0, если неизвестен. Не сохраняется. */
+    public transient long sourceFingerprint;
 }
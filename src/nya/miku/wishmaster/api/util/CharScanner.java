@@ -0,0 +1,248 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.api.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Буферизованное чтение символов для потоковых парсеров HTML.<br>
+ * В отличие от {@link java.io.BufferedReader}, методы не синхронизированы (объект используется одним парсером),
+ * поиск последовательностей символов выполняется сразу по буферу, а прочитанные символы копируются в StringBuilder блоками.
+ * Кодировка потока задаётся явно (по умолчанию UTF-8), а не берётся из настроек платформы.
+ * @author miku-nyan
+ *
+ */
+public class CharScanner extends Reader {
+    /** кодировка по умолчанию */
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private static final int BUFFER_SIZE = 8192;
+    
+    private final Reader in;
+    private char[] buf = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int count = 0;
+    
+    /** подсчёт отпечатка: включён ли, начало ещё не учтённой части буфера, длина и хэш учтённых символов */
+    private boolean fingerprinting = false;
+    private int fingerprintFrom;
+    private int fingerprintLength;
+    private long fingerprintHash;
+    
+    /**
+     * Конструктор
+     * @param in поток
+     * @param charset кодировка потока
+     */
+    public CharScanner(InputStream in, Charset charset) {
+        this(new InputStreamReader(in, charset));
+    }
+    
+    /**
+     * Конструктор, поток в кодировке UTF-8
+     * @param in поток
+     */
+    public CharScanner(InputStream in) {
+        this(in, UTF_8);
+    }
+    
+    /**
+     * Конструктор
+     * @param in Reader, из которого символы читаются блоками размером с буфер
+     */
+    public CharScanner(Reader in) {
+        this.in = in;
+    }
+    
+    /** заполнить буфер, если все символы из него прочитаны; false, если достигнут конец потока */
+    private boolean fill() throws IOException {
+        if (pos < count) return true;
+        if (fingerprinting) updateFingerprint(count);
+        int n;
+        do {
+            n = in.read(buf, 0, buf.length);
+        } while (n == 0);
+        pos = 0;
+        fingerprintFrom = 0;
+        count = n == -1 ? 0 : n;
+        return n != -1;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        if (pos >= count && !fill()) return -1;
+        return buf[pos++];
+    }
+    
+    /**
+     * Читает символы в массив. В отличие от общего контракта {@link Reader},
+     * меньше len символов возвращается только в конце потока.
+     */
+    @Override
+    public int read(char[] buffer, int offset, int len) throws IOException {
+        int read = 0;
+        while (read < len && fill()) {
+            int n = Math.min(len - read, count - pos);
+            System.arraycopy(buf, pos, buffer, offset + read, n);
+            pos += n;
+            read += n;
+        }
+        return read == 0 && len > 0 ? -1 : read;
+    }
+    
+    /**
+     * Пропустить (прочитать без сохранения) все символы до заданной последовательности включительно
+     * @param sequence последовательность символов
+     * @return true, если последовательность найдена, false, если достигнут конец потока
+     */
+    public boolean skipUntilSequence(char[] sequence) throws IOException {
+        return scan(sequence, null);
+    }
+    
+    /**
+     * Прочитать все символы до заданной последовательности (последовательность читается, но не сохраняется)
+     * @param sequence последовательность символов
+     * @param out StringBuilder, в конец которого будут добавлены прочитанные символы
+     * @return true, если последовательность найдена, false, если достигнут конец потока (в out добавлены все символы до конца)
+     */
+    public boolean readUntilSequence(char[] sequence, StringBuilder out) throws IOException {
+        return scan(sequence, out);
+    }
+    
+    private boolean scan(char[] sequence, StringBuilder out) throws IOException {
+        int len = sequence.length;
+        if (len == 0) return true;
+        int matched = 0;
+        while (fill()) {
+            char[] buf = this.buf;
+            int start = pos;
+            int end = count;
+            for (int i=start; i<end; ++i) {
+                char ch = buf[i];
+                if (ch == sequence[matched]) {
+                    if (++matched == len) {
+                        pos = i + 1;
+                        if (out != null) {
+                            out.append(buf, start, pos - start);
+                            out.setLength(out.length() - len);
+                        }
+                        return true;
+                    }
+                } else {
+                    if (matched != 0) matched = ch == sequence[0] ? 1 : 0;
+                }
+            }
+            if (out != null) out.append(buf, start, end - start);
+            pos = end;
+        }
+        return false;
+    }
+    
+    /**
+     * Прочитать символы до первого вхождения любой из последовательностей автомата (включительно)
+     * @param matcher автомат поиска последовательностей
+     * @param out StringBuilder, в конец которого будут добавлены прочитанные символы, включая найденную последовательность
+     * (может принимать null, тогда символы не сохраняются)
+     * @return номер найденной последовательности (см. {@link SequenceMatcher#getMatch(int)}), или -1, если достигнут конец потока
+     */
+    public int readUntilMatch(SequenceMatcher matcher, StringBuilder out) throws IOException {
+        int state = SequenceMatcher.INITIAL_STATE;
+        while (fill()) {
+            char[] buf = this.buf;
+            int start = pos;
+            int end = count;
+            for (int i=start; i<end; ++i) {
+                state = matcher.next(state, buf[i]);
+                int found = matcher.getMatch(state);
+                if (found != -1) {
+                    pos = i + 1;
+                    if (out != null) out.append(buf, start, pos - start);
+                    return found;
+                }
+            }
+            if (out != null) out.append(buf, start, end - start);
+            pos = end;
+        }
+        return -1;
+    }
+    
+    /**
+     * Начать подсчёт отпечатка (длины и хэша) читаемых символов
+     */
+    public void startFingerprint() {
+        fingerprinting = true;
+        fingerprintFrom = pos;
+        fingerprintLength = 0;
+        fingerprintHash = 0;
+    }
+    
+    /**
+     * Закончить подсчёт отпечатка
+     * @return отпечаток символов, прочитанных после вызова {@link #startFingerprint()} (не равен 0),
+     * или 0, если подсчёт не был начат
+     */
+    public long finishFingerprint() {
+        if (!fingerprinting) return 0;
+        updateFingerprint(pos);
+        fingerprinting = false;
+        long fingerprint = fingerprintHash * 0x9E3779B97F4A7C15L + fingerprintLength;
+        return fingerprint != 0 ? fingerprint : 1;
+    }
+    
+    private void updateFingerprint(int end) {
+        char[] buf = this.buf;
+        long hash = fingerprintHash;
+        for (int i=fingerprintFrom; i<end; ++i) hash = hash * 1099511628211L + buf[i];
+        fingerprintHash = hash;
+        fingerprintLength += end - fingerprintFrom;
+        fingerprintFrom = end;
+    }
+    
+    /**
+     * Вернуть символы в поток, они будут прочитаны снова перед остальными символами.
+     * Если идёт подсчёт отпечатка, возвращённые символы будут учтены повторно при чтении.
+     * @param chars символы
+     */
+    public void unread(StringBuilder chars) {
+        int len = chars.length();
+        if (len == 0) return;
+        if (fingerprinting) updateFingerprint(pos);
+        if (len <= pos) {
+            pos -= len;
+        } else {
+            int remaining = count - pos;
+            char[] newBuf = remaining + len > buf.length ? new char[remaining + len] : buf;
+            System.arraycopy(buf, pos, newBuf, len, remaining);
+            buf = newBuf;
+            pos = 0;
+            count = remaining + len;
+        }
+        chars.getChars(0, len, buf, pos);
+        fingerprintFrom = pos;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
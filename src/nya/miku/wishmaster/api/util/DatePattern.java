@@ -0,0 +1,382 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.api.util;
+
+import java.text.DateFormatSymbols;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Разбор дат имиджборд по шаблону (замена общих статических объектов {@link java.text.SimpleDateFormat} в парсерах).<br>
+ * Шаблон компилируется один раз в конструкторе, объект неизменяемый и может использоваться одновременно из нескольких потоков.
+ * Разбор не создаёт объектов Date и Calendar, результат - время в миллисекундах.<br>
+ * Поддерживаемые символы шаблона (как в SimpleDateFormat):
+ * <ul>
+ * <li>y - год (yy - двузначный, век выбирается как в SimpleDateFormat)</li>
+ * <li>M - месяц (M, MM - число, MMM и длиннее - название месяца)</li>
+ * <li>d - день месяца, H - час (0-23), h - час (1-12, 12 считается как 0), m - минуты, s - секунды, S - миллисекунды</li>
+ * <li>E - день недели (любое слово из букв, значение не проверяется)</li>
+ * <li>'текст' - текст без изменений, [...] - необязательная часть шаблона</li>
+ * </ul>
+ * Пробел в шаблоне соответствует любому количеству (в том числе нулю) пробельных символов.
+ * Пробелы в начале и конце строки пропускаются, текст после конца шаблона игнорируется (как в {@link java.text.DateFormat#parse(String)}).<br>
+ * Если шаблон содержит другие символы (например, шаблон задан пользователем), разбор выполняется через {@link SimpleDateFormat}
+ * (синхронизированно, без поддержки необязательных частей).
+ * @author miku-nyan
+ *
+ */
+public class DatePattern {
+    /** результат разбора, если строка не соответствует шаблону */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final String[] ENGLISH_MONTHS = {
+        "January", "February", "March", "April", "May", "June",
+        "July", "August", "September", "October", "November", "December",
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+    private static final int LITERAL = 0;
+    private static final int OPTIONAL = 1;
+    private static final int YEAR = 2;
+    private static final int MONTH = 3;
+    private static final int MONTH_NAME = 4;
+    private static final int DAY = 5;
+    private static final int HOUR_OF_DAY = 6;
+    private static final int HOUR = 7;
+    private static final int MINUTE = 8;
+    private static final int SECOND = 9;
+    private static final int MILLISECOND = 10;
+    private static final int WEEKDAY = 11;
+    private static final int UNSUPPORTED = -1;
+
+    /** индексы значений полей во время разбора */
+    private static final int F_YEAR = 0, F_MONTH = 1, F_DAY = 2, F_HOUR = 3, F_MINUTE = 4, F_SECOND = 5, F_MILLISECOND = 6;
+    private static final int[] FIELD_INDEX = { -1, -1, F_YEAR, F_MONTH, F_MONTH, F_DAY, F_HOUR, F_HOUR, F_MINUTE, F_SECOND, F_MILLISECOND, -1 };
+
+    private final String pattern;
+    private final TimeZone timeZone;
+    private final int rawOffset;
+    private final boolean fixedOffset;
+    private final int centuryStartYear;
+    private final String[] monthNames;
+
+    private final int[] kinds;
+    /** для числовых полей - максимальное количество цифр, для необязательной части - индекс элемента после её конца */
+    private final int[] args;
+    /** для числовых полей - количество символов в шаблоне */
+    private final int[] counts;
+    private final String[] literals;
+    /** разбор через SimpleDateFormat, если шаблон содержит неподдерживаемые символы, иначе null */
+    private final SimpleDateFormat fallback;
+
+    /**
+     * Конструктор, названия месяцев на английском
+     * @param pattern шаблон
+     * @param timeZone часовой пояс дат
+     */
+    public DatePattern(String pattern, TimeZone timeZone) {
+        this(pattern, timeZone, null);
+    }
+
+    /**
+     * Конструктор
+     * @param pattern шаблон
+     * @param timeZone часовой пояс дат
+     * @param monthNames названия месяцев (12 или кратно 12: каждые 12 - отдельный вариант названий), null - на английском
+     */
+    public DatePattern(String pattern, TimeZone timeZone, String[] monthNames) {
+        if (monthNames != null && (monthNames.length == 0 || monthNames.length % 12 != 0))
+            throw new IllegalArgumentException("month names count must be a multiple of 12");
+        this.pattern = pattern;
+        this.timeZone = (TimeZone) timeZone.clone();
+        this.rawOffset = timeZone.getRawOffset();
+        this.fixedOffset = isFixedOffset(timeZone);
+        this.centuryStartYear = Calendar.getInstance().get(Calendar.YEAR) - 80;
+        this.monthNames = monthNames != null ? monthNames.clone() : ENGLISH_MONTHS;
+
+        ArrayList<int[]> elements = new ArrayList<int[]>();
+        ArrayList<String> literalsList = new ArrayList<String>();
+        ArrayList<Integer> openOptionals = new ArrayList<Integer>();
+        StringBuilder literal = new StringBuilder();
+        int len = pattern.length();
+        int i = 0;
+        boolean unsupported = false;
+        while (i < len) {
+            char c = pattern.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                int count = 1;
+                while (i + count < len && pattern.charAt(i + count) == c) ++count;
+                i += count;
+                int kind = getKind(c, count);
+                if (kind == UNSUPPORTED) {
+                    unsupported = true;
+                    break;
+                }
+                addLiteral(elements, literalsList, literal);
+                elements.add(new int[] { kind, count });
+            } else if (c == '\'') {
+                int end = pattern.indexOf('\'', i + 1);
+                if (end == -1) throw new IllegalArgumentException("unterminated quote in pattern: " + pattern);
+                if (end == i + 1) literal.append('\''); else literal.append(pattern, i + 1, end);
+                i = end + 1;
+            } else if (c == '[') {
+                addLiteral(elements, literalsList, literal);
+                openOptionals.add(Integer.valueOf(elements.size()));
+                elements.add(new int[] { OPTIONAL, 0 });
+                ++i;
+            } else if (c == ']') {
+                if (openOptionals.isEmpty()) throw new IllegalArgumentException("unmatched ] in pattern: " + pattern);
+                addLiteral(elements, literalsList, literal);
+                int start = openOptionals.remove(openOptionals.size() - 1).intValue();
+                elements.get(start)[1] = elements.size();
+                ++i;
+            } else {
+                literal.append(c);
+                ++i;
+            }
+        }
+        if (unsupported) {
+            fallback = createFallback(pattern, this.timeZone, monthNames);
+            kinds = null;
+            args = null;
+            counts = null;
+            literals = null;
+            return;
+        }
+        fallback = null;
+        if (!openOptionals.isEmpty()) throw new IllegalArgumentException("unmatched [ in pattern: " + pattern);
+        addLiteral(elements, literalsList, literal);
+
+        int count = elements.size();
+        kinds = new int[count];
+        args = new int[count];
+        counts = new int[count];
+        literals = new String[count];
+        int literalIndex = 0;
+        for (int j=0; j<count; ++j) {
+            int[] element = elements.get(j);
+            kinds[j] = element[0];
+            if (kinds[j] == LITERAL) {
+                literals[j] = literalsList.get(literalIndex++);
+            } else if (kinds[j] == OPTIONAL) {
+                args[j] = element[1];
+            } else {
+                counts[j] = element[1];
+            }
+        }
+        //числовое поле вплотную перед другим числовым полем занимает ровно столько цифр, сколько символов в шаблоне
+        for (int j=0; j<count; ++j) {
+            if (isNumeric(kinds[j])) args[j] = j + 1 < count && isNumeric(kinds[j + 1]) ? counts[j] : 9;
+        }
+    }
+
+    /** смещение постоянно только у часовых поясов вида GMT+hh:mm (у поясов без летнего времени смещение могло меняться раньше) */
+    private static boolean isFixedOffset(TimeZone timeZone) {
+        String id = timeZone.getID();
+        return id.equals("UTC") || id.equals("GMT") || id.startsWith("GMT+") || id.startsWith("GMT-");
+    }
+
+    private static SimpleDateFormat createFallback(String pattern, TimeZone timeZone, String[] monthNames) {
+        DateFormatSymbols symbols = new DateFormatSymbols(Locale.US);
+        if (monthNames != null) {
+            symbols.setMonths(copyMonthNames(monthNames, 0));
+            if (monthNames.length >= 24) symbols.setShortMonths(copyMonthNames(monthNames, 12));
+        }
+        SimpleDateFormat format = new SimpleDateFormat(pattern, symbols);
+        format.setTimeZone(timeZone);
+        return format;
+    }
+
+    private static String[] copyMonthNames(String[] monthNames, int from) {
+        String[] result = new String[12];
+        System.arraycopy(monthNames, from, result, 0, 12);
+        return result;
+    }
+
+    private static void addLiteral(ArrayList<int[]> elements, ArrayList<String> literalsList, StringBuilder literal) {
+        if (literal.length() == 0) return;
+        elements.add(new int[] { LITERAL, 0 });
+        literalsList.add(literal.toString());
+        literal.setLength(0);
+    }
+
+    private static int getKind(char c, int count) {
+        switch (c) {
+            case 'y': return YEAR;
+            case 'M': return count <= 2 ? MONTH : MONTH_NAME;
+            case 'd': return DAY;
+            case 'H': return HOUR_OF_DAY;
+            case 'h': return HOUR;
+            case 'm': return MINUTE;
+            case 's': return SECOND;
+            case 'S': return MILLISECOND;
+            case 'E': return WEEKDAY;
+            default: return UNSUPPORTED;
+        }
+    }
+
+    private static boolean isNumeric(int kind) {
+        return kind != LITERAL && kind != OPTIONAL && kind != MONTH_NAME && kind != WEEKDAY;
+    }
+
+    /**
+     * Разобрать дату
+     * @param text строка
+     * @return время в миллисекундах (UTC), или {@link #INVALID}, если строка не соответствует шаблону
+     */
+    public long parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Разобрать дату из части строки
+     * @param text строка (например, буфер парсера)
+     * @param start индекс начала даты
+     * @param end индекс конца даты (не включительно)
+     * @return время в миллисекундах (UTC), или {@link #INVALID}, если строка не соответствует шаблону
+     */
+    public long parse(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) ++start;
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) --end;
+        if (fallback != null) return parseFallback(text.subSequence(start, end).toString());
+        int[] fields = { 1970, 1, 1, 0, 0, 0, 0 };
+        if (parseElements(text, start, end, 0, kinds.length, fields) < 0) return INVALID;
+
+        int month = fields[F_MONTH];
+        int day = fields[F_DAY];
+        if (month < 1 || month > 12 || day < 1 || day > 31 || fields[F_HOUR] > 23 || fields[F_MINUTE] > 59 || fields[F_SECOND] > 60)
+            return INVALID;
+        long local = daysFromCivil(fields[F_YEAR], month, day) * 86400000L +
+                fields[F_HOUR] * 3600000L + fields[F_MINUTE] * 60000L + fields[F_SECOND] * 1000L + fields[F_MILLISECOND];
+        if (fixedOffset) return local - rawOffset;
+        int offset = timeZone.getOffset(local - rawOffset);
+        return local - timeZone.getOffset(local - offset);
+    }
+
+    private long parseFallback(String text) {
+        Date date;
+        synchronized (fallback) {
+            date = fallback.parse(text, new ParsePosition(0));
+        }
+        return date != null ? date.getTime() : INVALID;
+    }
+
+    /** разобрать элементы шаблона [from, to), возвращает позицию в строке после разобранного текста или -1 */
+    private int parseElements(CharSequence text, int pos, int end, int from, int to, int[] fields) {
+        for (int i=from; i<to; ++i) {
+            int kind = kinds[i];
+            switch (kind) {
+                case LITERAL:
+                    pos = matchLiteral(text, pos, end, literals[i]);
+                    break;
+                case OPTIONAL:
+                    int optionalEnd = parseElements(text, pos, end, i + 1, args[i], fields);
+                    if (optionalEnd >= 0) pos = optionalEnd;
+                    i = args[i] - 1;
+                    break;
+                case MONTH_NAME:
+                    pos = matchMonthName(text, pos, end, fields);
+                    break;
+                case WEEKDAY:
+                    int wordStart = pos;
+                    while (pos < end && Character.isLetter(text.charAt(pos))) ++pos;
+                    if (pos == wordStart) pos = -1;
+                    break;
+                default:
+                    int numberStart = pos;
+                    int limit = Math.min(end, pos + args[i]);
+                    int value = 0;
+                    while (pos < limit) {
+                        char c = text.charAt(pos);
+                        if (c < '0' || c > '9') break;
+                        value = value * 10 + (c - '0');
+                        ++pos;
+                    }
+                    if (pos == numberStart) return -1;
+                    if (kind == YEAR && counts[i] <= 2 && pos - numberStart == 2) {
+                        value += centuryStartYear / 100 * 100;
+                        if (value < centuryStartYear) value += 100;
+                    } else if (kind == HOUR && value == 12) {
+                        value = 0;
+                    }
+                    fields[FIELD_INDEX[kind]] = value;
+            }
+            if (pos < 0) return -1;
+        }
+        return pos;
+    }
+
+    private static int matchLiteral(CharSequence text, int pos, int end, String literal) {
+        for (int i=0, len=literal.length(); i<len; ++i) {
+            char c = literal.charAt(i);
+            if (c == ' ') {
+                while (pos < end && Character.isWhitespace(text.charAt(pos))) ++pos;
+            } else {
+                if (pos >= end || text.charAt(pos) != c) return -1;
+                ++pos;
+            }
+        }
+        return pos;
+    }
+
+    private int matchMonthName(CharSequence text, int pos, int end, int[] fields) {
+        int bestLength = 0;
+        int bestMonth = -1;
+        for (int i=0; i<monthNames.length; ++i) {
+            String name = monthNames[i];
+            int len = name.length();
+            if (len <= bestLength || pos + len > end) continue;
+            boolean matches = true;
+            for (int j=0; j<len; ++j) {
+                char a = text.charAt(pos + j);
+                char b = name.charAt(j);
+                if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                bestLength = len;
+                bestMonth = i % 12 + 1;
+            }
+        }
+        if (bestMonth == -1) return -1;
+        fields[F_MONTH] = bestMonth;
+        return pos + bestLength;
+    }
+
+    /** количество дней от 1970-01-01 до даты по григорианскому календарю */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
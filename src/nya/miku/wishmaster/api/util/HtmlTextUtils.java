@@ -0,0 +1,203 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.api.util;
+
+import org.apache.commons.lang3.text.translate.EntityArrays;
+
+/**
+ * Обработка текста из HTML (раскрытие сущностей, удаление тэгов) за один проход, без регулярных выражений.<br>
+ * Если строка не изменяется, методы возвращают тот же объект String.
+ * @author miku-nyan
+ *
+ */
+public class HtmlTextUtils {
+    private HtmlTextUtils() {}
+
+    /** размер хэш-таблицы именованных сущностей (степень двойки, больше количества сущностей HTML 4 не менее чем в 2 раза) */
+    private static final int ENTITIES_TABLE_SIZE = 1024;
+    private static final String[] ENTITY_NAMES = new String[ENTITIES_TABLE_SIZE];
+    private static final char[] ENTITY_VALUES = new char[ENTITIES_TABLE_SIZE];
+    static {
+        //те же таблицы и в том же порядке, что и в StringEscapeUtils.UNESCAPE_HTML4
+        String[][][] tables = new String[][][] {
+                EntityArrays.BASIC_UNESCAPE(), EntityArrays.ISO8859_1_UNESCAPE(), EntityArrays.HTML40_EXTENDED_UNESCAPE() };
+        for (String[][] table : tables) {
+            for (String[] entity : table) {
+                String name = entity[0].substring(1, entity[0].length() - 1); //без '&' и ';'
+                int index = hash(name, 0, name.length()) & (ENTITIES_TABLE_SIZE - 1);
+                while (ENTITY_NAMES[index] != null && !ENTITY_NAMES[index].equals(name)) index = (index + 1) & (ENTITIES_TABLE_SIZE - 1);
+                if (ENTITY_NAMES[index] == null) {
+                    ENTITY_NAMES[index] = name;
+                    ENTITY_VALUES[index] = entity[1].charAt(0);
+                }
+            }
+        }
+    }
+
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i=start; i<end; ++i) h = 31 * h + s.charAt(i);
+        return h ^ (h >>> 16);
+    }
+
+    /** найти именованную сущность, возвращает позицию в таблице или -1 */
+    private static int findEntity(CharSequence s, int start, int end) {
+        int len = end - start;
+        int index = hash(s, start, end) & (ENTITIES_TABLE_SIZE - 1);
+        String name;
+        while ((name = ENTITY_NAMES[index]) != null) {
+            if (name.length() == len) {
+                int i = 0;
+                while (i < len && name.charAt(i) == s.charAt(start + i)) ++i;
+                if (i == len) return index;
+            }
+            index = (index + 1) & (ENTITIES_TABLE_SIZE - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Раскрыть сущности HTML (аналог {@link org.apache.commons.lang3.StringEscapeUtils#unescapeHtml4(String)} с тем же результатом:
+     * именованные сущности HTML 4 и числовые сущности, только с точкой с запятой в конце).<br>
+     * В отличие от StringEscapeUtils, числовая сущность со значением больше U+10FFFF остаётся как есть, а не вызывает исключение.
+     * @param s строка (может принимать null)
+     * @return строка с раскрытыми сущностями (тот же объект, если сущностей не найдено)
+     */
+    public static String unescapeHtml(String s) {
+        if (s == null || s.indexOf('&') == -1) return s;
+        return unescapeHtml(s, 0, s.length());
+    }
+
+    /**
+     * Раскрыть сущности HTML в заданном диапазоне символов (см. {@link #unescapeHtml(String)})
+     * @param s последовательность символов
+     * @param start начало диапазона
+     * @param end конец диапазона (не включая)
+     * @return новая строка с раскрытыми сущностями
+     */
+    public static String unescapeHtml(CharSequence s, int start, int end) {
+        StringBuilder out = null;
+        int copied = start;
+        int i = start;
+        while (i < end) {
+            if (s.charAt(i) != '&') {
+                ++i;
+                continue;
+            }
+            int next = i + 1;
+            int value = -1;
+            if (next < end && s.charAt(next) == '#') {
+                //числовая сущность: &#ddd; или &#xhhh;
+                if (i < end - 2) {
+                    int digitsStart = next + 1;
+                    boolean hex = s.charAt(digitsStart) == 'x' || s.charAt(digitsStart) == 'X';
+                    if (hex) ++digitsStart;
+                    int j = digitsStart;
+                    long code = 0;
+                    boolean valid = true;
+                    for (; j < end; ++j) {
+                        char ch = s.charAt(j);
+                        int digit;
+                        if (ch >= '0' && ch <= '9') digit = ch - '0';
+                        else if (ch >= 'a' && ch <= 'f') digit = ch - 'a' + 10;
+                        else if (ch >= 'A' && ch <= 'F') digit = ch - 'A' + 10;
+                        else break;
+                        if (digit >= (hex ? 16 : 10)) valid = false;
+                        if (valid && (code = code * (hex ? 16 : 10) + digit) > Integer.MAX_VALUE) valid = false;
+                    }
+                    if (valid && j > digitsStart && j < end && s.charAt(j) == ';' && code <= Character.MAX_CODE_POINT) {
+                        value = (int) code;
+                        next = j + 1;
+                    }
+                }
+            } else {
+                //именованная сущность: &name;
+                int j = next;
+                while (j < end && isEntityNameChar(s.charAt(j))) ++j;
+                if (j > next && j < end && s.charAt(j) == ';') {
+                    int index = findEntity(s, next, j);
+                    if (index != -1) {
+                        value = ENTITY_VALUES[index];
+                        next = j + 1;
+                    }
+                }
+            }
+            if (value == -1) {
+                ++i;
+                continue;
+            }
+            if (out == null) out = new StringBuilder(end - start);
+            out.append(s, copied, i);
+            out.appendCodePoint(value);
+            i = copied = next;
+        }
+        if (out == null) return s.subSequence(start, end).toString();
+        out.append(s, copied, end);
+        return out.toString();
+    }
+
+    private static boolean isEntityNameChar(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9');
+    }
+
+    /**
+     * Удалить все тэги HTML (аналог s.replaceAll("&lt;[^&gt;]*&gt;", "")): удаляется всё от символа '&lt;' до ближайшего '&gt;'
+     * @param s строка (может принимать null)
+     * @return строка без тэгов (тот же объект, если тэгов не найдено)
+     */
+    public static String removeTags(String s) {
+        return removeTags(s, null);
+    }
+
+    /**
+     * Удалить открывающие и закрывающие тэги с заданным именем (аналог s.replaceAll("&lt;/?tag[^&gt;]*?&gt;", "")),
+     * имя сравнивается с учётом регистра
+     * @param s строка (может принимать null)
+     * @param tag имя тэга, например "span", или null, чтобы удалить все тэги
+     * @return строка без тэгов (тот же объект, если тэгов не найдено)
+     */
+    public static String removeTags(String s, String tag) {
+        if (s == null) return null;
+        int tagStart = s.indexOf('<');
+        if (tagStart == -1) return s;
+        int length = s.length();
+        StringBuilder out = null;
+        int copied = 0;
+        while (tagStart != -1) {
+            int nameStart = tagStart + 1;
+            if (tag != null) {
+                if (nameStart < length && s.charAt(nameStart) == '/') ++nameStart;
+                if (!s.startsWith(tag, nameStart)) {
+                    tagStart = s.indexOf('<', tagStart + 1);
+                    continue;
+                }
+                nameStart += tag.length();
+            }
+            int tagEnd = s.indexOf('>', nameStart);
+            if (tagEnd == -1) break;
+            if (out == null) out = new StringBuilder(length);
+            out.append(s, copied, tagStart);
+            copied = tagEnd + 1;
+            tagStart = s.indexOf('<', copied);
+        }
+        if (out == null) return s;
+        out.append(s, copied, length);
+        return out.toString();
+    }
+}
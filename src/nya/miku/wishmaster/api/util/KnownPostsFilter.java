@@ -0,0 +1,144 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.api.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import nya.miku.wishmaster.api.models.PostModel;
+import nya.miku.wishmaster.api.models.ThreadModel;
+
+/**
+ * Пропуск уже загруженных постов для потоковых парсеров страниц ({@link WakabaReader} и аналогичных).<br>
+ * Для каждого разобранного поста считается отпечаток исходного текста от номера до конца комментария
+ * ({@link PostModel#sourceFingerprint}). При повторном разборе страницы исходный текст поста с известным номером
+ * читается без разбора; если отпечаток совпал, в результат добавляется имеющийся объект, иначе прочитанные символы
+ * возвращаются в поток и пост разбирается как обычно.<br>
+ * Парсер вызывает {@link #onPostNumber(String, boolean)} после чтения номера поста, {@link #finishPost()} после чтения комментария
+ * и {@link #cancel()}, если пост оказался неполным (например, внутри поста встретились сведения о пропущенных постах).
+ * Конец исходного текста поста определяет реализация {@link #readPostSource(CharScanner, StringBuilder)}.
+ * @author miku-nyan
+ *
+ */
+public abstract class KnownPostsFilter {
+    private final CharScanner in;
+    private final StringBuilder sourceBuffer = new StringBuilder();
+    private Map<String, PostModel> knownPosts;
+    /** true, если считается отпечаток исходного текста текущего поста (от номера до конца комментария) */
+    private boolean fingerprinting;
+    
+    /**
+     * Конструктор
+     * @param in поток, из которого читает парсер
+     */
+    public KnownPostsFilter(CharScanner in) {
+        this.in = in;
+    }
+    
+    /**
+     * Задать посты, которые уже загружены (при обновлении треда).
+     * См. {@link WakabaReader#setKnownPosts(PostModel[])}
+     * @param posts загруженные ранее посты (может принимать null)
+     */
+    public void setKnownPosts(PostModel[] posts) {
+        if (posts == null) {
+            knownPosts = null;
+            return;
+        }
+        knownPosts = new HashMap<String, PostModel>(posts.length * 2);
+        for (PostModel post : posts) if (post.number != null && !post.deleted) knownPosts.put(post.number, post);
+    }
+    
+    /**
+     * Вызывается после чтения номера поста. Если пост с таким номером уже загружен и его исходный текст не изменился,
+     * текст поста пропускается (поток будет указывать на позицию после комментария), иначе начинается подсчёт отпечатка.
+     * @param number номер поста
+     * @param postDataEmpty true, если до номера не было прочитано никаких данных поста
+     * (иначе результат разбора зависит не только от текста после номера, и пост не пропускается, а отпечаток не считается)
+     * @return загруженный ранее объект, если пост пропущен, или null, если пост нужно разобрать
+     */
+    public PostModel onPostNumber(String number, boolean postDataEmpty) throws IOException {
+        if (!postDataEmpty) {
+            cancel();
+            return null;
+        }
+        PostModel knownPost = knownPosts != null ? knownPosts.get(number) : null;
+        if (knownPost != null && knownPost.sourceFingerprint != 0 && skipKnownPost(knownPost)) return knownPost;
+        fingerprinting = true;
+        in.startFingerprint();
+        return null;
+    }
+    
+    /**
+     * Закончить подсчёт отпечатка после чтения комментария
+     * @return отпечаток исходного текста поста (значение для {@link PostModel#sourceFingerprint}), или 0, если отпечаток не считался
+     */
+    public long finishPost() {
+        if (!fingerprinting) return 0;
+        fingerprinting = false;
+        return in.finishFingerprint();
+    }
+    
+    /** Прервать подсчёт отпечатка текущего поста (пост будет сохранён без отпечатка) */
+    public void cancel() {
+        if (fingerprinting) {
+            in.finishFingerprint();
+            fingerprinting = false;
+        }
+    }
+    
+    /**
+     * Прочитать исходный текст уже загруженного поста до конца комментария. Если текст не изменился (совпадает отпечаток),
+     * вернуть true, иначе вернуть прочитанные символы в поток для обычного разбора.
+     */
+    private boolean skipKnownPost(PostModel knownPost) throws IOException {
+        StringBuilder source = sourceBuffer;
+        source.setLength(0);
+        in.startFingerprint();
+        boolean complete = readPostSource(in, source);
+        long fingerprint = in.finishFingerprint();
+        if (!complete || fingerprint != knownPost.sourceFingerprint) {
+            in.unread(source);
+            source.setLength(0);
+            return false;
+        }
+        source.setLength(0);
+        return true;
+    }
+    
+    /**
+     * Прочитать исходный текст поста от текущей позиции (после номера) до конца комментария
+     * (позиции, на которой парсер вызвал бы {@link #finishPost()}).
+     * @param in поток
+     * @param out буфер, в который должны быть записаны все прочитанные символы
+     * @return true, если конец комментария найден; false, если поток закончился раньше,
+     * или текст поста нельзя пропустить целиком (тогда пост будет разобран заново)
+     */
+    protected abstract boolean readPostSource(CharScanner in, StringBuilder out) throws IOException;
+    
+    /**
+     * Учесть пропущенный пост в счётчиках треда ({@link ThreadModel#postsCount} и {@link ThreadModel#attachmentsCount},
+     * если количество вложений треда известно, т.е. не равно -1)
+     */
+    public static void countPost(ThreadModel thread, PostModel post) {
+        ++thread.postsCount;
+        if (thread.attachmentsCount >= 0 && post.attachments != null) thread.attachmentsCount += post.attachments.length;
+    }
+}
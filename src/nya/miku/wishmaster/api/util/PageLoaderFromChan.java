@@ -18,9 +18,18 @@
 
 package nya.miku.wishmaster.api.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import nya.miku.wishmaster.R;
 import nya.miku.wishmaster.api.ChanModule;
 import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.api.interfaces.PostsStreamListener;
+import nya.miku.wishmaster.api.interfaces.PostsStreamingModule;
 import nya.miku.wishmaster.api.models.PostModel;
 import nya.miku.wishmaster.api.models.ThreadModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
@@ -35,27 +44,32 @@ import android.content.res.Resources;
 /**
  * Задача-загрузчик АИБ-страниц, загружает или обновляет объект {@link SerializablePage} с чана напрямую.
  * Имплементирует {@link Runnable} и {@link CancellableTask}, может вызываться асинхронно.
+ * При отмене задачи выполняющиеся HTTP-запросы прерываются сразу.<br>
+ * Если та же страница (с тем же хэшем {@link ChanModels#hashUrlPageModel(UrlPageModel)}) уже загружается другим объектом
+ * (например, фоновым обновлением вкладок), загрузчик не выполняет повторный запрос, а дожидается результата этой загрузки и копирует его в свою страницу.
  * @author miku-nyan
  *
  */
-public class PageLoaderFromChan implements Runnable, CancellableTask {
+public class PageLoaderFromChan extends CancellableTask.BaseCancellableTask implements Runnable {
     private static final String TAG = "PageLoaderFromChan";
     
-    private volatile boolean cancelled = false;
-    
     private boolean oomFlag = false;
     
     private final SerializablePage page;
     private final PageLoaderCallback callback;
     private final ChanModule chan;
     
+    /** выполняющиеся загрузки по хэшам страниц */
+    private static final HashMap<String, Flight> flights = new HashMap<String, Flight>();
+    
     /**
      * Конструктор
      * @param page объект {@link SerializablePage}.
      * Для загрузки страницы с нуля, нужно создать новый объект типа {@link SerializablePage},
      * заполнить поле {@link SerializablePage#pageModel} и передать этот объект.
      * @param callback реализация интерфейса {@link PageLoaderCallback},
-     * его методы будут вызваны после завершения загрузки или в случае ошибки 
+     * его методы будут вызваны после завершения загрузки или в случае ошибки.
+     * Если передана реализация {@link PageLoaderStreamCallback}, при загрузке треда с нуля посты будут передаваться по мере разбора страницы
      */
     public PageLoaderFromChan(SerializablePage page, PageLoaderCallback callback, ChanModule chan) {
         this.page = page;
@@ -64,26 +78,163 @@ public class PageLoaderFromChan implements Runnable, CancellableTask {
     }
     
     @Override
-    public boolean isCancelled() {
-        return cancelled;
+    public void run() {
+        String key = getKey(page.pageModel);
+        if (key == null) {
+            deliver(load());
+            return;
+        }
+        
+        Flight flight;
+        boolean leader;
+        synchronized (flights) {
+            flight = flights.get(key);
+            leader = flight == null;
+            if (leader) flights.put(key, flight = new Flight(page));
+        }
+        
+        if (leader) {
+            try {
+                flight.error = load();
+                flight.cancelled = isCancelled();
+                deliver(flight.error);
+            } finally {
+                synchronized (flights) {
+                    flights.remove(key);
+                }
+                flight.done.countDown();
+            }
+        } else {
+            Logger.d(TAG, "joining the page loading in progress: " + key);
+            if (!await(flight.done, this)) return;
+            if (flight.cancelled) {
+                //загрузка, к которой присоединились, была отменена - загружаем сами
+                run();
+                return;
+            }
+            if (flight.error == null && flight.page != page) copyResult(flight.page);
+            deliver(flight.error);
+        }
     }
     
-    @Override
-    public void cancel() {
-        cancelled = true;
+    /**
+     * Перенести результат загрузки, к которой присоединились, в свою страницу.
+     * Посты и треды копируются (страницы не должны иметь общих массивов и объектов постов),
+     * посты треда сливаются со своим списком через {@link ChanModels#mergePostsLists(java.util.List, java.util.List)}.
+     */
+    private void copyResult(SerializablePage source) {
+        page.boardModel = source.boardModel;
+        if (source.threads != null) {
+            ThreadModel[] threads = new ThreadModel[source.threads.length];
+            for (int i=0; i<threads.length; ++i) threads[i] = copyThread(source.threads[i]);
+            page.threads = threads;
+        }
+        if (source.posts != null) {
+            if (page.pageModel.type == UrlPageModel.TYPE_THREADPAGE) {
+                //посты, отмеченные как удалённые, относятся к старому списку инициатора загрузки
+                ArrayList<PostModel> posts = new ArrayList<PostModel>(source.posts.length);
+                for (PostModel post : source.posts) if (!post.deleted) posts.add(copyPost(post));
+                page.posts = page.posts == null ? posts.toArray(new PostModel[posts.size()]) :
+                    ChanModels.mergePostsLists(Arrays.asList(page.posts), posts);
+            } else {
+                page.posts = copyPosts(source.posts);
+            }
+        }
     }
-
-    @Override
-    public void run() {
+    
+    private static ThreadModel copyThread(ThreadModel source) {
+        ThreadModel thread = new ThreadModel();
+        thread.threadNumber = source.threadNumber;
+        thread.postsCount = source.postsCount;
+        thread.attachmentsCount = source.attachmentsCount;
+        thread.posts = source.posts == null ? null : copyPosts(source.posts);
+        thread.isSticky = source.isSticky;
+        thread.isClosed = source.isClosed;
+        return thread;
+    }
+    
+    private static PostModel[] copyPosts(PostModel[] source) {
+        PostModel[] posts = new PostModel[source.length];
+        for (int i=0; i<posts.length; ++i) posts[i] = copyPost(source[i]);
+        return posts;
+    }
+    
+    private static PostModel copyPost(PostModel source) {
+        PostModel post = new PostModel();
+        post.number = source.number;
+        post.name = source.name;
+        post.subject = source.subject;
+        post.comment = source.comment;
+        post.email = source.email;
+        post.trip = source.trip;
+        post.icons = source.icons;
+        post.op = source.op;
+        post.sage = source.sage;
+        post.timestamp = source.timestamp;
+        post.parentThread = source.parentThread;
+        post.attachments = source.attachments;
+        post.deleted = source.deleted;
+        post.sourceFingerprint = source.sourceFingerprint;
+        return post;
+    }
+    
+    /**
+     * Дождаться завершения загрузки страницы с заданным хэшем, если она выполняется в данный момент
+     * (включая обработку результата загрузившим страницу объектом {@link PageLoaderCallback}).
+     * @param hash хэш страницы ({@link ChanModels#hashUrlPageModel(UrlPageModel)})
+     * @param task задача, отмена которой прервёт ожидание (может принимать null)
+     */
+    public static void awaitPendingLoad(String hash, CancellableTask task) {
+        Flight flight;
+        synchronized (flights) {
+            flight = flights.get(hash);
+        }
+        if (flight != null) await(flight.done, task);
+    }
+    
+    /** ожидание завершения, возвращает false, если задача была отменена */
+    private static boolean await(CountDownLatch latch, CancellableTask task) {
+        try {
+            while (!latch.await(100, TimeUnit.MILLISECONDS)) {
+                if (task != null && task.isCancelled()) return false;
+            }
+            return task == null || !task.isCancelled();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    private static String getKey(UrlPageModel pageModel) {
+        try {
+            return ChanModels.hashUrlPageModel(pageModel);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Загрузить страницу с чана
+     * @return null в случае успеха, иначе исключение или ошибка ({@link OutOfMemoryError})
+     */
+    private Throwable load() {
         try {
             UrlPageModel urlPage = page.pageModel;
+            boolean boardLoaded = false;
             switch (urlPage.type) {
                 case UrlPageModel.TYPE_BOARDPAGE:
                     ThreadModel[] threads = chan.getThreadsList(urlPage.boardName, urlPage.boardPage, null, this, page.threads);
                     page.threads = threads;
                     break;
                 case UrlPageModel.TYPE_THREADPAGE:
-                    PostModel[] posts = chan.getPostsList(urlPage.boardName, urlPage.threadNumber, null, this, page.posts);
+                    PostsStreamListener streamListener = null;
+                    if (page.posts == null && callback instanceof PageLoaderStreamCallback && chan instanceof PostsStreamingModule) {
+                        //модель доски нужна для показа постов до завершения загрузки
+                        page.boardModel = chan.getBoard(urlPage.boardName, null, this);
+                        boardLoaded = true;
+                        streamListener = new PostsStreamer();
+                    }
+                    PostModel[] posts = chan.getPostsList(urlPage.boardName, urlPage.threadNumber, streamListener, this, page.posts);
                     page.posts = posts;
                     break;
                 case UrlPageModel.TYPE_CATALOGPAGE:
@@ -97,38 +248,85 @@ public class PageLoaderFromChan implements Runnable, CancellableTask {
                 default:
                     throw new Exception("wrong type of board page");
             }
-            if (cancelled) return;
-            page.boardModel = chan.getBoard(urlPage.boardName, null, this);
-            if (callback != null) callback.onSuccess();
+            if (isCancelled()) return null;
+            if (!boardLoaded) page.boardModel = chan.getBoard(urlPage.boardName, null, this);
+            return null;
         } catch (Exception e) {
             Logger.e(TAG, e);
-            if (cancelled) return;
-            if (callback != null) {
-                if (e instanceof InteractiveException) {
-                    callback.onInteractiveException((InteractiveException) e);
-                } else if (e instanceof HttpRequestException) {
-                    Resources resources = MainApplication.getInstance().resources;
-                    if (((HttpRequestException) e).isSslException()) {
-                        callback.onError(resources.getString(R.string.error_ssl));
-                    } else {
-                        callback.onError(resources.getString(R.string.error_connection));
-                    }
-                } else if (e instanceof JSONException) {
-                    callback.onError(MainApplication.getInstance().resources.getString(R.string.error_parse));
-                } else {
-                    callback.onError(e.getMessage());
-                }
-            }
+            return e;
         } catch (OutOfMemoryError oom) {
             MainApplication.freeMemory();
             Logger.e(TAG, oom);
-            if (cancelled) return;
+            if (isCancelled()) return oom;
             if (!oomFlag) {
                 oomFlag = true;
-                run();
-            } else if (callback != null) {
-                callback.onError(MainApplication.getInstance().resources.getString(R.string.error_out_of_memory));
+                return load();
             }
+            return oom;
+        }
+    }
+    
+    /** передать результат загрузки объекту {@link PageLoaderCallback} */
+    private void deliver(Throwable error) {
+        if (isCancelled() || callback == null) return;
+        if (error == null) {
+            callback.onSuccess();
+        } else if (error instanceof InteractiveException) {
+            callback.onInteractiveException((InteractiveException) error);
+        } else if (error instanceof HttpRequestException) {
+            Resources resources = MainApplication.getInstance().resources;
+            if (((HttpRequestException) error).isSslException()) {
+                callback.onError(resources.getString(R.string.error_ssl));
+            } else {
+                callback.onError(resources.getString(R.string.error_connection));
+            }
+        } else if (error instanceof JSONException) {
+            callback.onError(MainApplication.getInstance().resources.getString(R.string.error_parse));
+        } else if (error instanceof OutOfMemoryError) {
+            callback.onError(MainApplication.getInstance().resources.getString(R.string.error_out_of_memory));
+        } else {
+            callback.onError(error.getMessage());
+        }
+    }
+    
+    /**
+     * Передача постов {@link PageLoaderStreamCallback} по мере разбора страницы: полученные части добавляются
+     * в {@link SerializablePage#posts} загружаемой страницы
+     */
+    private class PostsStreamer implements PostsStreamListener {
+        private final ArrayList<PostModel> streamed = new ArrayList<PostModel>();
+        
+        @Override
+        public void onPostsParsed(PostModel[] posts) {
+            if (isCancelled()) return;
+            Collections.addAll(streamed, posts);
+            page.posts = streamed.toArray(new PostModel[streamed.size()]);
+            ((PageLoaderStreamCallback) callback).onPostsParsed();
+        }
+        
+        @Override
+        public void setMaxValue(long value) {}
+        @Override
+        public void setProgress(long value) {}
+        @Override
+        public void setIndeterminate() {}
+    }
+    
+    /**
+     * Выполняющаяся загрузка страницы, к которой могут присоединиться другие загрузчики той же страницы
+     */
+    private static class Flight {
+        /** страница, в которую выполняется загрузка */
+        private final SerializablePage page;
+        /** завершение загрузки (вместе с обработкой результата загрузчиком-инициатором) */
+        private final CountDownLatch done = new CountDownLatch(1);
+        /** результат: null в случае успеха, иначе исключение или ошибка */
+        private volatile Throwable error;
+        /** загрузка была отменена инициатором */
+        private volatile boolean cancelled;
+        
+        public Flight(SerializablePage page) {
+            this.page = page;
         }
     }
     
@@ -137,4 +335,16 @@ public class PageLoaderFromChan implements Runnable, CancellableTask {
         public void onError(String message);
         public void onInteractiveException(InteractiveException e);
     }
+    
+    /**
+     * Callback с потоковой передачей постов при загрузке треда с нуля (если модуль чана это поддерживает, см. {@link PostsStreamingModule})
+     */
+    public interface PageLoaderStreamCallback extends PageLoaderCallback {
+        /**
+         * Вызывается в потоке загрузки, когда в {@link SerializablePage#posts} загружаемой страницы добавлены очередные посты
+         * (поле {@link SerializablePage#boardModel} к этому моменту уже заполнено).
+         * После завершения загрузки будет вызван {@link #onSuccess()} или {@link #onError(String)}, как обычно.
+         */
+        public void onPostsParsed();
+    }
 }
@@ -0,0 +1,155 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.api.util;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Параллельное преобразование элементов (например, JSON-объектов тредов) в модели с сохранением порядка.<br>
+ * Вызывающий поток обрабатывает элементы сам, вместе с ним работают до (количество ядер - 1) вспомогательных потоков общего пула,
+ * элементы разбираются потоками небольшими блоками по порядку, поэтому неравномерная стоимость элементов не мешает распределению.
+ * Если элементов меньше {@link #THRESHOLD}, процессор одноядерный или все потоки пула заняты, преобразование выполняется последовательно.<br>
+ * Преобразование должно быть безопасно для вызова из нескольких потоков (не изменять общих данных).
+ * @author miku-nyan
+ *
+ */
+public class ParallelMapper {
+    private ParallelMapper() {}
+
+    /** минимальное количество элементов, при котором преобразование распараллеливается */
+    public static final int THRESHOLD = 24;
+    /** количество элементов, забираемых потоком за один раз */
+    private static final int CHUNK_SIZE = 4;
+    /** минимальное количество элементов на один поток */
+    private static final int MIN_ELEMENTS_PER_THREAD = 8;
+
+    private static final int HELPER_THREADS = Math.max(Runtime.getRuntime().availableProcessors() - 1, 0);
+    private static final ThreadPoolExecutor EXECUTOR;
+    static {
+        if (HELPER_THREADS > 0) {
+            //потоки создаются по необходимости и завершаются после простоя, лишние задачи отклоняются (их выполнит вызывающий поток)
+            EXECUTOR = new ThreadPoolExecutor(0, HELPER_THREADS, 10, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ParallelMapper-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        } else {
+            EXECUTOR = null;
+        }
+    }
+
+    /**
+     * Преобразование одного элемента
+     * @param <T> тип модели
+     */
+    public interface Mapper<T> {
+        /**
+         * Преобразовать элемент
+         * @param index номер элемента
+         * @return модель
+         */
+        T map(int index) throws Exception;
+    }
+
+    /**
+     * Заполнить массив моделями элементов
+     * @param result массив, длина массива - количество элементов
+     * @param mapper преобразование элемента с заданным номером
+     * @param parallel если false, преобразование всегда выполняется последовательно в вызывающем потоке
+     * @return тот же массив result
+     * @throws Exception исключение, брошенное преобразованием (если ошибок несколько - ошибка элемента с наименьшим номером,
+     * как при последовательной обработке)
+     */
+    public static <T> T[] map(T[] result, Mapper<? extends T> mapper, boolean parallel) throws Exception {
+        int count = result.length;
+        int helpers = parallel && EXECUTOR != null && count >= THRESHOLD ? Math.min(HELPER_THREADS, count / MIN_ELEMENTS_PER_THREAD - 1) : 0;
+        if (helpers <= 0) {
+            for (int i=0; i<count; ++i) result[i] = mapper.map(i);
+            return result;
+        }
+
+        Job<T> job = new Job<T>(result, mapper);
+        int started = 0;
+        try {
+            for (; started<helpers; ++started) EXECUTOR.execute(job);
+        } catch (RejectedExecutionException e) {
+            //пул занят другими вызовами
+        }
+        job.run();
+        job.finished.acquireUninterruptibly(started + 1);
+        Throwable error = job.error;
+        if (error instanceof Exception) throw (Exception) error;
+        if (error instanceof Error) throw (Error) error;
+        return result;
+    }
+
+    private static class Job<T> implements Runnable {
+        private final T[] result;
+        private final Mapper<? extends T> mapper;
+        private final AtomicInteger next = new AtomicInteger();
+        private final Semaphore finished = new Semaphore(0);
+        /** наименьший номер элемента, на котором произошла ошибка */
+        private volatile int errorIndex = Integer.MAX_VALUE;
+        private Throwable error;
+
+        Job(T[] result, Mapper<? extends T> mapper) {
+            this.result = result;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int count = result.length;
+                int start;
+                //блоки выдаются по возрастанию, поэтому все элементы до ошибки будут обработаны
+                while ((start = next.getAndAdd(CHUNK_SIZE)) < count && start < errorIndex) {
+                    int end = Math.min(start + CHUNK_SIZE, count);
+                    for (int i=start; i<end; ++i) {
+                        try {
+                            result[i] = mapper.map(i);
+                        } catch (Throwable t) {
+                            setError(i, t);
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                finished.release();
+            }
+        }
+
+        private synchronized void setError(int index, Throwable t) {
+            if (index < errorIndex) {
+                error = t;
+                errorIndex = index;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.api.util;
+
+import java.util.Arrays;
+
+/**
+ * Поиск нескольких последовательностей символов в потоке за один проход (автомат Ахо-Корасик).<br>
+ * Автомат строится один раз и не изменяется, поэтому один объект может использоваться одновременно в нескольких потоках,
+ * текущее состояние хранит вызывающий код:
+ * <pre>
+ * int state = SequenceMatcher.INITIAL_STATE;
+ * while ((ch = in.read()) != -1) {
+ *     state = matcher.next(state, ch);
+ *     int found = matcher.getMatch(state);
+ *     if (found != -1) { ...; state = SequenceMatcher.INITIAL_STATE; }
+ * }
+ * </pre>
+ * Время обработки одного символа не зависит от количества последовательностей.
+ * @author miku-nyan
+ *
+ */
+public class SequenceMatcher {
+    /** начальное состояние (ничего не прочитано) */
+    public static final int INITIAL_STATE = 0;
+    
+    /** номер столбца таблицы переходов для символов ASCII (-1, если символ не встречается в последовательностях) */
+    private final int[] asciiColumns = new int[128];
+    /** отсортированные символы не из ASCII, встречающиеся в последовательностях */
+    private final char[] extraChars;
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[] matches;
+    
+    /**
+     * Конструктор
+     * @param sequences искомые последовательности (непустые)
+     */
+    public SequenceMatcher(char[]... sequences) {
+        //алфавит: только символы, встречающиеся в последовательностях, остальные символы возвращают автомат в начальное состояние
+        Arrays.fill(asciiColumns, -1);
+        StringBuilder extra = new StringBuilder();
+        int columns = 0;
+        int maxStates = 1;
+        for (char[] sequence : sequences) {
+            if (sequence.length == 0) throw new IllegalArgumentException("empty sequence");
+            maxStates += sequence.length;
+            for (char c : sequence) {
+                if (c < 128) {
+                    if (asciiColumns[c] == -1) asciiColumns[c] = columns++;
+                } else if (extra.indexOf(String.valueOf(c)) == -1) {
+                    extra.append(c);
+                }
+            }
+        }
+        extraChars = extra.toString().toCharArray();
+        Arrays.sort(extraChars);
+        alphabetSize = columns + extraChars.length;
+        
+        //бор
+        int[] table = new int[maxStates * alphabetSize];
+        Arrays.fill(table, -1);
+        int[] found = new int[maxStates];
+        Arrays.fill(found, -1);
+        int statesCount = 1;
+        for (int i=0; i<sequences.length; ++i) {
+            int state = INITIAL_STATE;
+            for (char c : sequences[i]) {
+                int index = state * alphabetSize + getColumn(c);
+                if (table[index] == -1) table[index] = statesCount++;
+                state = table[index];
+            }
+            if (found[state] == -1) found[state] = i;
+        }
+        
+        //суффиксные ссылки (обход в ширину), недостающие переходы берутся из состояния по суффиксной ссылке
+        int[] fail = new int[statesCount];
+        int[] queue = new int[statesCount];
+        int head = 0, tail = 0;
+        for (int c=0; c<alphabetSize; ++c) {
+            int next = table[c];
+            if (next == -1) {
+                table[c] = INITIAL_STATE;
+            } else {
+                fail[next] = INITIAL_STATE;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            if (found[state] == -1) found[state] = found[fail[state]];
+            for (int c=0; c<alphabetSize; ++c) {
+                int index = state * alphabetSize + c;
+                int next = table[index];
+                if (next == -1) {
+                    table[index] = table[fail[state] * alphabetSize + c];
+                } else {
+                    fail[next] = table[fail[state] * alphabetSize + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+        
+        transitions = table;
+        matches = found;
+    }
+    
+    private int getColumn(int ch) {
+        if (ch < 128) return ch < 0 ? -1 : asciiColumns[ch];
+        int index = Arrays.binarySearch(extraChars, (char) ch);
+        return index < 0 ? -1 : alphabetSize - extraChars.length + index;
+    }
+    
+    /**
+     * Переход автомата при чтении очередного символа
+     * @param state текущее состояние
+     * @param ch прочитанный символ
+     * @return новое состояние
+     */
+    public int next(int state, int ch) {
+        int column = getColumn(ch);
+        return column == -1 ? INITIAL_STATE : transitions[state * alphabetSize + column];
+    }
+    
+    /**
+     * Получить последовательность, которая оказывается полностью прочитана при переходе в данное состояние
+     * @param state состояние
+     * @return номер последовательности (в порядке передачи конструктору), или -1, если ни одна последовательность не прочитана
+     */
+    public int getMatch(int state) {
+        return matches[state];
+    }
+}
@@ -18,23 +18,20 @@
 
 package nya.miku.wishmaster.api.util;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 
+import nya.miku.wishmaster.api.interfaces.PostsStreamListener;
 import nya.miku.wishmaster.api.models.AttachmentModel;
 import nya.miku.wishmaster.api.models.PostModel;
 import nya.miku.wishmaster.api.models.ThreadModel;
@@ -50,13 +47,7 @@ import nya.miku.wishmaster.common.Logger;
 public class WakabaReader implements Closeable {
     private static final String TAG = "WakabaReader";
     
-    private static final class DateFormatHolder {
-        private static final DateFormat DEFAULT_WAKABA_DATEFORMAT;
-        static {
-            DEFAULT_WAKABA_DATEFORMAT = new SimpleDateFormat("yy/MM/dd(EEE)HH:mm", Locale.US);
-            DEFAULT_WAKABA_DATEFORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
-        }
-    }
+    private static final DatePattern DEFAULT_WAKABA_DATE_PATTERN = new DatePattern("yy/MM/dd(EEE)HH:mm", TimeZone.getTimeZone("UTC"));
     
     private static final Pattern EMAIL_PATTERN = Pattern.compile("<a[^>]*href=\"([^\"]*)\"[^>]*>(.*)</a>", Pattern.DOTALL);
     private static final Pattern ATTACHMENT_SIZE_PATTERN =
@@ -68,6 +59,12 @@ public class WakabaReader implements Closeable {
     
     private static final char[] BLOCKQUOTE_OPEN = "<blockquote".toCharArray();
     private static final char[] BLOCKQUOTE_CLOSE = "</blockquote>".toCharArray();
+    private static final SequenceMatcher BLOCKQUOTE_MATCHER = new SequenceMatcher(BLOCKQUOTE_OPEN, BLOCKQUOTE_CLOSE);
+    
+    /** размер первой части постов, передаваемой {@link PostsStreamListener} */
+    public static final int STREAM_FIRST_BATCH = 10;
+    /** максимальный размер части постов, передаваемой {@link PostsStreamListener} */
+    public static final int STREAM_MAX_BATCH = 200;
     
     private static final int FILTER_PAGE_END = 0;
     private static final int FILTER_THREAD_END = 1;
@@ -117,8 +114,11 @@ public class WakabaReader implements Closeable {
         ">".toCharArray()
     };
     
-    protected final Reader _in;
-    protected final DateFormat dateFormat;
+    /** автоматы поиска фильтров (FILTERS_OPEN вместе с {@link #getCustomFilters()}) для классов парсеров */
+    private static final HashMap<Class<?>, SequenceMatcher> FILTERS_MATCHERS = new HashMap<Class<?>, SequenceMatcher>();
+    
+    protected final CharScanner _in;
+    protected final DatePattern datePattern;
     
     private StringBuilder readBuffer = new StringBuilder();
     private List<ThreadModel> threads;
@@ -139,17 +139,45 @@ public class WakabaReader implements Closeable {
      *  В конце чтения поста будет записан как массив в {@link PostModel#attachments} */
     protected List<AttachmentModel> currentAttachments;
     
-    public WakabaReader(Reader reader, DateFormat dateFormat) {
-        _in = reader;
-        this.dateFormat = dateFormat != null ? dateFormat : DateFormatHolder.DEFAULT_WAKABA_DATEFORMAT;
+    /** пропуск уже загруженных постов и подсчёт отпечатков исходного текста */
+    private final KnownPostsFilter knownPostsFilter;
+    private PostsStreamListener postsListener;
+    /** количество постов текущего треда, уже переданных {@link #postsListener} */
+    private int streamedCount;
+    /** размер следующей части постов для {@link #postsListener} */
+    private int streamBatch;
+    
+    public WakabaReader(Reader reader, DatePattern datePattern) {
+        _in = reader instanceof CharScanner ? (CharScanner) reader : new CharScanner(reader);
+        knownPostsFilter = new KnownPostsFilter(_in) {
+            @Override
+            protected boolean readPostSource(CharScanner in, StringBuilder out) throws IOException {
+                if (!in.readUntilSequence(FILTERS_OPEN[FILTER_START_COMMENT], out)) return false;
+                out.append(FILTERS_OPEN[FILTER_START_COMMENT]);
+                if (!in.readUntilSequence(FILTERS_CLOSE[FILTER_START_COMMENT], out)) return false;
+                out.append(FILTERS_CLOSE[FILTER_START_COMMENT]);
+                int tagCounter = 1;
+                int found;
+                while ((found = in.readUntilMatch(BLOCKQUOTE_MATCHER, out)) != -1) {
+                    if (found == 0) {
+                        ++tagCounter;
+                    } else {
+                        --tagCounter;
+                        if (tagCounter == 0) return true;
+                    }
+                }
+                return false;
+            }
+        };
+        this.datePattern = datePattern != null ? datePattern : DEFAULT_WAKABA_DATE_PATTERN;
     }
     
     public WakabaReader(Reader reader) {
         this(reader, null);
     }
     
-    public WakabaReader(InputStream in, DateFormat dateFormat) {
-        this(new BufferedReader(new InputStreamReader(in)), dateFormat);
+    public WakabaReader(InputStream in, DatePattern datePattern) {
+        this(new CharScanner(in), datePattern);
     }
     
     public WakabaReader(InputStream in) {
@@ -161,6 +189,8 @@ public class WakabaReader implements Closeable {
         currentThread.postsCount = 0;
         currentThread.attachmentsCount = 0;
         postsBuf = new ArrayList<PostModel>();
+        streamedCount = 0;
+        streamBatch = STREAM_FIRST_BATCH;
     }
     
     private void initPostModel() {
@@ -171,6 +201,7 @@ public class WakabaReader implements Closeable {
     }
     
     private void finalizeThread() {
+        if (postsListener != null) streamPosts();
         if (postsBuf.size() > 0) {
             currentThread.posts = postsBuf.toArray(new PostModel[postsBuf.size()]);
             currentThread.threadNumber = currentThread.posts[0].number;
@@ -180,6 +211,44 @@ public class WakabaReader implements Closeable {
         }
     }
     
+    /**
+     * Задать посты, которые уже загружены (при обновлении треда).<br>
+     * Если на странице встречается пост с номером из этого списка и его исходный текст (от номера до конца комментария)
+     * не изменился с прошлого разбора (совпадает {@link PostModel#sourceFingerprint}), пост не разбирается,
+     * а в результат добавляется имеющийся объект. Изменённые посты, посты без отпечатка (например, загруженные из кэша)
+     * и посты, отмеченные как удалённые ({@link PostModel#deleted}), разбираются заново.
+     * Результат после {@link ChanModels#mergePostsLists(List, List)} совпадает с результатом полного разбора страницы.
+     * @param posts загруженные ранее посты (может принимать null)
+     */
+    public void setKnownPosts(PostModel[] posts) {
+        knownPostsFilter.setKnownPosts(posts);
+    }
+    
+    /**
+     * Задать объект, которому будут передаваться посты по мере разбора страницы (используется при загрузке треда).<br>
+     * Первая часть содержит {@link #STREAM_FIRST_BATCH} постов, размер каждой следующей части удваивается
+     * (до {@link #STREAM_MAX_BATCH}), оставшиеся посты передаются в конце треда.
+     * @param listener объект {@link PostsStreamListener} (может принимать null)
+     */
+    public void setPostsListener(PostsStreamListener listener) {
+        postsListener = listener;
+    }
+    
+    /** передать {@link #postsListener} разобранные посты текущего треда, которые ещё не были переданы */
+    private void streamPosts() {
+        int count = postsBuf.size() - streamedCount;
+        if (count <= 0) return;
+        PostModel[] batch = new PostModel[count];
+        String threadNumber = postsBuf.get(0).number;
+        for (int i=0; i<count; ++i) {
+            batch[i] = postsBuf.get(streamedCount + i);
+            batch[i].parentThread = threadNumber;
+        }
+        streamedCount += count;
+        streamBatch = Math.min(streamBatch * 2, STREAM_MAX_BATCH);
+        postsListener.onPostsParsed(batch);
+    }
+    
     private void finalizePost() {
         if (currentPost.number != null && currentPost.number.length() > 0) {
             ++currentThread.postsCount;
@@ -191,6 +260,7 @@ public class WakabaReader implements Closeable {
             if (currentPost.trip == null) currentPost.trip = "";
             postprocessPost(currentPost);
             postsBuf.add(currentPost);
+            if (postsListener != null && postsBuf.size() - streamedCount >= streamBatch) streamPosts();
         }
         initPostModel();
     }
@@ -214,42 +284,73 @@ public class WakabaReader implements Closeable {
     }
     
     private void readData() throws IOException {
-        int filtersCount = FILTERS_OPEN.length;
-        int[] pos = new int[filtersCount];
-        int[] len = new int[filtersCount];
-        for (int i=0; i<filtersCount; ++i) len[i] = FILTERS_OPEN[i].length;
-        
+        SequenceMatcher matcher = getFiltersMatcher();
+        int state = SequenceMatcher.INITIAL_STATE;
         int curChar;
         while ((curChar = _in.read()) != -1) {
             if (inDate) dateBuffer.append((char) curChar);
-            for (int i=0; i<filtersCount; ++i) {
-                if (curChar == FILTERS_OPEN[i][pos[i]]) {
-                    ++pos[i];
-                    if (pos[i] == len[i]) {
-                        if (i == FILTER_PAGE_END) {
-                            finalizeThread();
-                            return;
-                        }
-                        handleFilter(i);
-                        pos[i] = 0;
-                    }
-                } else {
-                    if (pos[i] != 0) pos[i] = curChar == FILTERS_OPEN[i][0] ? 1 : 0;
+            state = matcher.next(state, curChar);
+            int filter = matcher.getMatch(state);
+            if (filter != -1) {
+                if (filter == FILTER_PAGE_END) {
+                    knownPostsFilter.cancel();
+                    finalizeThread();
+                    return;
                 }
+                if (filter < FILTERS_OPEN.length) handleFilter(filter); else handleCustomFilter(filter - FILTERS_OPEN.length);
+                state = SequenceMatcher.INITIAL_STATE;
             }
             customFilters(curChar);
         }
         finalizeThread();
     }
     
+    private SequenceMatcher getFiltersMatcher() {
+        synchronized (FILTERS_MATCHERS) {
+            SequenceMatcher matcher = FILTERS_MATCHERS.get(getClass());
+            if (matcher == null) {
+                char[][] customFilters = getCustomFilters();
+                int customCount = customFilters == null ? 0 : customFilters.length;
+                char[][] filters = new char[FILTERS_OPEN.length + customCount][];
+                System.arraycopy(FILTERS_OPEN, 0, filters, 0, FILTERS_OPEN.length);
+                if (customCount > 0) System.arraycopy(customFilters, 0, filters, FILTERS_OPEN.length, customCount);
+                matcher = new SequenceMatcher(filters);
+                FILTERS_MATCHERS.put(getClass(), matcher);
+            }
+            return matcher;
+        }
+    }
+    
+    /**
+     * Дополнительные фильтры (последовательности символов), которые ищутся вместе с {@link #FILTERS_OPEN} этого класса
+     * за один проход. Когда последовательность прочитана, вызывается {@link #handleCustomFilter(int)}.<br>
+     * Набор фильтров запоминается один раз для класса, поэтому метод должен возвращать одни и те же значения для всех экземпляров.<br>
+     * Из всего множества фильтров ни для каких двух префикс одного не должен совпадать с постфиксом другого.<br>
+     * Эта реализация возвращает null (дополнительных фильтров нет).
+     */
+    protected char[][] getCustomFilters() {
+        return null;
+    }
+    
+    /**
+     * Метод вызывается, когда прочитан один из дополнительных фильтров ({@link #getCustomFilters()}).
+     * Для дальнейшего чтения можно использовать Reader напрямую ({@link #_in}),
+     * или методы {@link #readUntilSequence(char[])} и {@link #skipUntilSequence(char[])}.<br>
+     * См. пример {@link nya.miku.wishmaster.chans.cirno.Chan410IntReader}, который читает также значок флага страны
+     * (в том виде, как он реализован на борде 410chan.org/int)<br>
+     * Эта реализация не делает ничего (пустой метод).
+     * @param filterIndex номер фильтра в массиве {@link #getCustomFilters()}
+     */
+    protected void handleCustomFilter(int filterIndex) throws IOException {}
+    
     /**
      * Если требуется обрабатывать дополнительные фильтры (не заданные в этом классе), можно переопределить этот метод.
-     * Он вызывается каждый раз, когда читается один символ, пока парсер ищет очередной фильтр.<br>
+     * Он вызывается каждый раз, когда читается один символ, пока парсер ищет очередной фильтр.
+     * Поиск фиксированных последовательностей быстрее задать через {@link #getCustomFilters()} и {@link #handleCustomFilter(int)},
+     * этот метод нужен для проверок, которые нельзя свести к последовательностям символов.<br>
      * Когда нужная последовательность прочитана, для дальнейшего чтения можно использовать Reader напрямую ({@link #_in}),
      * или методы {@link #readUntilSequence(char[])} и {@link #skipUntilSequence(char[])}.<br>
      * Обрабаботанные данные можно сохранять в {@link #currentPost}, {@link #currentAttachments} и {@link #currentThread}.<br>
-     * См. также пример {@link nya.miku.wishmaster.chans.cirno.Chan410IntReader}, который читает также значок флага страны
-     * (в том виде, как он реализован на борде 410chan.org/int)<br>
      * Также, при реализации своих фильтров необходимо учитывать, что из всего множества фильтров ({@link #FILTERS_OPEN} этого класса и создаваемых)
      * ни для каких двух префикс одного не должен совпадать с постфиксом другого.<br> 
      * Эта реализация не делает ничего (пустой метод).
@@ -260,6 +361,7 @@ public class WakabaReader implements Closeable {
         if (inDate && filterIndex != FILTER_ENDDATE) dateBuffer.setLength(0);
         switch (filterIndex) {
             case FILTER_THREAD_END:
+                knownPostsFilter.cancel();
                 finalizeThread();
                 break;
             case FILTER_ATTACHMENT:
@@ -270,10 +372,12 @@ public class WakabaReader implements Closeable {
                 break;
             case FILTER_POSTNUMBER:
                 currentPost.number = readUntilSequence(FILTERS_CLOSE[filterIndex]).trim();
+                PostModel knownPost = knownPostsFilter.onPostNumber(currentPost.number, isPostDataEmpty());
+                if (knownPost != null) addKnownPost(knownPost);
                 break;
             case FILTER_SUBJECT_OP:
             case FILTER_SUBJECT:
-                currentPost.subject = StringEscapeUtils.unescapeHtml4(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
+                currentPost.subject = HtmlTextUtils.unescapeHtml(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
                 break;
             case FILTER_POSTERNAME_OP:
             case FILTER_POSTERNAME:
@@ -281,7 +385,7 @@ public class WakabaReader implements Closeable {
                 inDate = true;
                 break;
             case FILTER_TRIPCODE:
-                currentPost.trip = StringEscapeUtils.unescapeHtml4(readUntilSequence(FILTERS_CLOSE[filterIndex]).replaceAll("<[^>]*>", "")).trim();
+                currentPost.trip = HtmlTextUtils.unescapeHtml(HtmlTextUtils.removeTags(readUntilSequence(FILTERS_CLOSE[filterIndex]))).trim();
                 inDate = true;
                 break;
             case FILTER_ENDDATE:
@@ -293,16 +397,36 @@ public class WakabaReader implements Closeable {
                 dateBuffer.setLength(0);
                 break;
             case FILTER_OMITTEDPOSTS:
+                knownPostsFilter.cancel();
                 parseOmittedString(readUntilSequence(FILTERS_CLOSE[filterIndex]));
                 break;
             case FILTER_START_COMMENT:
                 skipUntilSequence(FILTERS_CLOSE[filterIndex]);
                 currentPost.comment = readPostComment();
+                currentPost.sourceFingerprint = knownPostsFilter.finishPost();
                 finalizePost();
                 break;
         }
     }
     
+    /**
+     * true, если до номера поста не было прочитано никаких его данных
+     * (тогда результат разбора поста зависит только от текста после номера)
+     */
+    private boolean isPostDataEmpty() {
+        PostModel post = currentPost;
+        return !inDate && currentAttachments.isEmpty() && post.name == null && post.subject == null && post.comment == null &&
+                post.email == null && post.trip == null && post.icons == null && !post.op && !post.sage && post.timestamp == 0;
+    }
+    
+    /** добавить в тред пропущенный (уже загруженный) пост */
+    private void addKnownPost(PostModel knownPost) {
+        KnownPostsFilter.countPost(currentThread, knownPost);
+        postsBuf.add(knownPost);
+        if (postsListener != null && postsBuf.size() - streamedCount >= streamBatch) streamPosts();
+        initPostModel();
+    }
+    
     /**
      * Метод для чтения комментария поста, вызывается после того, как был прочитан тэг &lt;blockquote&gt;.<br>
      * В этой реализации просто читаются и сохраняются все символы до того, как встретится соответствующий закрывающий &lt;/blockquote&gt;
@@ -311,34 +435,15 @@ public class WakabaReader implements Closeable {
      */
     protected String readPostComment() throws IOException {
         commentBuffer.setLength(0);
-        int len1 = BLOCKQUOTE_OPEN.length;
         int len2 = BLOCKQUOTE_CLOSE.length;
-        int pos1 = 0;
-        int pos2 = 0;
         int tagCounter = 1;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            commentBuffer.append((char) curChar);
-            
-            if (curChar == BLOCKQUOTE_OPEN[pos1]) {
-                ++pos1;
-                if (pos1 == len1) {
-                    ++tagCounter;
-                    pos1 = 0;
-                }
-            } else {
-                if (pos1 != 0) pos1 = curChar == BLOCKQUOTE_OPEN[0] ? 1 : 0;
-            }
-            
-            if (curChar == BLOCKQUOTE_CLOSE[pos2]) {
-                ++pos2;
-                if (pos2 == len2) {
-                    --tagCounter;
-                    if (tagCounter == 0) break;
-                    pos2 = 0;
-                }
+        int found;
+        while ((found = _in.readUntilMatch(BLOCKQUOTE_MATCHER, commentBuffer)) != -1) {
+            if (found == 0) {
+                ++tagCounter;
             } else {
-                if (pos2 != 0) pos2 = curChar == BLOCKQUOTE_CLOSE[0] ? 1 : 0;
+                --tagCounter;
+                if (tagCounter == 0) break;
             }
         }
         int buflen = commentBuffer.length();
@@ -443,7 +548,7 @@ public class WakabaReader implements Closeable {
             if (originalNameMatcher.find(indexEndPxSize)) {
                 String originalName = originalNameMatcher.group(1).trim();
                 if (originalName != null && originalName.length() > 0) {
-                    attachment.originalName = StringEscapeUtils.unescapeHtml4(originalName);
+                    attachment.originalName = HtmlTextUtils.unescapeHtml(originalName);
                 }
             }
         }
@@ -481,11 +586,11 @@ public class WakabaReader implements Closeable {
             currentPost.email = emailMatcher.group(1).trim();
             if (currentPost.email.startsWith("mailto:")) currentPost.email = currentPost.email.substring(7);
             if (currentPost.email.toLowerCase(Locale.US).contains("sage")) currentPost.sage = true;
-            currentPost.name = StringEscapeUtils.unescapeHtml4(emailMatcher.group(2)).trim();
+            currentPost.name = HtmlTextUtils.unescapeHtml(emailMatcher.group(2)).trim();
         } else {
-            currentPost.name = StringEscapeUtils.unescapeHtml4(raw).trim();
+            currentPost.name = HtmlTextUtils.unescapeHtml(raw).trim();
         }
-        if (currentPost.name.startsWith("<")) currentPost.name = currentPost.name.replaceAll("<[^>]*>", "");
+        if (currentPost.name.startsWith("<")) currentPost.name = HtmlTextUtils.removeTags(currentPost.name);
     }
     
     /**
@@ -493,16 +598,17 @@ public class WakabaReader implements Closeable {
      * &lt;span class="postername"&gt;, &lt;span class="commentpostername"&gt; или &lt;span class="postertrip"&gt;
      * и до закрывающегося тэга &lt;/label&gt;.<br>
      * Сохраняется в {@link #currentPost}, поле {@link PostModel#timestamp}.<br>
-     * Эта реализация пытается распарсить дату имеющимся объектом {@link DateFormat}
-     * (переданным конструктору класса или по умолчанию, если был передан null), в случае исключения выводится сообщение в лог.
+     * Эта реализация пытается распарсить дату имеющимся шаблоном {@link DatePattern}
+     * (переданным конструктору класса или по умолчанию, если был передан null), в случае ошибки выводится сообщение в лог.
      * @param date строка с датой
      */
     protected void parseDate(String date) {
         if (date.length() > 0) {
-            try {
-                currentPost.timestamp = dateFormat.parse(date).getTime();
-            } catch (Exception e) {
-                Logger.e(TAG, "cannot parse date; make sure you choose the right DateFormat for this chan", e);
+            long timestamp = datePattern.parse(date);
+            if (timestamp != DatePattern.INVALID) {
+                currentPost.timestamp = timestamp;
+            } else {
+                Logger.e(TAG, "cannot parse date '" + date + "'; make sure you choose the right DatePattern for this chan");
             }
         }
     }
@@ -512,18 +618,7 @@ public class WakabaReader implements Closeable {
      * @param sequence массив символов
      */
     protected void skipUntilSequence(char[] sequence) throws IOException {
-        int len = sequence.length;
-        if (len == 0) return;
-        int pos = 0;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            if (curChar == sequence[pos]) {
-                ++pos;
-                if (pos == len) break;
-            } else {
-                if (pos != 0) pos = curChar == sequence[0] ? 1 : 0;
-            }
-        }
+        _in.skipUntilSequence(sequence);
     }
     
     /**
@@ -532,27 +627,9 @@ public class WakabaReader implements Closeable {
      * @return строка с прочитанными (сохранёнными) символами
      */
     protected String readUntilSequence(char[] sequence) throws IOException {
-        int len = sequence.length;
-        if (len == 0) return "";
         readBuffer.setLength(0);
-        int pos = 0;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            readBuffer.append((char) curChar);
-            if (curChar == sequence[pos]) {
-                ++pos;
-                if (pos == len) break;
-            } else {
-                if (pos != 0) pos = curChar == sequence[0] ? 1 : 0;
-            }
-        }
-        int buflen = readBuffer.length();
-        if (buflen >= len) {
-            readBuffer.setLength(buflen - len);
-            return readBuffer.toString();
-        } else {
-            return "";
-        }
+        _in.readUntilSequence(sequence, readBuffer);
+        return readBuffer.toString();
     }
     
     @Override
@@ -18,8 +18,6 @@
 
 package nya.miku.wishmaster.cache;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -32,10 +30,13 @@ import java.util.concurrent.Executor;
 
 import nya.miku.wishmaster.api.ChanModule;
 import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.common.BufferPool;
 import nya.miku.wishmaster.common.IOUtils;
 import nya.miku.wishmaster.common.Logger;
 import nya.miku.wishmaster.common.MainApplication;
 import nya.miku.wishmaster.containers.ReadableContainer;
+import nya.miku.wishmaster.http.streamer.HttpStatistics;
+import nya.miku.wishmaster.http.streamer.HttpStreamer;
 import nya.miku.wishmaster.ui.downloading.DownloadingService;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -186,20 +187,19 @@ public class BitmapCache {
         try {
             Bitmap bmp = getFromCache(hash);
             if (bmp != null) return bmp;
+            BufferPool.Sink data = new BufferPool.Sink();
             try {
-                class BufOutputStream extends ByteArrayOutputStream {
-                    public BufOutputStream() {
-                        super(1024);
-                    }
-                    public InputStream toInputStream() {
-                        return new ByteArrayInputStream(buf, 0, count);
-                    }
+                HttpStreamer.getInstance().setThreadDownloadKind(HttpStatistics.KIND_THUMBNAIL);
+                try {
+                    chan.downloadFile(url, data, null, task);
+                } finally {
+                    HttpStreamer.getInstance().setThreadDownloadKind(HttpStatistics.KIND_AUTO);
                 }
-                BufOutputStream data = new BufOutputStream();
-                chan.downloadFile(url, data, null, task);
                 bmp = BitmapFactory.decodeStream(data.toInputStream());
             } catch (Exception e) {
                 Logger.e(TAG, e);
+            } finally {
+                data.recycle();
             }
             if (bmp == null || (task != null && task.isCancelled())) {
                 return null;
@@ -27,6 +27,7 @@ import java.util.ListIterator;
 import org.apache.commons.lang3.tuple.Pair;
 
 import nya.miku.wishmaster.common.Logger;
+import nya.miku.wishmaster.http.streamer.ResumableFileOutputStream;
 
 /**
  * Общий файловый кэш (LRU)
@@ -49,6 +50,10 @@ public class FileCache { //TODO database
     /*package*/ static final String TABS_FILENAME_2 = "tabsstate_2"; //не удаляется никогда
     
     private static final float PAGES_QUOTE = 0.1f;
+    /** недокачанные оригиналы ({@link ResumableFileOutputStream}), не изменявшиеся дольше этого срока, удаляются при создании кэша */
+    private static final long PARTIAL_MAX_AGE = 24 * 60 * 60 * 1000;
+    /** поддиректория для недокачанных данных загрузок в папку загрузок */
+    private static final String PARTIAL_DOWNLOADS_DIR = "downloads";
     
     private final File directory;
     private long maxSize;
@@ -65,6 +70,7 @@ public class FileCache { //TODO database
     public FileCache(File directory, long maxSize) {
         this.directory = directory;
         makeDir();
+        removeStalePartialFiles();
         calculateSize();
         setMaxSize(maxSize);
     }
@@ -161,6 +167,17 @@ public class FileCache { //TODO database
         }
     }
     
+    /**
+     * Получить директорию для недокачанных данных файлов, загружаемых в папку загрузок
+     * (см. {@link ResumableFileOutputStream#ResumableFileOutputStream(File, File)}).
+     * Данные учитываются в размере кэша и удаляются, если загрузка давно не продолжалась.
+     */
+    public synchronized File getPartialDownloadsDirectory() {
+        File dir = new File(directory, PARTIAL_DOWNLOADS_DIR);
+        if (!dir.exists() && !dir.mkdirs()) Logger.e(TAG, "Unable to create dir " + dir.getPath());
+        return dir;
+    }
+    
     private File pathToFile(String fileName) {
         return new File(directory, fileName);
     }
@@ -212,6 +229,17 @@ public class FileCache { //TODO database
         }
     }
     
+    /** удалить недокачанные данные, загрузка которых была прервана и давно не продолжалась (остальные учитываются в размере кэша) */
+    private void removeStalePartialFiles() {
+        long now = System.currentTimeMillis();
+        for (File file : allFilesOfDir(directory)) {
+            if (ResumableFileOutputStream.isPartialFile(file.getName()) && now - file.lastModified() > PARTIAL_MAX_AGE) {
+                Logger.d(TAG, "Deleting partial file " + file.getPath());
+                file.delete();
+            }
+        }
+    }
+    
     private synchronized void calculateSize() {
         size = 0;
         pagesSize = 0;
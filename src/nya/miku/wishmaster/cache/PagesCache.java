@@ -19,6 +19,7 @@
 package nya.miku.wishmaster.cache;
 
 import nya.miku.wishmaster.common.Logger;
+import nya.miku.wishmaster.ui.presentation.PresentationItemModel;
 import nya.miku.wishmaster.ui.presentation.PresentationModel;
 import android.support.v4.util.LruCache;
 
@@ -35,7 +36,7 @@ public class PagesCache {
     
     /**
      * Конструктор
-     * @param maxSize максимальный размер кэша в памяти (определение размера см. {@link PresentationModel#getSerializablePageSize})
+     * @param maxSize максимальный размер кэша в памяти (определение размера см. {@link PresentationModel#getFullSize()})
      * @param serizlizer сериализатор
      */
     public PagesCache(int maxSize, Serializer serializer) {
@@ -43,17 +44,19 @@ public class PagesCache {
         this.lru = new LruCache<String, PresentationModel>(maxSize) {
             @Override
             protected int sizeOf(String key, PresentationModel value) {
-                return value.size;
+                return value.getAccountedSize();
             }
         };
     }
     
     /**
      * Очистить LRU-кэш в памяти.
-     * Вызывать при смене темы или других параметров отображения презентационных моделей (или просто в случае нехватки памяти)
+     * Вызывать при смене темы или других параметров отображения презентационных моделей (или просто в случае нехватки памяти).
+     * Также сбрасываются кэши строк с обтеканием в элементах презентационных моделей, которые ещё используются.
      */
     public void clearLru() {
         lru.evictAll();
+        PresentationItemModel.invalidateFlowCaches();
     }
     
     /**
@@ -86,12 +89,36 @@ public class PagesCache {
             if (model == null) Logger.e(TAG, "received null object for hash: "+hash);
             return;
         }
-        lru.put(hash, model);
+        putToLru(hash, model);
         if (putToFileCache) {
             putSerializablePage(hash, model.source);
         }
     }
     
+    /**
+     * Положить модель в LRU-кэш с её текущим полным размером (с учётом строк с обтеканием, уже созданных элементами).
+     * Когда элементы создают новые строки с обтеканием, модель помещается в кэш заново с обновлённым размером.
+     */
+    private void putToLru(final String hash, final PresentationModel model) {
+        synchronized (lru) {
+            //размер, учтённый кэшем, можно менять только пока модели нет в кэше
+            lru.remove(hash);
+            model.updateAccountedSize();
+            lru.put(hash, model);
+        }
+        model.setSizeListener(new PresentationModel.SizeListener() {
+            @Override
+            public void onSizeChanged() {
+                synchronized (lru) {
+                    if (model.getAccountedSize() == model.getFullSize() || lru.get(hash) != model) return;
+                    lru.remove(hash);
+                    model.updateAccountedSize();
+                    lru.put(hash, model);
+                }
+            }
+        });
+    }
+    
     /**
      * Попытаться получить сериализованную модель страницы из кэша в памяти или файлового кэша. 
      * @param hash хэш страницы
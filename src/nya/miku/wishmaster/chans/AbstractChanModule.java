@@ -33,6 +33,7 @@ import nya.miku.wishmaster.api.models.UrlPageModel;
 import nya.miku.wishmaster.common.CryptoUtils;
 import nya.miku.wishmaster.common.Logger;
 import nya.miku.wishmaster.http.client.ExtendedHttpClient;
+import nya.miku.wishmaster.http.streamer.HostRateLimiter;
 import nya.miku.wishmaster.http.streamer.HttpRequestModel;
 import nya.miku.wishmaster.http.streamer.HttpStreamer;
 
@@ -135,6 +136,7 @@ public abstract class AbstractChanModule implements ChanModule {
                 preferences.getBoolean(getSharedKey(PREF_KEY_USE_PROXY), false),
                 preferences.getString(getSharedKey(PREF_KEY_PROXY_HOST), DEFAULT_PROXY_HOST),
                 preferences.getString(getSharedKey(PREF_KEY_PROXY_PORT), DEFAULT_PROXY_PORT));
+        initRateLimits(HttpStreamer.getInstance().getRateLimiter());
     }
     
     /**
@@ -180,6 +182,23 @@ public abstract class AbstractChanModule implements ChanModule {
      */
     protected void initHttpClient() {}
     
+    /**
+     * Метод вызывается при создании модуля, эта реализация не делает ничего (пустой метод),
+     * к хостам модуля применяются ограничения частоты запросов по умолчанию ({@link HostRateLimiter#DEFAULT_RATE}).
+     * Может быть переопределён в подклассе, например, чтобы снизить частоту запросов к небольшому серверу.
+     * @param limiter объект ограничения частоты запросов, см. {@link HostRateLimiter#setLimit(String, double, int)}
+     */
+    protected void initRateLimits(HostRateLimiter limiter) {}
+    
+    /**
+     * Разрешено ли распараллеливать преобразование JSON-объектов тредов в модели (списки тредов, каталоги),
+     * см. {@link nya.miku.wishmaster.api.util.ParallelMapper}. Эта реализация возвращает false.
+     * Может быть переопределён в подклассе, если методы преобразования модуля не изменяют общих данных.
+     */
+    protected boolean useParallelMapping() {
+        return false;
+    }
+    
     /**
      * Добавить в группу параметров (на экран/в категорию) параметр-чекбокс "игнорировать ошибки SSL"
      * @param group группа, на которую добавляется параметр
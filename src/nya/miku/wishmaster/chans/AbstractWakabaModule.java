@@ -29,6 +29,8 @@ import org.apache.http.impl.cookie.BasicClientCookieHC4;
 
 import nya.miku.wishmaster.R;
 import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.api.interfaces.PostsStreamListener;
+import nya.miku.wishmaster.api.interfaces.PostsStreamingModule;
 import nya.miku.wishmaster.api.interfaces.ProgressListener;
 import nya.miku.wishmaster.api.models.BoardModel;
 import nya.miku.wishmaster.api.models.PostModel;
@@ -55,7 +57,7 @@ import android.preference.PreferenceGroup;
  * Подробности: https://issues.apache.org/jira/browse/HTTPCLIENT-1632 */
 @SuppressWarnings("deprecation")
 
-public abstract class AbstractWakabaModule extends AbstractChanModule {
+public abstract class AbstractWakabaModule extends AbstractChanModule implements PostsStreamingModule {
     
     private static final String PREF_KEY_USE_HTTPS = "PREF_KEY_USE_HTTPS";
     private static final String PREF_KEY_CLOUDFLARE_COOKIE = "PREF_KEY_CLOUDFLARE_COOKIE";
@@ -127,6 +129,16 @@ public abstract class AbstractWakabaModule extends AbstractChanModule {
     
     protected ThreadModel[] readWakabaPage(String url, ProgressListener listener, CancellableTask task, boolean checkModified, UrlPageModel urlModel)
             throws Exception {
+        return readWakabaPage(url, listener, task, checkModified, urlModel, null);
+    }
+    
+    /**
+     * Загрузить и разобрать страницу
+     * @param knownPosts уже загруженные посты треда, которые не требуется разбирать заново (см. {@link WakabaReader#setKnownPosts(PostModel[])}),
+     * может принимать null
+     */
+    protected ThreadModel[] readWakabaPage(String url, ProgressListener listener, CancellableTask task, boolean checkModified, UrlPageModel urlModel,
+            PostModel[] knownPosts) throws Exception {
         HttpResponseModel responseModel = null;
         WakabaReader in = null;
         HttpRequestModel rqModel = HttpRequestModel.builder().setGET().setCheckIfModified(checkModified).build();
@@ -134,6 +146,8 @@ public abstract class AbstractWakabaModule extends AbstractChanModule {
             responseModel = HttpStreamer.getInstance().getFromUrl(url, rqModel, httpClient, listener, task);
             if (responseModel.statusCode == 200) {
                 in = getWakabaReader(responseModel.stream, urlModel);
+                in.setKnownPosts(knownPosts);
+                if (listener instanceof PostsStreamListener) in.setPostsListener((PostsStreamListener) listener);
                 if (task != null && task.isCancelled()) throw new Exception("interrupted");
                 return in.readWakabaPage();
             } else {
@@ -252,7 +266,7 @@ public abstract class AbstractWakabaModule extends AbstractChanModule {
         urlModel.threadNumber = threadNumber;
         String url = buildUrl(urlModel);
         
-        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, urlModel);
+        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, urlModel, oldList);
         if (threads == null) {
             return oldList;
         } else {
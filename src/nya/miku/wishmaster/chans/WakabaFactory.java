@@ -19,21 +19,17 @@
 package nya.miku.wishmaster.chans;
 
 import java.io.InputStream;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
+import java.util.TimeZone;
 
 import nya.miku.wishmaster.R;
 import nya.miku.wishmaster.api.ChanModule;
 import nya.miku.wishmaster.api.models.SimpleBoardModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
+import nya.miku.wishmaster.api.util.DatePattern;
 import nya.miku.wishmaster.api.util.WakabaReader;
 import nya.miku.wishmaster.common.Logger;
-import android.annotation.SuppressLint;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
@@ -44,32 +40,28 @@ public class WakabaFactory {
     private static final String TAG = "WakabaFactory";
     
     public static ChanModule createChanModule(SharedPreferences preferences, Resources resources, String url) {
-        return createChanModule(preferences, resources, url, (DateFormat)null);
+        return createChanModule(preferences, resources, url, (DatePattern)null);
     }
     
     public static ChanModule createChanModule(SharedPreferences preferences, Resources resources, String url, String pattern) {
-        return createChanModule(preferences, resources, url, new SimpleDateFormat(pattern, Locale.US));
+        return createChanModule(preferences, resources, url, new DatePattern(pattern, TimeZone.getDefault()));
     }
     
-    private static ChanModule createChanModule(SharedPreferences preferences, Resources resources, String url, final DateFormat df) {
+    private static ChanModule createChanModule(SharedPreferences preferences, Resources resources, String url, final DatePattern datePattern) {
         Uri uri = Uri.parse(url);
         final String name = uri.getHost();
         final boolean https = uri.getScheme() != null && uri.getScheme().equalsIgnoreCase("https");
         return new AbstractWakabaModule(preferences, resources) {
-            private final List<DateFormat> dateFormats;
+            private final List<DatePattern> datePatterns;
             {
-                dateFormats = Arrays.asList(new DateFormat[] {
-                        df,
-                        new SimpleDateFormat("yy/MM/dd(EEE)HH:mm", Locale.US),
-                        new SimpleDateFormat("EEE dd MMM yyyy HH:mm:ss", Locale.US),
-                        new SimpleDateFormat("dd.MM.yyyy HH:mm:ss", Locale.US) {
-                            private static final long serialVersionUID = 1L;
-                            public Date parse(String string) throws ParseException {
-                                return super.parse(string.replaceAll(" ?\\(.*?\\)", ""));
-                            }
-                        },
-                        new SimpleDateFormat("EEE yy/MM/dd HH:mm", Locale.US),
-                        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US)
+                TimeZone timeZone = TimeZone.getDefault();
+                datePatterns = Arrays.asList(new DatePattern[] {
+                        datePattern,
+                        new DatePattern("yy/MM/dd(EEE)HH:mm", timeZone),
+                        new DatePattern("EEE dd MMM yyyy HH:mm:ss", timeZone),
+                        new DatePattern("dd.MM.yyyy [(EEE)] HH:mm:ss", timeZone),
+                        new DatePattern("EEE yy/MM/dd HH:mm", timeZone),
+                        new DatePattern("yyyy-MM-dd HH:mm:ss", timeZone)
                 });
             }
             
@@ -112,22 +104,22 @@ public class WakabaFactory {
                 return true;
             }
             
-            @SuppressWarnings("serial")
-            @SuppressLint("SimpleDateFormat")
             @Override
             protected WakabaReader getWakabaReader(InputStream stream, UrlPageModel urlModel) {
-                return new WakabaReader(stream, new SimpleDateFormat() { // universal date format
+                return new WakabaReader(stream) {
                     @Override
-                    public Date parse(String string) throws ParseException {
-                        for (DateFormat df : dateFormats) {
-                            try {
-                                return df.parse(string);
-                            } catch (Exception e) {}
+                    protected void parseDate(String date) { // universal date format
+                        for (DatePattern pattern : datePatterns) {
+                            long timestamp = pattern == null ? DatePattern.INVALID : pattern.parse(date);
+                            if (timestamp != DatePattern.INVALID) {
+                                currentPost.timestamp = timestamp;
+                                return;
+                            }
                         }
-                        Logger.d(TAG, "couldn't parse: '"+ string + "'");
-                        return new Date(0);
+                        Logger.d(TAG, "couldn't parse: '"+ date + "'");
+                        currentPost.timestamp = 0;
                     }
-                });
+                };
             }
         };
     }
@@ -30,35 +30,30 @@ import nya.miku.wishmaster.api.models.BadgeIconModel;
  */
 public class Chan410IntReader extends Chan410Reader {
     
-    private static final char[] COUNTRY_ICON_FILTER = "<span title=\"".toCharArray();
-    private int curPos = 0;
+    private static final char[][] CUSTOM_FILTERS = new char[][] { "<span title=\"".toCharArray() };
     
     public Chan410IntReader(InputStream in) {
         super(in, DateFormats.CHAN_410_DATE_FORMAT);
     }
     
     @Override
-    protected void customFilters(int ch) throws IOException {
-        if (ch == COUNTRY_ICON_FILTER[curPos]) {
-            ++curPos;
-            if (curPos == COUNTRY_ICON_FILTER.length) {
-                BadgeIconModel iconModel = new BadgeIconModel();
-                iconModel.description = readUntilSequence("\"".toCharArray());
-                String htmlIcon = readUntilSequence("</span>".toCharArray());
-                int start, end;
-                if ((start = htmlIcon.indexOf("src=\"")) != -1 && (end = htmlIcon.indexOf('\"', start + 5)) != -1) {
-                    iconModel.source = htmlIcon.substring(start + 5, end);
-                }
-                int currentIconsCount = currentPost.icons == null ? 0 : currentPost.icons.length;
-                BadgeIconModel[] newIconsArray = new BadgeIconModel[currentIconsCount + 1];
-                for (int i=0; i<currentIconsCount; ++i) newIconsArray[i] = currentPost.icons[i];
-                newIconsArray[currentIconsCount] = iconModel;
-                currentPost.icons = newIconsArray;
-                
-                curPos = 0;
-            }
-        } else {
-            if (curPos != 0) curPos = ch == COUNTRY_ICON_FILTER[0] ? 1 : 0;
+    protected char[][] getCustomFilters() {
+        return CUSTOM_FILTERS;
+    }
+    
+    @Override
+    protected void handleCustomFilter(int filterIndex) throws IOException {
+        BadgeIconModel iconModel = new BadgeIconModel();
+        iconModel.description = readUntilSequence("\"".toCharArray());
+        String htmlIcon = readUntilSequence("</span>".toCharArray());
+        int start, end;
+        if ((start = htmlIcon.indexOf("src=\"")) != -1 && (end = htmlIcon.indexOf('\"', start + 5)) != -1) {
+            iconModel.source = htmlIcon.substring(start + 5, end);
         }
+        int currentIconsCount = currentPost.icons == null ? 0 : currentPost.icons.length;
+        BadgeIconModel[] newIconsArray = new BadgeIconModel[currentIconsCount + 1];
+        for (int i=0; i<currentIconsCount; ++i) newIconsArray[i] = currentPost.icons[i];
+        newIconsArray[currentIconsCount] = iconModel;
+        currentPost.icons = newIconsArray;
     }
 }
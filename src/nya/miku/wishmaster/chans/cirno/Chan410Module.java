@@ -40,6 +40,8 @@ import android.graphics.drawable.Drawable;
 import android.support.v4.content.res.ResourcesCompat;
 import nya.miku.wishmaster.R;
 import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.api.interfaces.PostsStreamListener;
+import nya.miku.wishmaster.api.interfaces.PostsStreamingModule;
 import nya.miku.wishmaster.api.interfaces.ProgressListener;
 import nya.miku.wishmaster.api.models.BoardModel;
 import nya.miku.wishmaster.api.models.CaptchaModel;
@@ -65,7 +67,7 @@ import nya.miku.wishmaster.lib.org_json.JSONObject;
  * Подробности: https://issues.apache.org/jira/browse/HTTPCLIENT-1632 */
 @SuppressWarnings("deprecation")
 
-public class Chan410Module extends AbstractChanModule {
+public class Chan410Module extends AbstractChanModule implements PostsStreamingModule {
     
     static final String CHAN410_NAME = "410chan.org";
     static final String CHAN410_DOMAIN = "410chan.org";
@@ -127,7 +129,8 @@ public class Chan410Module extends AbstractChanModule {
         return Chan410Boards.getBoard(shortName);
     }
     
-    private ThreadModel[] readWakabaPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified, boolean isInt)
+    private ThreadModel[] readWakabaPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified,
+            PostModel[] knownPosts, boolean isInt)
             throws Exception {
         HttpResponseModel responseModel = null;
         Chan410Reader in = null;
@@ -137,6 +140,8 @@ public class Chan410Module extends AbstractChanModule {
             if (responseModel.statusCode == 200) {
                 in = isInt ? new Chan410IntReader(responseModel.stream) : new Chan410Reader(responseModel.stream);
                 if (task != null && task.isCancelled()) throw new Exception("interrupted");
+                in.setKnownPosts(knownPosts);
+                if (listener instanceof PostsStreamListener) in.setPostsListener((PostsStreamListener) listener);
                 return in.readWakabaPage();
             } else {
                 if (responseModel.notModified()) return null;
@@ -161,7 +166,7 @@ public class Chan410Module extends AbstractChanModule {
         urlModel.boardPage = page;
         String url = buildUrl(urlModel);
         
-        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, boardName.equals("int"));
+        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, null, boardName.equals("int"));
         if (threads == null) {
             return oldList;
         } else {
@@ -179,7 +184,7 @@ public class Chan410Module extends AbstractChanModule {
         urlModel.threadNumber = threadNumber;
         String url = buildUrl(urlModel);
         
-        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, boardName.equals("int"));
+        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, oldList, boardName.equals("int"));
         if (threads == null) {
             return oldList;
         } else {
@@ -19,9 +19,9 @@
 package nya.miku.wishmaster.chans.cirno;
 
 import java.io.InputStream;
-import java.text.DateFormat;
 
 import nya.miku.wishmaster.api.models.PostModel;
+import nya.miku.wishmaster.api.util.DatePattern;
 import nya.miku.wishmaster.api.util.WakabaReader;
 
 /**
@@ -35,8 +35,8 @@ public class Chan410Reader extends WakabaReader {
         super(in, DateFormats.CHAN_410_DATE_FORMAT);
     }
     
-    public Chan410Reader(InputStream in, DateFormat dateFormat) {
-        super(in, dateFormat);
+    public Chan410Reader(InputStream in, DatePattern datePattern) {
+        super(in, datePattern);
     }
     
     @Override
@@ -33,6 +33,8 @@ import org.apache.http.message.BasicNameValuePair;
 
 import nya.miku.wishmaster.R;
 import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.api.interfaces.PostsStreamListener;
+import nya.miku.wishmaster.api.interfaces.PostsStreamingModule;
 import nya.miku.wishmaster.api.interfaces.ProgressListener;
 import nya.miku.wishmaster.api.models.BoardModel;
 import nya.miku.wishmaster.api.models.CaptchaModel;
@@ -69,7 +71,7 @@ import android.support.v4.content.res.ResourcesCompat;
  * @author miku-nyan
  *
  */
-public class CirnoModule extends AbstractChanModule {
+public class CirnoModule extends AbstractChanModule implements PostsStreamingModule {
     
     static final String IICHAN_NAME = "iichan.hk";
     static final String IICHAN_DOMAIN = "iichan.hk";
@@ -104,7 +106,8 @@ public class CirnoModule extends AbstractChanModule {
         return CirnoBoards.getBoard(shortName);
     }
     
-    private ThreadModel[] readWakabaPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified) throws Exception {
+    private ThreadModel[] readWakabaPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified,
+            PostModel[] knownPosts) throws Exception {
         HttpResponseModel responseModel = null;
         WakabaReader in = null;
         HttpRequestModel rqModel = HttpRequestModel.builder().setGET().setCheckIfModified(checkIfModified).build();
@@ -113,6 +116,8 @@ public class CirnoModule extends AbstractChanModule {
             if (responseModel.statusCode == 200) {
                 in = new WakabaReader(responseModel.stream, DateFormats.IICHAN_DATE_FORMAT);
                 if (task != null && task.isCancelled()) throw new Exception("interrupted");
+                in.setKnownPosts(knownPosts);
+                if (listener instanceof PostsStreamListener) in.setPostsListener((PostsStreamListener) listener);
                 return in.readWakabaPage();
             } else {
                 if (responseModel.notModified()) return null;
@@ -137,7 +142,7 @@ public class CirnoModule extends AbstractChanModule {
         urlModel.boardPage = page;
         String url = buildUrl(urlModel);
         
-        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null);
+        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, null);
         if (threads == null) {
             return oldList;
         } else {
@@ -155,7 +160,7 @@ public class CirnoModule extends AbstractChanModule {
         urlModel.threadNumber = threadNumber;
         String url = buildUrl(urlModel);
         
-        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null);
+        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, oldList);
         if (threads == null) {
             return oldList;
         } else {
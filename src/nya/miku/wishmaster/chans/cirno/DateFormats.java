@@ -18,43 +18,17 @@
 
 package nya.miku.wishmaster.chans.cirno;
 
-import android.annotation.SuppressLint;
-
-import java.text.DateFormat;
-import java.text.DateFormatSymbols;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 import java.util.TimeZone;
 
-@SuppressWarnings("serial")
-@SuppressLint("SimpleDateFormat")
+import nya.miku.wishmaster.api.util.DatePattern;
+
 public class DateFormats {
-    static final DateFormat IICHAN_DATE_FORMAT;
-    static final DateFormat CHAN_410_DATE_FORMAT;
-    static final DateFormat MIKUBA_DATE_FORMAT;
-    static final DateFormat NOWERE_DATE_FORMAT;
+    static final String[] RUSSIAN_MONTHS_GENITIVE = {
+        "января", "февраля", "марта", "апреля", "мая", "июня", "июля", "августа", "сентября", "октября", "ноября", "декабря" };
     
-    static {
-        DateFormatSymbols iichanSymbols = new DateFormatSymbols();
-        iichanSymbols.setShortWeekdays(new String[] { "", "Вс", "Пн", "Вт", "Ср", "Чт", "Пт", "Сб" });
-        iichanSymbols.setMonths(new String[] {
-                    "января", "февраля", "марта", "апреля", "мая", "июня", "июля", "августа", "сентября", "октября", "ноября", "декабря" });
-        IICHAN_DATE_FORMAT = new SimpleDateFormat("EEE dd MMMM yyyy HH:mm:ss", iichanSymbols);
-        IICHAN_DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT+3"));
-        
-        CHAN_410_DATE_FORMAT = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss", Locale.US) {
-            public Date parse(String string) throws ParseException {
-                return super.parse(string.replaceAll(" ?\\(.*?\\)", ""));
-            }
-        };
-        CHAN_410_DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT+3"));
-        
-        MIKUBA_DATE_FORMAT = new SimpleDateFormat("EEE dd MMM yyyy HH:mm:ss", Locale.US);
-        MIKUBA_DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT+3"));
-        
-        NOWERE_DATE_FORMAT = new SimpleDateFormat("yy/MM/dd(EEE)HH:mm", Locale.US);
-        NOWERE_DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT+3"));
-    }
+    static final DatePattern IICHAN_DATE_FORMAT =
+            new DatePattern("EEE dd MMMM yyyy HH:mm:ss", TimeZone.getTimeZone("GMT+3"), RUSSIAN_MONTHS_GENITIVE);
+    static final DatePattern CHAN_410_DATE_FORMAT = new DatePattern("dd.MM.yyyy [(EEE)] HH:mm:ss", TimeZone.getTimeZone("GMT+3"));
+    static final DatePattern MIKUBA_DATE_FORMAT = new DatePattern("EEE dd MMM yyyy HH:mm:ss", TimeZone.getTimeZone("GMT+3"));
+    static final DatePattern NOWERE_DATE_FORMAT = new DatePattern("yy/MM/dd(EEE)HH:mm", TimeZone.getTimeZone("GMT+3"));
 }
@@ -209,7 +209,7 @@ public class MikubaModule extends AbstractChanModule {
         return MIKUBA_BOARD;
     }
     
-    private ThreadModel[] readPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified) throws Exception {
+    private ThreadModel[] readPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified, PostModel[] knownPosts) throws Exception {
         HttpResponseModel responseModel = null;
         MikubaReader in = null;
         HttpRequestModel rqModel = HttpRequestModel.builder().setGET().setCheckIfModified(checkIfModified).build();
@@ -217,6 +217,7 @@ public class MikubaModule extends AbstractChanModule {
             responseModel = HttpStreamer.getInstance().getFromUrl(url, rqModel, httpClient, listener, task);
             if (responseModel.statusCode == 200) {
                 in = new MikubaReader(responseModel.stream);
+                in.setKnownPosts(knownPosts);
                 if (task != null && task.isCancelled()) throw new Exception("interrupted");
                 return in.readPage();
             } else {
@@ -252,7 +253,7 @@ public class MikubaModule extends AbstractChanModule {
     public ThreadModel[] getThreadsList(String boardName, int page, ProgressListener listener, CancellableTask task, ThreadModel[] oldList)
             throws Exception {
         String url = (useHttps() ? "https://" : "http://") + MIKUBA_DOMAIN + "/b/" + (page > 0 ? String.valueOf(page) : "");
-        ThreadModel[] threads = readPage(url, listener, task, oldList != null);
+        ThreadModel[] threads = readPage(url, listener, task, oldList != null, null);
         if (threads == null) {
             return oldList;
         } else {
@@ -265,7 +266,7 @@ public class MikubaModule extends AbstractChanModule {
             throws Exception {
         String url = (useHttps() ? "https://" : "http://") + MIKUBA_DOMAIN + "/reply/" + threadNumber;
         
-        ThreadModel[] threads = readPage(url, listener, task, oldList != null);
+        ThreadModel[] threads = readPage(url, listener, task, oldList != null, oldList);
         if (threads == null) {
             return oldList;
         } else {
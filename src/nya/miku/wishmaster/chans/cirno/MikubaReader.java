@@ -18,24 +18,22 @@
 
 package nya.miku.wishmaster.chans.cirno;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
 import nya.miku.wishmaster.api.models.AttachmentModel;
 import nya.miku.wishmaster.api.models.PostModel;
 import nya.miku.wishmaster.api.models.ThreadModel;
+import nya.miku.wishmaster.api.util.CharScanner;
+import nya.miku.wishmaster.api.util.DatePattern;
+import nya.miku.wishmaster.api.util.HtmlTextUtils;
+import nya.miku.wishmaster.api.util.KnownPostsFilter;
+import nya.miku.wishmaster.api.util.SequenceMatcher;
 import nya.miku.wishmaster.common.CryptoUtils;
 import nya.miku.wishmaster.common.Logger;
 
@@ -47,11 +45,7 @@ import nya.miku.wishmaster.common.Logger;
 public class MikubaReader implements Closeable {
     private static final String TAG = "MikubaReader";
     
-    private static final DateFormat DATEFORMAT;
-    static {
-        DATEFORMAT = new SimpleDateFormat("EEE dd MMM yyyy hh:mm:ss", Locale.US);
-        DATEFORMAT.setTimeZone(TimeZone.getTimeZone("GMT+3"));
-    }
+    private static final DatePattern DATEFORMAT = new DatePattern("EEE dd MMM yyyy hh:mm:ss", TimeZone.getTimeZone("GMT+3"));
     
     private static final char[] DATA_START = "<div id=\"page\">".toCharArray();
     
@@ -75,6 +69,8 @@ public class MikubaReader implements Closeable {
         "<blockquote".toCharArray()
     };
     
+    private static final SequenceMatcher FILTERS_MATCHER = new SequenceMatcher(FILTERS_OPEN);
+    
     private static final char[][] FILTERS_CLOSE = {
         null,
         null,
@@ -92,8 +88,9 @@ public class MikubaReader implements Closeable {
     private static final char[] OMITTED_OPEN = "<span class=\"omitted\">".toCharArray();
     
     private static final char[] OMITTED_CLOSE = "</span>".toCharArray();
+    private static final SequenceMatcher COMMENT_MATCHER = new SequenceMatcher(BLOCKQUOTE_OPEN, BLOCKQUOTE_CLOSE, OMITTED_OPEN);
     
-    private final Reader _in;
+    private final CharScanner _in;
     
     private StringBuilder readBuffer = new StringBuilder();
     private List<ThreadModel> threads;
@@ -105,9 +102,34 @@ public class MikubaReader implements Closeable {
     private StringBuilder commentBuffer = new StringBuilder();
     private StringBuilder omittedDigitsBuffer = new StringBuilder();
     private List<AttachmentModel> currentAttachments;
+    /** пропуск уже загруженных постов и подсчёт отпечатков исходного текста */
+    private final KnownPostsFilter knownPostsFilter;
     
     public MikubaReader(InputStream in) {
-        _in = new BufferedReader(new InputStreamReader(in));
+        _in = new CharScanner(in);
+        knownPostsFilter = new KnownPostsFilter(_in) {
+            @Override
+            protected boolean readPostSource(CharScanner in, StringBuilder out) throws IOException {
+                if (!in.readUntilSequence(FILTERS_OPEN[FILTER_START_COMMENT], out)) return false;
+                out.append(FILTERS_OPEN[FILTER_START_COMMENT]);
+                if (!in.readUntilSequence(FILTERS_CLOSE[FILTER_START_COMMENT], out)) return false;
+                out.append(FILTERS_CLOSE[FILTER_START_COMMENT]);
+                int tagCounter = 1;
+                int found;
+                while ((found = in.readUntilMatch(COMMENT_MATCHER, out)) != -1) {
+                    if (found == 0) {
+                        ++tagCounter;
+                    } else if (found == 1) {
+                        --tagCounter;
+                        if (tagCounter == 0) return true;
+                    } else {
+                        //посты со сведениями о пропущенных постах треда всегда разбираются заново
+                        return false;
+                    }
+                }
+                return false;
+            }
+        };
     }
     
     private void initThreadModel() {
@@ -148,6 +170,16 @@ public class MikubaReader implements Closeable {
         initPostModel();
     }
     
+    /**
+     * Задать посты, которые уже загружены (при обновлении треда).
+     * Если исходный текст такого поста на странице не изменился, пост не разбирается, в результат добавляется имеющийся объект.
+     * См. {@link nya.miku.wishmaster.api.util.WakabaReader#setKnownPosts(PostModel[])}
+     * @param posts загруженные ранее посты (может принимать null)
+     */
+    public void setKnownPosts(PostModel[] posts) {
+        knownPostsFilter.setKnownPosts(posts);
+    }
+    
     public ThreadModel[] readPage() throws IOException {
         threads = new ArrayList<ThreadModel>();
         initThreadModel();
@@ -160,28 +192,20 @@ public class MikubaReader implements Closeable {
     }
     
     private void readData() throws IOException {
-        int filtersCount = FILTERS_OPEN.length;
-        int[] pos = new int[filtersCount];
-        int[] len = new int[filtersCount];
-        for (int i=0; i<filtersCount; ++i) len[i] = FILTERS_OPEN[i].length;
-        
+        int state = SequenceMatcher.INITIAL_STATE;
         int curChar;
         while ((curChar = _in.read()) != -1) {
             if (inDate) dateBuffer.append((char) curChar);
-            for (int i=0; i<filtersCount; ++i) {
-                if (curChar == FILTERS_OPEN[i][pos[i]]) {
-                    ++pos[i];
-                    if (pos[i] == len[i]) {
-                        if (i == FILTER_PAGE_END) {
-                            finalizeThread();
-                            return;
-                        }
-                        handleFilter(i);
-                        pos[i] = 0;
-                    }
-                } else {
-                    if (pos[i] != 0) pos[i] = curChar == FILTERS_OPEN[i][0] ? 1 : 0;
+            state = FILTERS_MATCHER.next(state, curChar);
+            int filter = FILTERS_MATCHER.getMatch(state);
+            if (filter != -1) {
+                if (filter == FILTER_PAGE_END) {
+                    knownPostsFilter.cancel();
+                    finalizeThread();
+                    return;
                 }
+                handleFilter(filter);
+                state = SequenceMatcher.INITIAL_STATE;
             }
         }
         finalizeThread();
@@ -191,6 +215,7 @@ public class MikubaReader implements Closeable {
         if (inDate && filterIndex != FILTER_ENDDATE) dateBuffer.setLength(0);
         switch (filterIndex) {
             case FILTER_THREAD_END:
+                knownPostsFilter.cancel();
                 finalizeThread();
                 break;
             case FILTER_ATTACHMENT:
@@ -199,20 +224,20 @@ public class MikubaReader implements Closeable {
             case FILTER_POSTNUMBER:
             case FILTER_POSTNUMBER_OP:
                 currentPost.number = readUntilSequence(FILTERS_CLOSE[filterIndex]).trim().substring(1);
+                PostModel knownPost = knownPostsFilter.onPostNumber(currentPost.number, isPostDataEmpty());
+                if (knownPost != null) addKnownPost(knownPost);
                 break;
             case FILTER_SUBJECT:
-                currentPost.subject = StringEscapeUtils.unescapeHtml4(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
+                currentPost.subject = HtmlTextUtils.unescapeHtml(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
                 inDate = true;
                 break;
             case FILTER_ENDDATE:
                 if (dateBuffer.length() > FILTERS_OPEN[FILTER_ENDDATE].length) {
-                    String date = dateBuffer.substring(0, dateBuffer.length() - FILTERS_OPEN[FILTER_ENDDATE].length).trim();
-                    if (date.length() > 0) {
-                        try {
-                            currentPost.timestamp = DATEFORMAT.parse(date).getTime();
-                        } catch (Exception e) {
-                            Logger.e(TAG, "cannot parse date; make sure you choose the right DateFormat for this chan", e);
-                        }
+                    long timestamp = DATEFORMAT.parse(dateBuffer, 0, dateBuffer.length() - FILTERS_OPEN[FILTER_ENDDATE].length);
+                    if (timestamp != DatePattern.INVALID) {
+                        currentPost.timestamp = timestamp;
+                    } else {
+                        Logger.e(TAG, "cannot parse date; make sure you choose the right DatePattern for this chan");
                     }
                 }
                 inDate = false;
@@ -221,53 +246,40 @@ public class MikubaReader implements Closeable {
             case FILTER_START_COMMENT:
                 skipUntilSequence(FILTERS_CLOSE[filterIndex]);
                 currentPost.comment = readPostComment();
+                currentPost.sourceFingerprint = knownPostsFilter.finishPost();
                 finalizePost();
                 break;
         }
     }
     
+    /** true, если до номера поста не было прочитано никаких его данных */
+    private boolean isPostDataEmpty() {
+        PostModel post = currentPost;
+        return !inDate && currentAttachments.isEmpty() && "".equals(post.name) && "".equals(post.email) && "".equals(post.trip) &&
+                post.subject == null && post.comment == null && post.icons == null && post.timestamp == 0;
+    }
+    
+    /** добавить в тред пропущенный (уже загруженный) пост */
+    private void addKnownPost(PostModel knownPost) {
+        KnownPostsFilter.countPost(currentThread, knownPost);
+        postsBuf.add(knownPost);
+        initPostModel();
+    }
+    
     private String readPostComment() throws IOException {
         commentBuffer.setLength(0);
-        int len1 = BLOCKQUOTE_OPEN.length;
         int len2 = BLOCKQUOTE_CLOSE.length;
-        int len3 = OMITTED_OPEN.length;
-        int pos1 = 0;
-        int pos2 = 0;
-        int pos3 = 0;
         int tagCounter = 1;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            commentBuffer.append((char) curChar);
-            
-            if (curChar == BLOCKQUOTE_OPEN[pos1]) {
-                ++pos1;
-                if (pos1 == len1) {
-                    ++tagCounter;
-                    pos1 = 0;
-                }
-            } else {
-                if (pos1 != 0) pos1 = curChar == BLOCKQUOTE_OPEN[0] ? 1 : 0;
-            }
-            
-            if (curChar == BLOCKQUOTE_CLOSE[pos2]) {
-                ++pos2;
-                if (pos2 == len2) {
-                    --tagCounter;
-                    if (tagCounter == 0) break;
-                    pos2 = 0;
-                }
-            } else {
-                if (pos2 != 0) pos2 = curChar == BLOCKQUOTE_CLOSE[0] ? 1 : 0;
-            }
-            
-            if (curChar == OMITTED_OPEN[pos3]) {
-                ++pos3;
-                if (pos3 == len3) {
-                    parseOmittedString(readUntilSequence(OMITTED_CLOSE));
-                    pos3 = 0;
-                }
+        int found;
+        while ((found = _in.readUntilMatch(COMMENT_MATCHER, commentBuffer)) != -1) {
+            if (found == 0) {
+                ++tagCounter;
+            } else if (found == 1) {
+                --tagCounter;
+                if (tagCounter == 0) break;
             } else {
-                if (pos3 != 0) pos3 = curChar == BLOCKQUOTE_OPEN[0] ? 1 : 0;
+                knownPostsFilter.cancel();
+                parseOmittedString(readUntilSequence(OMITTED_CLOSE));
             }
         }
         int buflen = commentBuffer.length();
@@ -343,42 +355,13 @@ public class MikubaReader implements Closeable {
     }
     
     private void skipUntilSequence(char[] sequence) throws IOException {
-        int len = sequence.length;
-        if (len == 0) return;
-        int pos = 0;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            if (curChar == sequence[pos]) {
-                ++pos;
-                if (pos == len) break;
-            } else {
-                if (pos != 0) pos = curChar == sequence[0] ? 1 : 0;
-            }
-        }
+        _in.skipUntilSequence(sequence);
     }
     
     private String readUntilSequence(char[] sequence) throws IOException {
-        int len = sequence.length;
-        if (len == 0) return "";
         readBuffer.setLength(0);
-        int pos = 0;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            readBuffer.append((char) curChar);
-            if (curChar == sequence[pos]) {
-                ++pos;
-                if (pos == len) break;
-            } else {
-                if (pos != 0) pos = curChar == sequence[0] ? 1 : 0;
-            }
-        }
-        int buflen = readBuffer.length();
-        if (buflen >= len) {
-            readBuffer.setLength(buflen - len);
-            return readBuffer.toString();
-        } else {
-            return "";
-        }
+        _in.readUntilSequence(sequence, readBuffer);
+        return readBuffer.toString();
     }
     
     @Override
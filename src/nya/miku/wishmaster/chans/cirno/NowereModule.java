@@ -39,6 +39,8 @@ import android.preference.PreferenceGroup;
 import android.support.v4.content.res.ResourcesCompat;
 import nya.miku.wishmaster.R;
 import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.api.interfaces.PostsStreamListener;
+import nya.miku.wishmaster.api.interfaces.PostsStreamingModule;
 import nya.miku.wishmaster.api.interfaces.ProgressListener;
 import nya.miku.wishmaster.api.models.BoardModel;
 import nya.miku.wishmaster.api.models.CaptchaModel;
@@ -54,6 +56,7 @@ import nya.miku.wishmaster.api.util.WakabaUtils;
 import nya.miku.wishmaster.chans.AbstractChanModule;
 import nya.miku.wishmaster.common.IOUtils;
 import nya.miku.wishmaster.http.ExtendedMultipartBuilder;
+import nya.miku.wishmaster.http.streamer.HostRateLimiter;
 import nya.miku.wishmaster.http.streamer.HttpRequestModel;
 import nya.miku.wishmaster.http.streamer.HttpResponseModel;
 import nya.miku.wishmaster.http.streamer.HttpStreamer;
@@ -63,7 +66,7 @@ import nya.miku.wishmaster.http.streamer.HttpWrongStatusCodeException;
  * На самом деле используется актуальная версия apache-hc httpclient 4.3.5.1-android
  * Подробности: https://issues.apache.org/jira/browse/HTTPCLIENT-1632 */
 @SuppressWarnings("deprecation")
-public class NowereModule extends AbstractChanModule {
+public class NowereModule extends AbstractChanModule implements PostsStreamingModule {
     
     static final String NOWERE_NAME = "nowere.net";
     static final String NOWERE_DOMAIN = "nowere.net";
@@ -91,6 +94,11 @@ public class NowereModule extends AbstractChanModule {
         return ResourcesCompat.getDrawable(resources, R.drawable.favicon_nowere, null);
     }
     
+    @Override
+    protected void initRateLimits(HostRateLimiter limiter) {
+        limiter.setLimit(NOWERE_DOMAIN, 3, 8);
+    }
+    
     @Override
     public SimpleBoardModel[] getBoardsList(ProgressListener listener, CancellableTask task, SimpleBoardModel[] oldBoardsList) throws Exception {
         return NowereBoards.getBoardsList();
@@ -119,7 +127,8 @@ public class NowereModule extends AbstractChanModule {
         return preferences.getBoolean(getSharedKey(PREF_KEY_USE_HTTPS), false) ? NOWERE_URL_HTTPS : NOWERE_URL_HTTP;
     }
     
-    private ThreadModel[] readWakabaPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified) throws Exception {
+    private ThreadModel[] readWakabaPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified,
+            PostModel[] knownPosts) throws Exception {
         HttpResponseModel responseModel = null;
         WakabaReader in = null;
         HttpRequestModel rqModel = HttpRequestModel.builder().setGET().setCheckIfModified(checkIfModified).build();
@@ -128,6 +137,8 @@ public class NowereModule extends AbstractChanModule {
             if (responseModel.statusCode == 200) {
                 in = new WakabaReader(responseModel.stream, DateFormats.NOWERE_DATE_FORMAT);
                 if (task != null && task.isCancelled()) throw new Exception("interrupted");
+                in.setKnownPosts(knownPosts);
+                if (listener instanceof PostsStreamListener) in.setPostsListener((PostsStreamListener) listener);
                 return in.readWakabaPage();
             } else {
                 if (responseModel.notModified()) return null;
@@ -152,7 +163,7 @@ public class NowereModule extends AbstractChanModule {
         urlModel.boardPage = page;
         String url = buildUrl(urlModel);
         
-        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null);
+        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, null);
         if (threads == null) {
             return oldList;
         } else {
@@ -170,7 +181,7 @@ public class NowereModule extends AbstractChanModule {
         urlModel.threadNumber = threadNumber;
         String url = buildUrl(urlModel);
         
-        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null);
+        ThreadModel[] threads = readWakabaPage(url, listener, task, oldList != null, oldList);
         if (threads == null) {
             return oldList;
         } else {
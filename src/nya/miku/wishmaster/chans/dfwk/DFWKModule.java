@@ -20,8 +20,6 @@ package nya.miku.wishmaster.chans.dfwk;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -53,10 +51,12 @@ import nya.miku.wishmaster.api.models.SendPostModel;
 import nya.miku.wishmaster.api.models.SimpleBoardModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
 import nya.miku.wishmaster.api.util.ChanModels;
+import nya.miku.wishmaster.api.util.DatePattern;
 import nya.miku.wishmaster.api.util.WakabaReader;
 import nya.miku.wishmaster.chans.AbstractWakabaModule;
 import nya.miku.wishmaster.common.IOUtils;
 import nya.miku.wishmaster.http.ExtendedMultipartBuilder;
+import nya.miku.wishmaster.http.streamer.HostRateLimiter;
 import nya.miku.wishmaster.http.streamer.HttpRequestModel;
 import nya.miku.wishmaster.http.streamer.HttpResponseModel;
 import nya.miku.wishmaster.http.streamer.HttpStreamer;
@@ -74,11 +74,7 @@ public class DFWKModule extends AbstractWakabaModule {
     private static final String[] ATTACHMENT_FORMATS_DF = new String[] { "jpg", "jpeg", "png", "gif", "7z", "mp3", "rar", "zip" };
     private static final String[] ATTACHMENT_FORMATS = new String[] { "jpg", "jpeg", "png", "gif" };
     
-    private static final DateFormat DATEFORMAT;
-    static {
-        DATEFORMAT = new SimpleDateFormat("EEE yy/MM/dd HH:mm", Locale.US);
-        DATEFORMAT.setTimeZone(TimeZone.getTimeZone("GMT+3"));
-    }
+    private static final DatePattern DATEFORMAT = new DatePattern("EEE yy/MM/dd HH:mm", TimeZone.getTimeZone("GMT+3"));
     
     private static final Pattern LINK_DATE = Pattern.compile("<a href=\"([^\"]*)\">(.*?)</a>", Pattern.DOTALL);
     private static final Pattern EMBED_PATTERN = Pattern.compile("<object (?:[^>]*)data=\"(.*?)\"", Pattern.DOTALL);
@@ -108,6 +104,11 @@ public class DFWKModule extends AbstractWakabaModule {
         return DOMAIN;
     }
     
+    @Override
+    protected void initRateLimits(HostRateLimiter limiter) {
+        limiter.setLimit(DOMAIN, 3, 8);
+    }
+    
     @Override
     protected SimpleBoardModel[] getBoardsList() {
         return BOARDS;
@@ -22,12 +22,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -65,6 +64,8 @@ import nya.miku.wishmaster.api.models.SimpleBoardModel;
 import nya.miku.wishmaster.api.models.ThreadModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
 import nya.miku.wishmaster.api.util.ChanModels;
+import nya.miku.wishmaster.api.util.DatePattern;
+import nya.miku.wishmaster.api.util.ParallelMapper;
 import nya.miku.wishmaster.chans.AbstractChanModule;
 import nya.miku.wishmaster.common.IOUtils;
 import nya.miku.wishmaster.common.Logger;
@@ -88,7 +89,7 @@ public class DobroModule extends AbstractChanModule {
     
     private static final List<String> DOMAINS_LIST = Arrays.asList(new String[] { "dobrochan.ru", "dobrochan.com", "dobrochan.org" });
     
-    private static final DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+    private static final DatePattern DATE_FORMAT = new DatePattern("yyyy-MM-dd HH:mm:ss", TimeZone.getDefault());
     
     private static final String PREF_KEY_ONLY_NEW_POSTS = "PREF_KEY_ONLY_NEW_POSTS";
     private static final String PREF_KEY_DOMAIN = "PREF_KEY_DOMAIN";
@@ -107,6 +108,11 @@ public class DobroModule extends AbstractChanModule {
         return CHAN_NAME;
     }
     
+    @Override
+    protected boolean useParallelMapping() {
+        return true;
+    }
+    
     @Override
     public String getDisplayingName() {
         return "Доброчан";
@@ -226,22 +232,23 @@ public class DobroModule extends AbstractChanModule {
         String url = getDomainUrl() + boardName + "/" + Integer.toString(page) + ".json?new_format";
         JSONObject response = downloadJSONObject(url, oldList != null, listener, task);
         if (response == null) return oldList;
-        JSONArray threads = response.getJSONObject("boards").getJSONObject(boardName).getJSONArray("threads");
-        ThreadModel[] result = new ThreadModel[threads.length()];
-        for (int i=0, len=threads.length(); i<len; ++i) {
-            JSONObject thread = threads.getJSONObject(i);
-            ThreadModel threadModel = new ThreadModel();
-            threadModel.threadNumber = Long.toString(thread.getLong("display_id"));
-            threadModel.postsCount = thread.optInt("posts_count", -1);
-            threadModel.attachmentsCount = thread.optInt("files_count", -1);
-            JSONArray posts = thread.getJSONArray("posts");
-            threadModel.posts = new PostModel[posts.length()];
-            for (int j=0, postslen=posts.length(); j<postslen; ++j) {
-                threadModel.posts[j] = mapPostModel(posts.getJSONObject(j), threadModel.threadNumber);
+        final JSONArray threads = response.getJSONObject("boards").getJSONObject(boardName).getJSONArray("threads");
+        return ParallelMapper.map(new ThreadModel[threads.length()], new ParallelMapper.Mapper<ThreadModel>() {
+            @Override
+            public ThreadModel map(int index) {
+                JSONObject thread = threads.getJSONObject(index);
+                ThreadModel threadModel = new ThreadModel();
+                threadModel.threadNumber = Long.toString(thread.getLong("display_id"));
+                threadModel.postsCount = thread.optInt("posts_count", -1);
+                threadModel.attachmentsCount = thread.optInt("files_count", -1);
+                JSONArray posts = thread.getJSONArray("posts");
+                threadModel.posts = new PostModel[posts.length()];
+                for (int j=0, postslen=posts.length(); j<postslen; ++j) {
+                    threadModel.posts[j] = mapPostModel(posts.getJSONObject(j), threadModel.threadNumber);
+                }
+                return threadModel;
             }
-            result[i] = threadModel;
-        }
-        return result;
+        }, useParallelMapping());
     }
     
     @Override
@@ -287,10 +294,11 @@ public class DobroModule extends AbstractChanModule {
         }
         model.subject = json.optString("subject", "");
         model.name = json.optString("name", "");
-        try {
-            model.timestamp = DATE_FORMAT.parse(json.getString("date")).getTime();
-        } catch (Exception e) {
-            Logger.e(TAG, e);
+        long timestamp = DATE_FORMAT.parse(json.optString("date", ""));
+        if (timestamp != DatePattern.INVALID) {
+            model.timestamp = timestamp;
+        } else {
+            Logger.e(TAG, "cannot parse date: " + json.optString("date", ""));
         }
         try {
             JSONArray files = json.getJSONArray("files");
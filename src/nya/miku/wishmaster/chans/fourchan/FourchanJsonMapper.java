@@ -20,13 +20,14 @@ package nya.miku.wishmaster.chans.fourchan;
 
 import java.util.Locale;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
 import nya.miku.wishmaster.api.models.AttachmentModel;
 import nya.miku.wishmaster.api.models.BadgeIconModel;
 import nya.miku.wishmaster.api.models.BoardModel;
 import nya.miku.wishmaster.api.models.PostModel;
+import nya.miku.wishmaster.api.models.ThreadModel;
+import nya.miku.wishmaster.api.util.HtmlTextUtils;
 import nya.miku.wishmaster.lib.org_json.JSONObject;
+import nya.miku.wishmaster.lib.org_json.JSONStreamReader;
 
 public class FourchanJsonMapper {
     private static final String[] CATALOG = new String[] { "Catalog" };
@@ -75,61 +76,130 @@ public class FourchanJsonMapper {
         return model;
     }
     
-    static PostModel mapPostModel(JSONObject object, String boardName) {
+    /**
+     * Потоковое преобразование объекта поста, без построения промежуточного {@link JSONObject}.
+     * @param reader парсер, следующий токен которого - начало объекта поста
+     * @param boardName название доски
+     * @param thread модель треда, в которую будут записаны параметры треда из ОП-поста
+     * (количество ответов и файлов, закрепление, закрытие), может принимать null
+     */
+    static PostModel mapPostModel(JSONStreamReader reader, String boardName, ThreadModel thread) {
+        long number = -1;
+        long time = -1;
+        String name = "Anonymous";
+        String subject = "";
+        String comment = "";
+        String trip = "";
+        String capcode = "none";
+        String countryIcon = "";
+        String countryName = "";
+        String id = "";
+        String resto = "0";
+        String ext = "";
+        String filename = "";
+        long tim = 0;
+        int fsize = -1;
+        int width = -1;
+        int height = -1;
+        int spoiler = 0;
+        int replies = -2;
+        int images = -2;
+        int sticky = 0;
+        int closed = 0;
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (key) {
+                case "no": number = reader.nextLong(); break;
+                case "time": time = reader.nextLong(); break;
+                case "name": name = reader.optString(name); break;
+                case "sub": subject = reader.optString(subject); break;
+                case "com": comment = reader.optString(comment); break;
+                case "trip": trip = reader.optString(trip); break;
+                case "capcode": capcode = reader.optString(capcode); break;
+                case "country": countryIcon = reader.optString(countryIcon); break;
+                case "country_name": countryName = reader.optString(countryName); break;
+                case "id": id = reader.optString(id); break;
+                case "resto": resto = reader.optString(resto); break;
+                case "ext": ext = reader.optString(ext); break;
+                case "filename": filename = reader.optString(filename); break;
+                case "tim": tim = reader.optLong(0); break;
+                case "fsize": fsize = reader.optInt(-1); break;
+                case "w": width = reader.optInt(-1); break;
+                case "h": height = reader.optInt(-1); break;
+                case "spoiler": spoiler = reader.optInt(0); break;
+                case "replies": replies = reader.optInt(-2); break;
+                case "images": images = reader.optInt(-2); break;
+                case "sticky": sticky = reader.optInt(0); break;
+                case "closed": closed = reader.optInt(0); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (number == -1) throw reader.syntaxError("JSONObject[\"no\"] not found.");
+        if (time == -1) throw reader.syntaxError("JSONObject[\"time\"] not found.");
+        
+        if (thread != null) {
+            thread.threadNumber = Long.toString(number);
+            thread.postsCount = replies + 1;
+            thread.attachmentsCount = images + 1;
+            thread.isSticky = sticky == 1;
+            thread.isClosed = closed == 1;
+        }
+        
         PostModel model = new PostModel();
-        model.number = Long.toString(object.getLong("no"));
-        model.name = StringEscapeUtils.unescapeHtml4(object.optString("name", "Anonymous").replaceAll("</?span[^>]*?>", ""));
-        model.subject = StringEscapeUtils.unescapeHtml4(object.optString("sub", ""));
-        model.comment = object.optString("com", "");
+        model.number = Long.toString(number);
+        model.name = HtmlTextUtils.unescapeHtml(HtmlTextUtils.removeTags(name, "span"));
+        model.subject = HtmlTextUtils.unescapeHtml(subject);
+        model.comment = comment;
         model.email = null;
-        model.trip = object.optString("trip", "");
-        String capcode = object.optString("capcode", "none");
+        model.trip = trip;
         if (!capcode.equals("none")) model.trip += "##"+capcode;
-        String countryIcon = object.optString("country", "");
         if (!countryIcon.equals("")) {
             BadgeIconModel icon = new BadgeIconModel();
-            icon.source = "s.4cdn.org/image/country/" + /*(boardName.equals("pol") ? "troll/" : "") + */countryIcon.toLowerCase(Locale.US) + ".gif";
-            icon.description = object.optString("country_name");
+            icon.source = "s.4cdn.org/image/country/" + countryIcon.toLowerCase(Locale.US) + ".gif";
+            icon.description = countryName;
             model.icons = new BadgeIconModel[] { icon };
         }
         model.op = false;
-        String id = object.optString("id", "");
         model.sage = id.equalsIgnoreCase("Heaven");
         if (!id.equals("")) model.name += (" ID:" + id);
-        model.timestamp = object.getLong("time") * 1000;
-        model.parentThread = object.optString("resto", "0");
+        model.timestamp = time * 1000;
+        model.parentThread = resto;
         if (model.parentThread.equals("0")) model.parentThread = model.number;
-        String ext = object.optString("ext", "");
-        if (!ext.equals("")) {
-            AttachmentModel attachment = new AttachmentModel();
-            switch (ext) {
-                case ".jpg":
-                case ".png":
-                    attachment.type = AttachmentModel.TYPE_IMAGE_STATIC;
-                    break;
-                case ".gif":
-                    attachment.type = AttachmentModel.TYPE_IMAGE_GIF;
-                    break;
-                case ".webm":
-                    attachment.type = AttachmentModel.TYPE_VIDEO;
-                    break;
-                default:
-                    attachment.type = AttachmentModel.TYPE_OTHER_FILE;
-            }
-            attachment.size = object.optInt("fsize", -1);
-            if (attachment.size > 0) attachment.size = Math.round(attachment.size / 1024f);
-            attachment.width = object.optInt("w", -1);
-            attachment.height = object.optInt("h", -1);
-            attachment.originalName = object.optString("filename", "") + ext;
-            attachment.isSpoiler = object.optInt("spoiler") == 1;
-            long tim = object.optLong("tim");
-            if (tim != 0) {
-                attachment.thumbnail = "t.4cdn.org/" + boardName + "/" + Long.toString(tim) + "s.jpg";
-                attachment.path = "i.4cdn.org/" + boardName + "/" + Long.toString(tim) + ext;
-                model.attachments = new AttachmentModel[] { attachment };
-            }
-            
+        if (!ext.equals("") && tim != 0) {
+            model.attachments = new AttachmentModel[] {
+                    mapAttachmentModel(ext, tim, fsize, width, height, filename, spoiler == 1, boardName) };
         }
         return model;
     }
+    
+    private static AttachmentModel mapAttachmentModel(String ext, long tim, int fsize, int width, int height, String filename,
+            boolean isSpoiler, String boardName) {
+        AttachmentModel attachment = new AttachmentModel();
+        switch (ext) {
+            case ".jpg":
+            case ".png":
+                attachment.type = AttachmentModel.TYPE_IMAGE_STATIC;
+                break;
+            case ".gif":
+                attachment.type = AttachmentModel.TYPE_IMAGE_GIF;
+                break;
+            case ".webm":
+                attachment.type = AttachmentModel.TYPE_VIDEO;
+                break;
+            default:
+                attachment.type = AttachmentModel.TYPE_OTHER_FILE;
+        }
+        attachment.size = fsize;
+        if (attachment.size > 0) attachment.size = Math.round(attachment.size / 1024f);
+        attachment.width = width;
+        attachment.height = height;
+        attachment.originalName = filename + ext;
+        attachment.isSpoiler = isSpoiler;
+        attachment.thumbnail = "t.4cdn.org/" + boardName + "/" + Long.toString(tim) + "s.jpg";
+        attachment.path = "i.4cdn.org/" + boardName + "/" + Long.toString(tim) + ext;
+        return attachment;
+    }
 }
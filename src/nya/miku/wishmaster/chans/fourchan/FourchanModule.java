@@ -83,6 +83,7 @@ import nya.miku.wishmaster.http.streamer.HttpRequestModel;
 import nya.miku.wishmaster.http.streamer.HttpStreamer;
 import nya.miku.wishmaster.lib.org_json.JSONArray;
 import nya.miku.wishmaster.lib.org_json.JSONObject;
+import nya.miku.wishmaster.lib.org_json.JSONStreamReader;
 
 @SuppressWarnings("deprecation")
 //https://issues.apache.org/jira/browse/HTTPCLIENT-1632
@@ -140,12 +141,13 @@ public class FourchanModule extends AbstractChanModule {
         return object;
     }
     
-    private JSONArray downloadJSONArray(String url, boolean checkIfModidied, ProgressListener listener, CancellableTask task) throws Exception {
+    private <T> T downloadJSONStream(String url, boolean checkIfModidied, ProgressListener listener, CancellableTask task,
+            HttpStreamer.JSONStreamMapper<T> mapper) throws Exception {
         HttpRequestModel rqModel = HttpRequestModel.builder().setGET().setCheckIfModified(checkIfModidied).build();
-        JSONArray array = HttpStreamer.getInstance().getJSONArrayFromUrl(url, rqModel, httpClient, listener, task, false);
+        T result = HttpStreamer.getInstance().getJSONStreamFromUrl(url, rqModel, httpClient, listener, task, false, mapper);
         if (task != null && task.isCancelled()) throw new Exception("interrupted");
         if (listener != null) listener.setIndeterminate();
-        return array;
+        return result;
     }
     
     private void addPasscodePreference(PreferenceGroup preferenceGroup) {
@@ -384,65 +386,121 @@ public class FourchanModule extends AbstractChanModule {
     public ThreadModel[] getCatalog(String boardName, int catalogType, ProgressListener listener, CancellableTask task, ThreadModel[] oldList)
             throws Exception {
         String url = (useHttps() ? "https://" : "http://") + "a.4cdn.org/" + boardName + "/catalog.json";
-        JSONArray response = downloadJSONArray(url, oldList != null, listener, task);
-        if (response == null) return oldList; //if not modified
-        List<ThreadModel> threads = new ArrayList<>();
-        for (int i=0, len=response.length(); i<len; ++i) {
-            JSONArray curArray = response.getJSONObject(i).getJSONArray("threads");
-            for (int j=0, clen=curArray.length(); j<clen; ++j) {
-                JSONObject curThreadJson = curArray.getJSONObject(j);
-                ThreadModel curThread = new ThreadModel();
-                curThread.threadNumber = Long.toString(curThreadJson.getLong("no"));
-                curThread.postsCount = curThreadJson.optInt("replies", -2) + 1;
-                curThread.attachmentsCount = curThreadJson.optInt("images", -2) + 1;
-                curThread.isSticky = curThreadJson.optInt("sticky") == 1;
-                curThread.isClosed = curThreadJson.optInt("closed") == 1;
-                curThread.posts = new PostModel[] { FourchanJsonMapper.mapPostModel(curThreadJson, boardName) };
-                threads.add(curThread);
+        final String board = boardName;
+        List<ThreadModel> response = downloadJSONStream(url, oldList != null, listener, task, new HttpStreamer.JSONStreamMapper<List<ThreadModel>>() {
+            @Override
+            public List<ThreadModel> map(JSONStreamReader reader) {
+                List<ThreadModel> threads = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    boolean hasThreads = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (!reader.nextName().equals("threads")) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        hasThreads = true;
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            ThreadModel curThread = new ThreadModel();
+                            curThread.posts = new PostModel[] { FourchanJsonMapper.mapPostModel(reader, board, curThread) };
+                            threads.add(curThread);
+                        }
+                        reader.endArray();
+                    }
+                    reader.endObject();
+                    if (!hasThreads) throw reader.syntaxError("JSONObject[\"threads\"] not found.");
+                }
+                reader.endArray();
+                return threads;
             }
-        }
-        return threads.toArray(new ThreadModel[threads.size()]);
+        });
+        if (response == null) return oldList; //if not modified
+        return response.toArray(new ThreadModel[response.size()]);
     }
     
     @Override
     public ThreadModel[] getThreadsList(String boardName, int page, ProgressListener listener, CancellableTask task, ThreadModel[] oldList)
             throws Exception {
         String url = (useHttps() ? "https://" : "http://") + "a.4cdn.org/" + boardName + "/" + Integer.toString(page) + ".json";
-        JSONObject response = downloadJSONObject(url, oldList != null, listener, task);
-        if (response == null) return oldList; //if not modified
-        JSONArray threads = response.getJSONArray("threads");
-        ThreadModel[] result = new ThreadModel[threads.length()];
-        for (int i=0, len=threads.length(); i<len; ++i) {
-            JSONArray posts = threads.getJSONObject(i).getJSONArray("posts");
-            JSONObject op = posts.getJSONObject(0);
-            ThreadModel curThread = new ThreadModel();
-            curThread.threadNumber = Long.toString(op.getLong("no"));
-            curThread.postsCount = op.optInt("replies", -2) + 1;
-            curThread.attachmentsCount = op.optInt("images", -2) + 1;
-            curThread.isSticky = op.optInt("sticky") == 1;
-            curThread.isClosed = op.optInt("closed") == 1;
-            curThread.posts = new PostModel[posts.length()];
-            for (int j=0, plen=posts.length(); j<plen; ++j) {
-                curThread.posts[j] = FourchanJsonMapper.mapPostModel(posts.getJSONObject(j), boardName);
+        final String board = boardName;
+        List<ThreadModel> response = downloadJSONStream(url, oldList != null, listener, task, new HttpStreamer.JSONStreamMapper<List<ThreadModel>>() {
+            @Override
+            public List<ThreadModel> map(JSONStreamReader reader) {
+                List<ThreadModel> threads = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("threads")) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    threads = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        ThreadModel curThread = null;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (!reader.nextName().equals("posts")) {
+                                reader.skipValue();
+                                continue;
+                            }
+                            curThread = new ThreadModel();
+                            List<PostModel> posts = new ArrayList<>();
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                posts.add(FourchanJsonMapper.mapPostModel(reader, board, posts.isEmpty() ? curThread : null));
+                            }
+                            reader.endArray();
+                            if (posts.isEmpty()) throw reader.syntaxError("JSONArray[0] not found.");
+                            curThread.posts = posts.toArray(new PostModel[posts.size()]);
+                        }
+                        reader.endObject();
+                        if (curThread == null) throw reader.syntaxError("JSONObject[\"posts\"] not found.");
+                        threads.add(curThread);
+                    }
+                    reader.endArray();
+                }
+                reader.endObject();
+                if (threads == null) throw reader.syntaxError("JSONObject[\"threads\"] not found.");
+                return threads;
             }
-            result[i] = curThread;
-        }
-        return result;
+        });
+        if (response == null) return oldList; //if not modified
+        return response.toArray(new ThreadModel[response.size()]);
     }
     
     @Override
     public PostModel[] getPostsList(String boardName, String threadNumber, ProgressListener listener, CancellableTask task, PostModel[] oldList)
             throws Exception {
         String url = (useHttps() ? "https://" : "http://") + "a.4cdn.org/" + boardName + "/thread/" + threadNumber + ".json";
-        JSONObject response = downloadJSONObject(url, oldList != null, listener, task);
+        final String board = boardName;
+        List<PostModel> response = downloadJSONStream(url, oldList != null, listener, task, new HttpStreamer.JSONStreamMapper<List<PostModel>>() {
+            @Override
+            public List<PostModel> map(JSONStreamReader reader) {
+                List<PostModel> posts = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("posts")) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    posts = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        posts.add(FourchanJsonMapper.mapPostModel(reader, board, null));
+                    }
+                    reader.endArray();
+                }
+                reader.endObject();
+                if (posts == null) throw reader.syntaxError("JSONObject[\"posts\"] not found.");
+                return posts;
+            }
+        });
         if (response == null) return oldList; //if not modified
-        JSONArray posts = response.getJSONArray("posts");
-        PostModel[] result = new PostModel[posts.length()];
-        for (int i=0, len=posts.length(); i<len; ++i) {
-            result[i] = FourchanJsonMapper.mapPostModel(posts.getJSONObject(i), boardName);
-        }
+        PostModel[] result = response.toArray(new PostModel[response.size()]);
         if (oldList != null) {
-            result = ChanModels.mergePostsLists(Arrays.asList(oldList), Arrays.asList(result));
+            result = ChanModels.mergePostsLists(Arrays.asList(oldList), response);
         }
         return result;
     }
@@ -53,6 +53,7 @@ import nya.miku.wishmaster.api.models.SendPostModel;
 import nya.miku.wishmaster.api.models.SimpleBoardModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
 import nya.miku.wishmaster.api.util.ChanModels;
+import nya.miku.wishmaster.api.util.DatePattern;
 import nya.miku.wishmaster.api.util.WakabaReader;
 import nya.miku.wishmaster.chans.AbstractWakabaModule;
 import nya.miku.wishmaster.common.IOUtils;
@@ -231,10 +232,11 @@ public class InachModule extends AbstractWakabaModule {
         if (model.email.startsWith("mailto:")) model.email = model.email.substring(7);
         model.trip = "";
         model.sage = model.email.toLowerCase(Locale.US).contains("sage");
-        try {
-            model.timestamp = InachReader.DATE_FORMAT.parse(json.getString("date")).getTime();
-        } catch (Exception e) {
-            Logger.e(TAG, "cannot parse date; make sure you choose the right DateFormat for this chan", e);
+        long timestamp = InachReader.DATE_FORMAT.parse(json.optString("date", ""));
+        if (timestamp != DatePattern.INVALID) {
+            model.timestamp = timestamp;
+        } else {
+            Logger.e(TAG, "cannot parse date; make sure you choose the right DatePattern for this chan");
         }
         model.parentThread = threadNum;
         
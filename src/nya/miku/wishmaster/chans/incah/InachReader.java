@@ -18,48 +18,38 @@
 
 package nya.miku.wishmaster.chans.incah;
 
-import android.annotation.SuppressLint;
-
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.text.DateFormat;
-import java.text.DateFormatSymbols;
-import java.text.SimpleDateFormat;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import nya.miku.wishmaster.api.models.AttachmentModel;
 import nya.miku.wishmaster.api.models.BadgeIconModel;
+import nya.miku.wishmaster.api.util.CharScanner;
+import nya.miku.wishmaster.api.util.DatePattern;
 import nya.miku.wishmaster.api.util.WakabaReader;
 import nya.miku.wishmaster.common.Logger;
 
-@SuppressLint("SimpleDateFormat")
 public class InachReader extends WakabaReader {
     private static final String TAG = "InachReader";
     
-    static final DateFormat DATE_FORMAT;
-    static {
-        DateFormatSymbols inachSymbols = new DateFormatSymbols();
-        inachSymbols.setShortWeekdays(new String[] { "", "Вс", "Пн", "Вт", "Ср", "Чт", "Пт", "Сб" });
-        DATE_FORMAT = new SimpleDateFormat("dd.MM.yyyy (EEE) HH:mm:ss", inachSymbols);
-        DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT+3"));
-    }
+    static final DatePattern DATE_FORMAT = new DatePattern("dd.MM.yyyy (EEE) HH:mm:ss", TimeZone.getTimeZone("GMT+3"));
     
     private static final Pattern BADGE_ICON_PATTERN = Pattern.compile("<img src=\"(.*?)\"(?: title=\"(.*?))?\">", Pattern.DOTALL);
     
-    private static final char[] EMBED_FILTER_OPEN = "<div id=\"video_".toCharArray();
-    private static final char[] EMBED_FILTER_CLOSE = "</div>".toCharArray();
-    private int embedFilterCurPos = 0;
+    private static final int FILTER_DATE = 0;
+    private static final int FILTER_EMBED = 1;
+    private static final char[][] CUSTOM_FILTERS = new char[][] {
+        "<span style=\"display: table-cell; vertical-align: middle;\">&nbsp;".toCharArray(),
+        "<div id=\"video_".toCharArray()
+    };
     
-    private static final char[] DATE_FILTER_OPEN = "<span style=\"display: table-cell; vertical-align: middle;\">&nbsp;".toCharArray();
+    private static final char[] EMBED_FILTER_CLOSE = "</div>".toCharArray();
     private static final char[] DATE_FILTER_CLOSE = "</span>".toCharArray();
-    private int dateFilterCurPos = 0;
     
     public InachReader(InputStream in) {
-        super(new ReplacingReader(new ReplacingReader(new BufferedReader(new InputStreamReader(in)),
+        super(new ReplacingReader(new ReplacingReader(new CharScanner(in),
                         "' style='display: table-cell; vertical-align: middle;'", "'"),
                         "<span style='display: table-cell; vertical-align: middle;' ", "<span ")  {
             private boolean inTag = false;
@@ -77,10 +67,14 @@ public class InachReader extends WakabaReader {
     }
     
     @Override
-    protected void customFilters(int ch) throws IOException {
-        if (ch == DATE_FILTER_OPEN[dateFilterCurPos]) {
-            ++dateFilterCurPos;
-            if (dateFilterCurPos == DATE_FILTER_OPEN.length) {
+    protected char[][] getCustomFilters() {
+        return CUSTOM_FILTERS;
+    }
+    
+    @Override
+    protected void handleCustomFilter(int filterIndex) throws IOException {
+        switch (filterIndex) {
+            case FILTER_DATE:
                 String date = readUntilSequence(DATE_FILTER_CLOSE);
                 if (date.endsWith("&nbsp;")) date = date.substring(0, date.length() - 6);
                 date = date.trim();
@@ -96,28 +90,18 @@ public class InachReader extends WakabaReader {
                         newIconsArray[currentIconsCount] = iconModel;
                         currentPost.icons = newIconsArray;
                     } else {
-                        try {
-                            currentPost.timestamp = DATE_FORMAT.parse(date).getTime();
-                        } catch (Exception e) {
-                            Logger.e(TAG, "cannot parse date; make sure you choose the right DateFormat for this chan", e);
+                        long timestamp = DATE_FORMAT.parse(date);
+                        if (timestamp != DatePattern.INVALID) {
+                            currentPost.timestamp = timestamp;
+                        } else {
+                            Logger.e(TAG, "cannot parse date; make sure you choose the right DatePattern for this chan");
                         }
                     }
                 }
-                
-                dateFilterCurPos = 0;
-            }
-        } else {
-            if (dateFilterCurPos != 0) dateFilterCurPos = ch == DATE_FILTER_OPEN[0] ? 1 : 0;
-        }
-        
-        if (ch == EMBED_FILTER_OPEN[embedFilterCurPos]) {
-            ++embedFilterCurPos;
-            if (embedFilterCurPos == EMBED_FILTER_OPEN.length) {
+                break;
+            case FILTER_EMBED:
                 parseVideoAttachment(readUntilSequence(EMBED_FILTER_CLOSE));
-                embedFilterCurPos = 0;
-            }
-        } else {
-            if (embedFilterCurPos != 0) embedFilterCurPos = ch == EMBED_FILTER_OPEN[0] ? 1 : 0;
+                break;
         }
     }
     
@@ -99,16 +99,14 @@ public class ReplacingReader extends Reader {
 
     @Override
     public int read(char[] buffer, int offset, int count) throws IOException {
-        int charsRead = 0;
         for (int i = 0; i < count; i++) {
-            charsRead = i;
             int nextChar = read();
             if (nextChar == -1) {
-                break;
+                return i == 0 ? -1 : i;
             }
             buffer[offset + i] = (char) nextChar;
         }
-        return charsRead;
+        return count;
     }
 
 }
@@ -18,17 +18,16 @@
 
 package nya.miku.wishmaster.chans.infinity;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import nya.miku.wishmaster.api.models.SimpleBoardModel;
+import nya.miku.wishmaster.api.util.CharScanner;
 
 public class InfinityBoardsListReader implements Closeable {
-    private final Reader _in;
+    private final CharScanner _in;
     private final StringBuilder buf = new StringBuilder();
     private final static int MAX_BOARDS_COUNT = 150;
     
@@ -39,11 +38,11 @@ public class InfinityBoardsListReader implements Closeable {
     };
     
     public InfinityBoardsListReader(Reader reader) {
-        _in = reader;
+        _in = reader instanceof CharScanner ? (CharScanner) reader : new CharScanner(reader);
     }
     
     public InfinityBoardsListReader(InputStream in) {
-        this(new BufferedReader(new InputStreamReader(in)));
+        this(new CharScanner(in));
     }
     
     public SimpleBoardModel[] readBoardsList() throws IOException {
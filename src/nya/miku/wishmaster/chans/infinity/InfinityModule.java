@@ -29,7 +29,6 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpHeaders;
 import org.apache.http.NameValuePair;
@@ -63,6 +62,7 @@ import nya.miku.wishmaster.api.models.ThreadModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
 import nya.miku.wishmaster.api.util.ChanModels;
 import nya.miku.wishmaster.api.util.FastHtmlTagParser;
+import nya.miku.wishmaster.api.util.HtmlTextUtils;
 import nya.miku.wishmaster.chans.AbstractChanModule;
 import nya.miku.wishmaster.common.IOUtils;
 import nya.miku.wishmaster.common.Logger;
@@ -370,8 +370,8 @@ public class InfinityModule extends AbstractChanModule {
     private PostModel mapPostModel(JSONObject object, String boardName) {
         PostModel model = new PostModel();
         model.number = Long.toString(object.getLong("no"));
-        model.name = StringEscapeUtils.unescapeHtml4(object.optString("name", "Anonymous").replaceAll("</?span[^>]*?>", ""));
-        model.subject = StringEscapeUtils.unescapeHtml4(object.optString("sub", ""));
+        model.name = HtmlTextUtils.unescapeHtml(HtmlTextUtils.removeTags(object.optString("name", "Anonymous"), "span"));
+        model.subject = HtmlTextUtils.unescapeHtml(object.optString("sub", ""));
         model.comment = object.optString("com", "");
         try {
             model.comment = FastHtmlTagParser.getPTagParser().replace(model.comment, QUOTE_REPLACER);
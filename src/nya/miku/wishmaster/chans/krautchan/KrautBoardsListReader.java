@@ -18,11 +18,9 @@
 
 package nya.miku.wishmaster.chans.krautchan;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,10 +28,10 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
 import nya.miku.wishmaster.api.models.BoardModel;
 import nya.miku.wishmaster.api.models.SimpleBoardModel;
+import nya.miku.wishmaster.api.util.CharScanner;
+import nya.miku.wishmaster.api.util.HtmlTextUtils;
 
 /**
  * parse boards list page: krautchan.net/nav
@@ -48,7 +46,7 @@ public class KrautBoardsListReader implements Closeable {
     private static final String[] ATTACHMENT_FORMATS =
             new String[] { "gif", "jpg", "jpeg", "png", "psd", "webm", "mp3", "ogg", "rar", "zip", "torrent", "swf" };
     
-    private final Reader _in;
+    private final CharScanner _in;
     private StringBuilder readBuffer = new StringBuilder();
     private String currentCategory;
     private List<SimpleBoardModel> boards;
@@ -68,11 +66,11 @@ public class KrautBoardsListReader implements Closeable {
     private static final Pattern BOARD_PATTERN = Pattern.compile("/(\\w+)/\\s+-\\s+(.*)", Pattern.DOTALL);
     
     public KrautBoardsListReader(Reader reader) {
-        _in = reader;
+        _in = reader instanceof CharScanner ? (CharScanner) reader : new CharScanner(reader);
     }
     
     public KrautBoardsListReader(InputStream in) {
-        this(new BufferedReader(new InputStreamReader(in)));
+        this(new CharScanner(in));
     }
     
     public SimpleBoardModel[] readBoardsList() throws IOException {
@@ -105,11 +103,11 @@ public class KrautBoardsListReader implements Closeable {
             case FILTER_CATEGORY:
                 skipUntilSequence(SPAN_CLOSE);
                 String cat = readUntilSequence(H2_CLOSE);
-                if (!cat.contains("<span")) currentCategory = StringEscapeUtils.unescapeHtml4(cat);
+                if (!cat.contains("<span")) currentCategory = HtmlTextUtils.unescapeHtml(cat);
                 break;
             case FILTER_BOARD:
                 skipUntilSequence(CLOSE);
-                String board = readUntilSequence(LI_CLOSE).replaceAll("<[^>]*>", "").trim();
+                String board = HtmlTextUtils.removeTags(readUntilSequence(LI_CLOSE)).trim();
                 Matcher boardMatcher = BOARD_PATTERN.matcher(board);
                 if (boardMatcher.matches()) {
                     SimpleBoardModel model = new SimpleBoardModel();
@@ -124,42 +122,13 @@ public class KrautBoardsListReader implements Closeable {
     }
 
     private void skipUntilSequence(char[] sequence) throws IOException {
-        int len = sequence.length;
-        if (len == 0) return;
-        int pos = 0;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            if (curChar == sequence[pos]) {
-                ++pos;
-                if (pos == len) break;
-            } else {
-                if (pos != 0) pos = curChar == sequence[0] ? 1 : 0;
-            }
-        }
+        _in.skipUntilSequence(sequence);
     }
     
     private String readUntilSequence(char[] sequence) throws IOException {
-        int len = sequence.length;
-        if (len == 0) return "";
         readBuffer.setLength(0);
-        int pos = 0;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            readBuffer.append((char) curChar);
-            if (curChar == sequence[pos]) {
-                ++pos;
-                if (pos == len) break;
-            } else {
-                if (pos != 0) pos = curChar == sequence[0] ? 1 : 0;
-            }
-        }
-        int buflen = readBuffer.length();
-        if (buflen >= len) {
-            readBuffer.setLength(buflen - len);
-            return readBuffer.toString();
-        } else {
-            return "";
-        }
+        _in.readUntilSequence(sequence, readBuffer);
+        return readBuffer.toString();
     }
     
     @Override
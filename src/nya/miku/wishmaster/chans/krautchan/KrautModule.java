@@ -31,7 +31,6 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpHeaders;
 import org.apache.http.NameValuePair;
@@ -61,6 +60,7 @@ import nya.miku.wishmaster.api.models.SimpleBoardModel;
 import nya.miku.wishmaster.api.models.ThreadModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
 import nya.miku.wishmaster.api.util.ChanModels;
+import nya.miku.wishmaster.api.util.HtmlTextUtils;
 import nya.miku.wishmaster.chans.AbstractChanModule;
 import nya.miku.wishmaster.common.IOUtils;
 import nya.miku.wishmaster.common.Logger;
@@ -151,9 +151,11 @@ public class KrautModule extends AbstractChanModule {
     }
     
     /**
-     * If (url == null) returns boards list (SimpleBoardModel[]), thread/threads page (ThreadModel[]) otherwise
+     * If (url == null) returns boards list (SimpleBoardModel[]), thread/threads page (ThreadModel[]) otherwise.
+     * Posts from knownPosts (may be null) are not parsed again, see {@link KrautReader#setKnownPosts(PostModel[])}
      */
-    private Object readPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified) throws Exception {
+    private Object readPage(String url, ProgressListener listener, CancellableTask task, boolean checkIfModified, PostModel[] knownPosts)
+            throws Exception {
         boolean threadsList = url == null;
         if (threadsList) url = (useHttps() ? "https://" : "http://") + CHAN_DOMAIN + "/nav";
         
@@ -164,6 +166,7 @@ public class KrautModule extends AbstractChanModule {
             responseModel = HttpStreamer.getInstance().getFromUrl(url, rqModel, httpClient, listener, task);
             if (responseModel.statusCode == 200) {
                 in = threadsList ? new KrautBoardsListReader(responseModel.stream) : new KrautReader(responseModel.stream);
+                if (!threadsList) ((KrautReader) in).setKnownPosts(knownPosts);
                 if (task != null && task.isCancelled()) throw new Exception("interrupted");
                 return threadsList ? ((KrautBoardsListReader) in).readBoardsList() : ((KrautReader) in).readPage();
             } else {
@@ -196,7 +199,7 @@ public class KrautModule extends AbstractChanModule {
     
     @Override
     public SimpleBoardModel[] getBoardsList(ProgressListener listener, CancellableTask task, SimpleBoardModel[] oldBoardsList) throws Exception {
-        SimpleBoardModel[] boardsList = (SimpleBoardModel[]) readPage(null, listener, task, oldBoardsList != null);
+        SimpleBoardModel[] boardsList = (SimpleBoardModel[]) readPage(null, listener, task, oldBoardsList != null, null);
         if (boardsList == null) return oldBoardsList;
         Map<String, BoardModel> newMap = new HashMap<>();
         for (SimpleBoardModel board : boardsList) {
@@ -229,7 +232,7 @@ public class KrautModule extends AbstractChanModule {
         urlModel.boardPage = page;
         String url = buildUrl(urlModel);
         
-        ThreadModel[] threads = (ThreadModel[]) readPage(url, listener, task, oldList != null);
+        ThreadModel[] threads = (ThreadModel[]) readPage(url, listener, task, oldList != null, null);
         if (threads == null) {
             return oldList;
         } else {
@@ -247,7 +250,7 @@ public class KrautModule extends AbstractChanModule {
         urlModel.threadNumber = threadNumber;
         String url = buildUrl(urlModel);
         
-        ThreadModel[] threads = (ThreadModel[]) readPage(url, listener, task, oldList != null);
+        ThreadModel[] threads = (ThreadModel[]) readPage(url, listener, task, oldList != null, oldList);
         if (threads == null) {
             return oldList;
         } else {
@@ -372,7 +375,7 @@ public class KrautModule extends AbstractChanModule {
                     String errorMessage = htmlResponse.substring(p2 + 1);
                     int p3 = errorMessage.indexOf("</tr>");
                     if (p3 != -1) errorMessage = errorMessage.substring(0, p3);
-                    errorMessage = StringEscapeUtils.unescapeHtml4(errorMessage.replaceAll("<[^>]*>", "")).trim().replaceAll("\\s+", " ");
+                    errorMessage = HtmlTextUtils.unescapeHtml(HtmlTextUtils.removeTags(errorMessage)).trim().replaceAll("\\s+", " ");
                     throw new Exception(errorMessage);
                 }
             }
@@ -416,7 +419,7 @@ public class KrautModule extends AbstractChanModule {
                     String errorMessage = htmlResponse.substring(p2 + 1);
                     int p3 = errorMessage.indexOf("</tr>");
                     if (p3 != -1) errorMessage = errorMessage.substring(0, p3);
-                    errorMessage = StringEscapeUtils.unescapeHtml4(errorMessage.replaceAll("<[^>]*>", "")).trim().replaceAll("\\s+", " ");
+                    errorMessage = HtmlTextUtils.unescapeHtml(HtmlTextUtils.removeTags(errorMessage)).trim().replaceAll("\\s+", " ");
                     throw new Exception(errorMessage);
                 }
             }
@@ -18,14 +18,10 @@
 
 package nya.miku.wishmaster.chans.krautchan;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -37,19 +33,19 @@ import nya.miku.wishmaster.api.models.AttachmentModel;
 import nya.miku.wishmaster.api.models.BadgeIconModel;
 import nya.miku.wishmaster.api.models.PostModel;
 import nya.miku.wishmaster.api.models.ThreadModel;
+import nya.miku.wishmaster.api.util.CharScanner;
+import nya.miku.wishmaster.api.util.DatePattern;
+import nya.miku.wishmaster.api.util.HtmlTextUtils;
+import nya.miku.wishmaster.api.util.KnownPostsFilter;
+import nya.miku.wishmaster.api.util.SequenceMatcher;
 import nya.miku.wishmaster.common.CryptoUtils;
 import nya.miku.wishmaster.common.Logger;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 
 public class KrautReader implements Closeable {
     private static final String TAG = "KrautReader";
     
-    private static final DateFormat KRAUT_DATEFORMAT;
-    static {
-        KRAUT_DATEFORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-        KRAUT_DATEFORMAT.setTimeZone(TimeZone.getTimeZone("Europe/Berlin"));
-    }
+    private static final DatePattern KRAUT_DATEFORMAT = new DatePattern("yyyy-MM-dd HH:mm:ss", TimeZone.getTimeZone("Europe/Berlin"));
     
     private static final Pattern ATTACHMENT_FILENAME_PATTERN =
             Pattern.compile("<span id=\"filename_[^>]*>(.*?)</span>", Pattern.DOTALL);
@@ -97,6 +93,8 @@ public class KrautReader implements Closeable {
         "<span class=\"omittedinfo\">".toCharArray(),
     };
     
+    private static final SequenceMatcher FILTERS_MATCHER = new SequenceMatcher(FILTERS_OPEN);
+    
     private static final char[][] FILTERS_CLOSE = {
         null,
         "\"".toCharArray(),
@@ -113,7 +111,7 @@ public class KrautReader implements Closeable {
         "</span>".toCharArray()
     };
     
-    private final Reader _in;
+    private final CharScanner _in;
     
     private StringBuilder readBuffer = new StringBuilder();
     private List<ThreadModel> threads;
@@ -123,13 +121,37 @@ public class KrautReader implements Closeable {
     private StringBuilder commentBuffer = new StringBuilder();
     private StringBuilder omittedDigitsBuffer = new StringBuilder();
     private List<AttachmentModel> currentAttachments;
+    /** пропуск уже загруженных постов и подсчёт отпечатков исходного текста */
+    private final KnownPostsFilter knownPostsFilter;
     
     public KrautReader(Reader reader) {
-        _in = reader;
+        _in = reader instanceof CharScanner ? (CharScanner) reader : new CharScanner(reader);
+        knownPostsFilter = new KnownPostsFilter(_in) {
+            @Override
+            protected boolean readPostSource(CharScanner in, StringBuilder out) throws IOException {
+                if (!in.readUntilSequence(FILTERS_OPEN[FILTER_START_COMMENT], out)) return false;
+                out.append(FILTERS_OPEN[FILTER_START_COMMENT]);
+                if (!in.readUntilSequence(FILTERS_CLOSE[FILTER_START_COMMENT], out)) return false;
+                out.append(FILTERS_CLOSE[FILTER_START_COMMENT]);
+                if (!in.readUntilSequence(BLOCKQUOTE_CLOSE, out)) return false;
+                out.append(BLOCKQUOTE_CLOSE);
+                return true;
+            }
+        };
     }
     
     public KrautReader(InputStream in) {
-        this(new BufferedReader(new InputStreamReader(in)));
+        this(new CharScanner(in));
+    }
+    
+    /**
+     * Задать посты, которые уже загружены (при обновлении треда).
+     * Если исходный текст такого поста на странице не изменился, пост не разбирается, в результат добавляется имеющийся объект.
+     * См. {@link nya.miku.wishmaster.api.util.WakabaReader#setKnownPosts(PostModel[])}
+     * @param posts загруженные ранее посты (может принимать null)
+     */
+    public void setKnownPosts(PostModel[] posts) {
+        knownPostsFilter.setKnownPosts(posts);
     }
     
     public ThreadModel[] readPage() throws IOException {
@@ -143,23 +165,14 @@ public class KrautReader implements Closeable {
     }
     
     private void readData() throws IOException {
-        int filtersCount = FILTERS_OPEN.length;
-        int[] pos = new int[filtersCount];
-        int[] len = new int[filtersCount];
-        for (int i=0; i<filtersCount; ++i) len[i] = FILTERS_OPEN[i].length;
-        
+        int state = SequenceMatcher.INITIAL_STATE;
         int curChar;
         while ((curChar = _in.read()) != -1) {
-            for (int i=0; i<filtersCount; ++i) {
-                if (curChar == FILTERS_OPEN[i][pos[i]]) {
-                    ++pos[i];
-                    if (pos[i] == len[i]) {
-                        handleFilter(i);
-                        pos[i] = 0;
-                    }
-                } else {
-                    if (pos[i] != 0) pos[i] = curChar == FILTERS_OPEN[i][0] ? 1 : 0;
-                }
+            state = FILTERS_MATCHER.next(state, curChar);
+            int filter = FILTERS_MATCHER.getMatch(state);
+            if (filter != -1) {
+                handleFilter(filter);
+                state = SequenceMatcher.INITIAL_STATE;
             }
         }
         finalizeThread();
@@ -205,26 +218,29 @@ public class KrautReader implements Closeable {
     private void handleFilter(int filterIndex) throws IOException {
         switch (filterIndex) {
             case FILTER_THREAD_END:
+                knownPostsFilter.cancel();
                 finalizeThread();
                 break;
             case FILTER_POSTNUMBER:
                 currentPost.number = readUntilSequence(FILTERS_CLOSE[filterIndex]).trim();
+                PostModel knownPost = knownPostsFilter.onPostNumber(currentPost.number, isPostDataEmpty());
+                if (knownPost != null) addKnownPost(knownPost);
                 break;
             case FILTER_COUNTRYBALL:
                 parseIcon(readUntilSequence(FILTERS_CLOSE[filterIndex]));
                 break;
             case FILTER_SUBJECT:
-                currentPost.subject = StringEscapeUtils.unescapeHtml4(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
+                currentPost.subject = HtmlTextUtils.unescapeHtml(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
                 break;
             case FILTER_POSTERNAME:
-                currentPost.name = StringEscapeUtils.unescapeHtml4(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
+                currentPost.name = HtmlTextUtils.unescapeHtml(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
                 break;
             case FILTER_TRIPCODE:
-                currentPost.trip += StringEscapeUtils.unescapeHtml4(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
+                currentPost.trip += HtmlTextUtils.unescapeHtml(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
                 break;
             case FILTER_ADMINMARK:
                 skipUntilSequence(">".toCharArray());
-                currentPost.trip += StringEscapeUtils.unescapeHtml4(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
+                currentPost.trip += HtmlTextUtils.unescapeHtml(readUntilSequence(FILTERS_CLOSE[filterIndex])).trim();
                 break;
             case FILTER_DATE:
                 String date = readUntilSequence(FILTERS_CLOSE[filterIndex]);
@@ -236,10 +252,11 @@ public class KrautReader implements Closeable {
                         date = date.substring(0, dotPosition);
                     }
                 } catch (NumberFormatException e) {}
-                try {
-                    currentPost.timestamp = KRAUT_DATEFORMAT.parse(date).getTime() + ms;
-                } catch (Exception e) {
-                    Logger.e(TAG, "unable to parse date", e);
+                long timestamp = KRAUT_DATEFORMAT.parse(date);
+                if (timestamp != DatePattern.INVALID) {
+                    currentPost.timestamp = timestamp + ms;
+                } else {
+                    Logger.e(TAG, "unable to parse date: " + date);
                 }
                 break;
             case FILTER_SAGE:
@@ -253,36 +270,35 @@ public class KrautReader implements Closeable {
             case FILTER_START_COMMENT:
                 skipUntilSequence(FILTERS_CLOSE[filterIndex]);
                 currentPost.comment = readPostComment();
+                currentPost.sourceFingerprint = knownPostsFilter.finishPost();
                 finalizePost();
                 break;
             case FILTER_OMITTEDPOSTS:
+                knownPostsFilter.cancel();
                 parseOmittedString(readUntilSequence(FILTERS_CLOSE[filterIndex]));
                 break;
         }
     }
     
+    /** true, если до номера поста не было прочитано никаких его данных */
+    private boolean isPostDataEmpty() {
+        PostModel post = currentPost;
+        return currentAttachments.isEmpty() && post.name == null && post.subject == null && post.comment == null &&
+                post.email == null && "".equals(post.trip) && post.icons == null && !post.sage && post.timestamp == 0;
+    }
+    
+    /** добавить в тред пропущенный (уже загруженный) пост */
+    private void addKnownPost(PostModel knownPost) {
+        KnownPostsFilter.countPost(currentThread, knownPost);
+        postsBuf.add(knownPost);
+        initPostModel();
+    }
+    
     private String readPostComment() throws IOException {
         commentBuffer.setLength(0);
         commentBuffer.append("<p>");
-        int len = BLOCKQUOTE_CLOSE.length;
-        int pos = 0;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            commentBuffer.append((char) curChar);
-            if (curChar == BLOCKQUOTE_CLOSE[pos]) {
-                ++pos;
-                if (pos == len) break;
-            } else {
-                if (pos != 0) pos = curChar == BLOCKQUOTE_CLOSE[0] ? 1 : 0;
-            }
-        }
-        int buflen = commentBuffer.length();
-        if (buflen > len) {
-            commentBuffer.setLength(buflen - len);
-            return CryptoUtils.fixCloudflareEmails(commentBuffer.toString());
-        } else {
-            return "";
-        }
+        if (!_in.readUntilSequence(BLOCKQUOTE_CLOSE, commentBuffer)) return "";
+        return CryptoUtils.fixCloudflareEmails(commentBuffer.toString());
     }
     
     private void parseOmittedString(String omitted) {
@@ -325,7 +341,7 @@ public class KrautReader implements Closeable {
             else if (ext.equals("mp3") || ext.equals("ogg")) model.type = AttachmentModel.TYPE_VIDEO;
             Matcher origFilenameMatcher = ATTACHMENT_FILENAME_PATTERN.matcher(html);
             if (origFilenameMatcher.find()) {
-                model.originalName = StringEscapeUtils.unescapeHtml4(origFilenameMatcher.group(1).replaceAll("<[^>]*>", "").trim());
+                model.originalName = HtmlTextUtils.unescapeHtml(HtmlTextUtils.removeTags(origFilenameMatcher.group(1)).trim());
             }
             Matcher infoMatcher = ATTACHMENT_INFO_PATTERN.matcher(html);
             if (infoMatcher.find()) {
@@ -370,42 +386,13 @@ public class KrautReader implements Closeable {
     }
     
     private void skipUntilSequence(char[] sequence) throws IOException {
-        int len = sequence.length;
-        if (len == 0) return;
-        int pos = 0;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            if (curChar == sequence[pos]) {
-                ++pos;
-                if (pos == len) break;
-            } else {
-                if (pos != 0) pos = curChar == sequence[0] ? 1 : 0;
-            }
-        }
+        _in.skipUntilSequence(sequence);
     }
     
     private String readUntilSequence(char[] sequence) throws IOException {
-        int len = sequence.length;
-        if (len == 0) return "";
         readBuffer.setLength(0);
-        int pos = 0;
-        int curChar;
-        while ((curChar = _in.read()) != -1) {
-            readBuffer.append((char) curChar);
-            if (curChar == sequence[pos]) {
-                ++pos;
-                if (pos == len) break;
-            } else {
-                if (pos != 0) pos = curChar == sequence[0] ? 1 : 0;
-            }
-        }
-        int buflen = readBuffer.length();
-        if (buflen >= len) {
-            readBuffer.setLength(buflen - len);
-            return readBuffer.toString();
-        } else {
-            return "";
-        }
+        _in.readUntilSequence(sequence, readBuffer);
+        return readBuffer.toString();
     }
     
     @Override
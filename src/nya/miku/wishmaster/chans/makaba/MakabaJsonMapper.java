@@ -32,12 +32,11 @@ import nya.miku.wishmaster.api.models.BadgeIconModel;
 import nya.miku.wishmaster.api.models.BoardModel;
 import nya.miku.wishmaster.api.models.PostModel;
 import nya.miku.wishmaster.api.models.ThreadModel;
+import nya.miku.wishmaster.api.util.HtmlTextUtils;
 import nya.miku.wishmaster.lib.org_json.JSONArray;
 import nya.miku.wishmaster.lib.org_json.JSONException;
 import nya.miku.wishmaster.lib.org_json.JSONObject;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
 import android.content.res.Resources;
 
 /**
@@ -149,8 +148,8 @@ public class MakabaJsonMapper {
         } catch (JSONException e) {
             model.number = Long.toString(source.getLong("num"));
         }
-        model.name = StringEscapeUtils.unescapeHtml4(getStringSafe(source, "name", "").replaceAll("</?span[^>]*?>", ""));
-        model.subject = StringEscapeUtils.unescapeHtml4(getStringSafe(source, "subject", ""));
+        model.name = HtmlTextUtils.unescapeHtml(HtmlTextUtils.removeTags(getStringSafe(source, "name", ""), "span"));
+        model.subject = HtmlTextUtils.unescapeHtml(getStringSafe(source, "subject", ""));
         model.comment = getStringSafe(source, "comment", "");
         model.email = getStringSafe(source, "email", "");
         if (model.email.startsWith("mailto:")) model.email = model.email.substring(7);
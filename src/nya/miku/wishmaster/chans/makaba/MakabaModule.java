@@ -46,6 +46,7 @@ import nya.miku.wishmaster.api.models.SimpleBoardModel;
 import nya.miku.wishmaster.api.models.ThreadModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
 import nya.miku.wishmaster.api.util.ChanModels;
+import nya.miku.wishmaster.api.util.ParallelMapper;
 import nya.miku.wishmaster.chans.AbstractChanModule;
 import nya.miku.wishmaster.common.Logger;
 import nya.miku.wishmaster.http.ExtendedMultipartBuilder;
@@ -139,6 +140,11 @@ public class MakabaModule extends AbstractChanModule {
         return ResourcesCompat.getDrawable(resources, R.drawable.favicon_makaba, null);
     }
     
+    @Override
+    protected boolean useParallelMapping() {
+        return true;
+    }
+    
     @Override
     protected void initHttpClient() {
         setCookie(
@@ -385,12 +391,14 @@ public class MakabaModule extends AbstractChanModule {
             }
         } catch (Exception e) { /* если не получилось сейчас замапить модель доски, и фиг с ней */ }
         
-        JSONArray threads = index.getJSONArray("threads");
-        ThreadModel[] result = new ThreadModel[threads.length()];
-        for (int i=0; i<threads.length(); ++i) {
-            result[i] = mapThreadModel(threads.getJSONObject(i), boardName);
-        }
-        return result;
+        final JSONArray threads = index.getJSONArray("threads");
+        final String board = boardName;
+        return ParallelMapper.map(new ThreadModel[threads.length()], new ParallelMapper.Mapper<ThreadModel>() {
+            @Override
+            public ThreadModel map(int index) {
+                return mapThreadModel(threads.getJSONObject(index), board);
+            }
+        }, useParallelMapping());
     }
 
     @Override
@@ -399,25 +407,27 @@ public class MakabaModule extends AbstractChanModule {
         String url = domainUrl + "makaba/makaba.fcgi?task=catalog&board=" + boardName + "&filter=" + CATALOG_TYPES[catalogType] + "&json=1";
         JSONObject json = downloadJSONObject(url, (oldList != null), listener, task);
         if (json == null) return oldList;
-        JSONArray threads = json.getJSONArray("threads");
-        ThreadModel[] result = new ThreadModel[threads.length()];
-        for (int i=0; i<threads.length(); ++i) {
-            JSONObject curThread = threads.getJSONObject(i);
-            ThreadModel model = new ThreadModel();
-            model.threadNumber = curThread.getString("num");
-            try {
-                model.postsCount = curThread.getInt("posts_count") + 1;
-                model.attachmentsCount = curThread.getInt("files_count");
-                model.attachmentsCount += curThread.getJSONArray("files").length();
-                model.isSticky = curThread.getInt("sticky") != 0;
-                model.isClosed = curThread.getInt("closed") != 0;
-            } catch (Exception e) {
-                Logger.e(TAG, e);
-            } 
-            model.posts = new PostModel[] { mapPostModel(curThread, boardName) };
-            result[i] = model;
-        }
-        return result;
+        final JSONArray threads = json.getJSONArray("threads");
+        final String board = boardName;
+        return ParallelMapper.map(new ThreadModel[threads.length()], new ParallelMapper.Mapper<ThreadModel>() {
+            @Override
+            public ThreadModel map(int index) {
+                JSONObject curThread = threads.getJSONObject(index);
+                ThreadModel model = new ThreadModel();
+                model.threadNumber = curThread.getString("num");
+                try {
+                    model.postsCount = curThread.getInt("posts_count") + 1;
+                    model.attachmentsCount = curThread.getInt("files_count");
+                    model.attachmentsCount += curThread.getJSONArray("files").length();
+                    model.isSticky = curThread.getInt("sticky") != 0;
+                    model.isClosed = curThread.getInt("closed") != 0;
+                } catch (Exception e) {
+                    Logger.e(TAG, e);
+                } 
+                model.posts = new PostModel[] { mapPostModel(curThread, board) };
+                return model;
+            }
+        }, useParallelMapping());
     }
 
     @Override
@@ -20,11 +20,8 @@ package nya.miku.wishmaster.chans.owlchan;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -48,10 +45,12 @@ import nya.miku.wishmaster.api.models.SendPostModel;
 import nya.miku.wishmaster.api.models.SimpleBoardModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
 import nya.miku.wishmaster.api.util.ChanModels;
+import nya.miku.wishmaster.api.util.DatePattern;
 import nya.miku.wishmaster.api.util.WakabaReader;
 import nya.miku.wishmaster.chans.AbstractWakabaModule;
 import nya.miku.wishmaster.common.IOUtils;
 import nya.miku.wishmaster.http.ExtendedMultipartBuilder;
+import nya.miku.wishmaster.http.streamer.HostRateLimiter;
 import nya.miku.wishmaster.http.streamer.HttpRequestModel;
 import nya.miku.wishmaster.http.streamer.HttpResponseModel;
 import nya.miku.wishmaster.http.streamer.HttpStreamer;
@@ -75,11 +74,7 @@ public class OwlchanModule extends AbstractWakabaModule { //TODO detect HTTP 404
     };
     private static final String[] ATTACHMENT_FORMATS = new String[] { "jpg", "jpeg", "png", "gif" };
     
-    private static final DateFormat DATEFORMAT;
-    static {
-        DATEFORMAT = new SimpleDateFormat("dd/MM/yy | HH:mm:ss", Locale.US);
-        DATEFORMAT.setTimeZone(TimeZone.getTimeZone("GMT+3"));
-    }
+    private static final DatePattern DATEFORMAT = new DatePattern("dd/MM/yy | HH:mm:ss", TimeZone.getTimeZone("GMT+3"));
     
     private static final Pattern ERROR_POSTING = Pattern.compile("<h2(?:[^>]*)>(.*?)</h2>", Pattern.DOTALL);
     
@@ -107,6 +102,11 @@ public class OwlchanModule extends AbstractWakabaModule { //TODO detect HTTP 404
         return DOMAIN;
     }
     
+    @Override
+    protected void initRateLimits(HostRateLimiter limiter) {
+        limiter.setLimit(DOMAIN, 3, 8);
+    }
+    
     @Override
     protected boolean canHttps() {
         return true;
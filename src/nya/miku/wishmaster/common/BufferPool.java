@@ -0,0 +1,179 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Общий пул байтовых массивов (буферов ввода/вывода).<br>
+ * Массивы выдаются по классам размеров (степени двойки от {@link #MIN_SIZE} до {@link #MAX_SIZE}),
+ * общий объём хранимых в пуле массивов ограничен {@link #MAX_POOLED_BYTES}.
+ * Массив, возвращённый в пул методом {@link #release(byte[])}, больше нельзя использовать.
+ * @author miku-nyan
+ *
+ */
+public class BufferPool {
+    /** минимальный размер массива из пула */
+    public static final int MIN_SIZE = 4 * 1024;
+    /** максимальный размер массива из пула (массивы большего размера создаются без пула) */
+    public static final int MAX_SIZE = 1024 * 1024;
+    /** максимальный общий объём массивов, хранимых в пуле */
+    private static final int MAX_POOLED_BYTES = 3 * 1024 * 1024;
+
+    private static final int MIN_SHIFT = 12;
+    private static final int CLASSES = 9;
+
+    private static final ArrayList<ArrayList<byte[]>> pool = new ArrayList<ArrayList<byte[]>>(CLASSES);
+    private static int pooledBytes = 0;
+    static {
+        for (int i=0; i<CLASSES; ++i) pool.add(new ArrayList<byte[]>());
+    }
+
+    private BufferPool() {}
+
+    /**
+     * Получить массив из пула
+     * @param minSize минимальный размер массива
+     * @return массив размером не меньше minSize (округляется вверх до класса размера)
+     */
+    public static byte[] obtain(int minSize) {
+        int sizeClass = getSizeClass(minSize);
+        if (sizeClass == -1) return new byte[minSize];
+        synchronized (pool) {
+            ArrayList<byte[]> list = pool.get(sizeClass);
+            if (!list.isEmpty()) {
+                byte[] buffer = list.remove(list.size() - 1);
+                pooledBytes -= buffer.length;
+                return buffer;
+            }
+        }
+        return new byte[MIN_SIZE << sizeClass];
+    }
+
+    /**
+     * Вернуть массив в пул. Массивы, полученные не из пула (размер не совпадает с классом), игнорируются.
+     * @param buffer массив (может принимать null)
+     */
+    public static void release(byte[] buffer) {
+        if (buffer == null) return;
+        int sizeClass = getSizeClass(buffer.length);
+        if (sizeClass == -1 || buffer.length != MIN_SIZE << sizeClass) return;
+        synchronized (pool) {
+            if (pooledBytes + buffer.length > MAX_POOLED_BYTES) return;
+            pool.get(sizeClass).add(buffer);
+            pooledBytes += buffer.length;
+        }
+    }
+
+    /** Очистить пул (например, при нехватке памяти) */
+    public static void clear() {
+        synchronized (pool) {
+            for (ArrayList<byte[]> list : pool) list.clear();
+            pooledBytes = 0;
+        }
+    }
+
+    /** номер класса размера, или -1, если размер больше максимального */
+    private static int getSizeClass(int size) {
+        if (size > MAX_SIZE) return -1;
+        if (size <= MIN_SIZE) return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * Расширяемый байтовый буфер (аналог {@link java.io.ByteArrayOutputStream}) на массивах из пула.
+     * Полученные данные можно прочитать без копирования ({@link #toInputStream()}).
+     * После использования буфер необходимо освободить методом {@link #recycle()}.
+     */
+    public static class Sink extends OutputStream {
+        private byte[] buf;
+        private int count;
+
+        /**
+         * Конструктор
+         * @param expectedSize ожидаемый объём данных (например, Content-Length), или значение <= 0, если неизвестен.
+         * Начальный размер буфера не превышает {@link #MAX_SIZE}, при необходимости буфер расширяется.
+         */
+        public Sink(long expectedSize) {
+            buf = obtain(expectedSize > 0 ? (int) Math.min(expectedSize, MAX_SIZE) : MIN_SIZE);
+        }
+
+        public Sink() {
+            this(0);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(int size) {
+            if (buf == null) throw new IllegalStateException("sink is recycled");
+            if (size <= buf.length) return;
+            byte[] newBuf = obtain(Math.max(buf.length << 1, size));
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            release(buf);
+            buf = newBuf;
+        }
+
+        /** Получить объём записанных данных */
+        public int size() {
+            return count;
+        }
+
+        /** Получить копию записанных данных */
+        public byte[] toByteArray() {
+            byte[] result = new byte[count];
+            System.arraycopy(buf, 0, result, 0, count);
+            return result;
+        }
+
+        /**
+         * Получить поток для чтения записанных данных без копирования.
+         * Закрытие потока освобождает буфер ({@link #recycle()}), после этого поток и буфер использовать нельзя.
+         */
+        public InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count) {
+                @Override
+                public void close() {
+                    recycle();
+                }
+            };
+        }
+
+        /** Вернуть массив в пул, повторные вызовы игнорируются */
+        public void recycle() {
+            byte[] buffer = buf;
+            buf = null;
+            count = 0;
+            release(buffer);
+        }
+    }
+}
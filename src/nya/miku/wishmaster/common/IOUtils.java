@@ -24,6 +24,8 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Locale;
 
 import nya.miku.wishmaster.api.interfaces.CancellableTask;
@@ -34,15 +36,74 @@ public class IOUtils {
     
     private IOUtils() {}
     
+    /** размер блока при копировании в файловый канал */
+    private static final int CHANNEL_BLOCK_SIZE = 64 * 1024;
+    
     /**
-     * Копирование данных из потока from в поток to. (буфер 8КБ)
+     * Копирование данных из потока from в поток to. (буфер 8КБ из {@link BufferPool})
      */
     public static void copyStream(InputStream from, OutputStream to) throws IOException {
-        byte data[] = new byte[8192];
-        int count;
-
-        while ((count = from.read(data)) != -1) {
-            to.write(data, 0, count);
+        byte data[] = BufferPool.obtain(8192);
+        try {
+            int count;
+            while ((count = from.read(data, 0, 8192)) != -1) {
+                to.write(data, 0, count);
+            }
+        } finally {
+            BufferPool.release(data);
+        }
+    }
+    
+    /**
+     * Прочитать поток полностью в массив байт (промежуточные буферы берутся из {@link BufferPool})
+     * @param from исходный поток
+     * @param expectedSize ожидаемый объём данных (например, Content-Length), или значение <= 0, если неизвестен
+     * @return массив прочитанных байт
+     */
+    public static byte[] readFully(InputStream from, long expectedSize) throws IOException {
+        BufferPool.Sink sink = new BufferPool.Sink(expectedSize);
+        try {
+            copyStream(from, sink);
+            return sink.toByteArray();
+        } finally {
+            sink.recycle();
+        }
+    }
+    
+    /**
+     * Копирование данных из потока from в файловый канал to (с текущей позиции канала) блоками по 64КБ.
+     * Отмена задачи проверяется и прогресс передаётся один раз на блок, поэтому исходный поток не нужно модифицировать
+     * методом {@link #modifyInputStream(InputStream, ProgressListener, CancellableTask)}.
+     * @param listener интерфейс отслеживания прогресса (может принимать null)
+     * @param task задача, отмена которой прервёт копирование (может принимать null)
+     * @return количество скопированных байт
+     */
+    public static long copyStream(InputStream from, FileChannel to, ProgressListener listener, CancellableTask task) throws IOException {
+        byte data[] = BufferPool.obtain(CHANNEL_BLOCK_SIZE);
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, CHANNEL_BLOCK_SIZE);
+        long total = 0;
+        try {
+            boolean eof = false;
+            while (!eof) {
+                if (task != null && task.isCancelled()) throw new InterruptedStreamException();
+                int length = 0;
+                while (length < CHANNEL_BLOCK_SIZE) {
+                    int count = from.read(data, length, CHANNEL_BLOCK_SIZE - length);
+                    if (count == -1) {
+                        eof = true;
+                        break;
+                    }
+                    length += count;
+                }
+                buffer.clear();
+                buffer.limit(length);
+                while (buffer.hasRemaining()) to.write(buffer);
+                total += length;
+                if (listener != null && length > 0) listener.setProgress(total);
+            }
+            return total;
+        } finally {
+            BufferPool.release(data);
         }
     }
     
@@ -42,6 +42,7 @@ import nya.miku.wishmaster.chans.infinity.InfinityModule;
 import nya.miku.wishmaster.chans.krautchan.KrautModule;
 import nya.miku.wishmaster.chans.makaba.MakabaModule;
 import nya.miku.wishmaster.chans.owlchan.OwlchanModule;
+import nya.miku.wishmaster.http.client.CachingDnsResolver;
 import nya.miku.wishmaster.http.streamer.HttpStreamer;
 import nya.miku.wishmaster.ui.Database;
 import nya.miku.wishmaster.ui.downloading.DownloadingLocker;
@@ -53,8 +54,13 @@ import org.acra.ACRA;
 import org.acra.annotation.ReportsCrashes;
 
 import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
+import android.net.ConnectivityManager;
 import android.os.Build;
 import android.os.Environment;
 import android.preference.PreferenceManager;
@@ -126,6 +132,13 @@ public class MainApplication extends Application {
     
     private void initObjects() {
         HttpStreamer.initInstance();
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                //в другой сети адреса хостов могут отличаться (другой DNS, VPN и т.п.)
+                CachingDnsResolver.getInstance().clear();
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
         preferences = PreferenceManager.getDefaultSharedPreferences(this);
         resources = this.getResources();
         settings = new ApplicationSettings(preferences, resources);
@@ -192,6 +205,7 @@ public class MainApplication extends Application {
         pagesCache.clearLru();
         bitmapCache.clearLru();
         draftsCache.clearLru();
+        BufferPool.clear();
     }
     
 }
@@ -22,5 +22,15 @@ public class HttpConstants {
     
     public static final String USER_AGENT_STRING = "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:31.0) Gecko/20100101 Firefox/31.0";
     public static final int DEFAULT_HTTP_TIMEOUT = 15 * 1000;
+    /** максимальное количество одновременных фоновых запросов (миниатюры, файлы, обновление вкладок) к одному хосту */
+    public static final int MAX_CONNECTIONS_PER_HOST = 2;
+    /** количество соединений к хосту сверх {@link #MAX_CONNECTIONS_PER_HOST}, доступных только интерактивным запросам */
+    public static final int RESERVED_INTERACTIVE_CONNECTIONS = 1;
+    /** максимальное количество дополнительных соединений к хосту, доступных только загрузке файлов по частям */
+    public static final int MAX_SEGMENT_CONNECTIONS_PER_HOST = 3;
+    /** ограничение пула соединений к одному хосту (все виды запросов вместе) */
+    public static final int MAX_CONNECTIONS_PER_ROUTE =
+            MAX_CONNECTIONS_PER_HOST + RESERVED_INTERACTIVE_CONNECTIONS + MAX_SEGMENT_CONNECTIONS_PER_HOST;
+    public static final int MAX_CONNECTIONS_TOTAL = 30;
     
 }
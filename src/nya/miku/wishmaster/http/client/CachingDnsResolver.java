@@ -0,0 +1,149 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.http.client;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import nya.miku.wishmaster.common.Logger;
+import nya.miku.wishmaster.common.PriorityThreadFactory;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+/**
+ * Общий для всех HTTP-клиентов кэш DNS.<br>
+ * Разрешённые адреса хранятся {@link #TTL} и не теряются при пересоздании клиентов (смена прокси, настроек модуля).
+ * Если запись используется после {@link #REFRESH_AFTER}, она обновляется в фоне, а запрос сразу получает сохранённые адреса.
+ * Если фоновое обновление не удалось, сохранённые адреса используются до истечения TTL.<br>
+ * Кэш очищается при смене сети, запись хоста удаляется, если не удалось установить с ним соединение.
+ * @author miku-nyan
+ *
+ */
+
+/* Google пометила все классы и интерфейсы пакета org.apache.http как "deprecated" в API 22 (Android 5.1)
+ * На самом деле используется актуальная версия apache-hc httpclient 4.3.5.1-android
+ * Подробности: https://issues.apache.org/jira/browse/HTTPCLIENT-1632 */
+@SuppressWarnings("deprecation")
+
+public class CachingDnsResolver implements DnsResolver {
+    private static final String TAG = "CachingDnsResolver";
+
+    /** время хранения записи, мс */
+    public static final long TTL = 10 * 60 * 1000;
+    /** время, после которого запись обновляется в фоне при обращении, мс */
+    public static final long REFRESH_AFTER = 3 * 60 * 1000;
+    /** максимальное количество записей */
+    private static final int MAX_ENTRIES = 128;
+
+    private static final CachingDnsResolver INSTANCE = new CachingDnsResolver(SystemDefaultDnsResolver.INSTANCE);
+
+    /** Получить общий экземпляр */
+    public static CachingDnsResolver getInstance() {
+        return INSTANCE;
+    }
+
+    private final DnsResolver resolver;
+    private final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private CachingDnsResolver(DnsResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        final String key = host.toLowerCase(Locale.US);
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry != null && now - entry.time < TTL) {
+                if (now - entry.time > REFRESH_AFTER && !entry.refreshing) {
+                    entry.refreshing = true;
+                    PriorityThreadFactory.LOW_PRIORITY_FACTORY.newThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            refresh(key);
+                        }
+                    }).start();
+                }
+                return entry.addresses.clone();
+            }
+        }
+        InetAddress[] addresses = resolver.resolve(host);
+        put(key, addresses);
+        return addresses.clone();
+    }
+
+    private void refresh(String key) {
+        try {
+            put(key, resolver.resolve(key));
+        } catch (Exception e) {
+            Logger.e(TAG, "cannot refresh " + key, e);
+            synchronized (cache) {
+                Entry entry = cache.get(key);
+                if (entry != null) entry.refreshing = false;
+            }
+        }
+    }
+
+    private void put(String key, InetAddress[] addresses) {
+        if (addresses == null || addresses.length == 0) return;
+        synchronized (cache) {
+            cache.put(key, new Entry(addresses, System.currentTimeMillis()));
+        }
+    }
+
+    /** Очистить кэш (при смене сети) */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Удалить запись хоста (если не удалось установить соединение, адрес мог измениться)
+     * @param host имя хоста
+     */
+    public void evict(String host) {
+        if (host == null) return;
+        synchronized (cache) {
+            cache.remove(host.toLowerCase(Locale.US));
+        }
+    }
+
+    private static class Entry {
+        private final InetAddress[] addresses;
+        private final long time;
+        private boolean refreshing = false;
+
+        public Entry(InetAddress[] addresses, long time) {
+            this.addresses = addresses;
+            this.time = time;
+        }
+    }
+}
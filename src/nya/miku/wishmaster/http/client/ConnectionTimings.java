@@ -0,0 +1,208 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.http.client;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Замер времени установки соединений (разрешение DNS, TCP-соединение вместе с SSL-рукопожатием).<br>
+ * Соединения устанавливаются в потоке, выполняющем запрос ({@link org.apache.http.client.HttpClient#execute}),
+ * поэтому замеры накапливаются в переменной потока и забираются после выполнения запроса методом {@link #take()}.
+ * Если соединение было взято из пула, замеры будут нулевыми.<br>
+ * Для SSL-соединений также определяется, было ли рукопожатие полным или сессия была возобновлена из кэша,
+ * общее количество рукопожатий обоих видов доступно через {@link #getFullHandshakes()} и {@link #getResumedHandshakes()}.<br>
+ * Если соединение установить не удалось, адрес хоста удаляется из кэша DNS ({@link CachingDnsResolver#evict(String)}).
+ * @author miku-nyan
+ *
+ */
+
+/* Google пометила все классы и интерфейсы пакета org.apache.http как "deprecated" в API 22 (Android 5.1)
+ * На самом деле используется актуальная версия apache-hc httpclient 4.3.5.1-android
+ * Подробности: https://issues.apache.org/jira/browse/HTTPCLIENT-1632 */
+@SuppressWarnings("deprecation")
+
+public class ConnectionTimings {
+    /** время разрешения DNS, нс */
+    public long dnsTime;
+    /** время установки соединения (включая SSL-рукопожатие), нс */
+    public long connectTime;
+    /** SSL-рукопожатие: {@link #HANDSHAKE_NONE}, {@link #HANDSHAKE_FULL} или {@link #HANDSHAKE_RESUMED} */
+    public int handshake;
+
+    /** SSL-рукопожатие не выполнялось (соединение без SSL или из пула) */
+    public static final int HANDSHAKE_NONE = 0;
+    /** полное SSL-рукопожатие (новая сессия) */
+    public static final int HANDSHAKE_FULL = 1;
+    /** сокращённое SSL-рукопожатие (сессия возобновлена из кэша) */
+    public static final int HANDSHAKE_RESUMED = 2;
+
+    private static final AtomicLong fullHandshakes = new AtomicLong();
+    private static final AtomicLong resumedHandshakes = new AtomicLong();
+
+    private static final ThreadLocal<ConnectionTimings> current = new ThreadLocal<ConnectionTimings>() {
+        @Override
+        protected ConnectionTimings initialValue() {
+            return new ConnectionTimings();
+        }
+    };
+
+    /** Очистить накопленные замеры текущего потока (перед выполнением запроса) */
+    public static void reset() {
+        ConnectionTimings timings = current.get();
+        timings.dnsTime = 0;
+        timings.connectTime = 0;
+        timings.handshake = HANDSHAKE_NONE;
+    }
+
+    /** Получить общее количество полных SSL-рукопожатий */
+    public static long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /** Получить общее количество SSL-рукопожатий с возобновлением сессии */
+    public static long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Забрать замеры, накопленные в текущем потоке с момента последнего вызова {@link #reset()} или {@link #take()}
+     * @return новый объект с замерами
+     */
+    public static ConnectionTimings take() {
+        ConnectionTimings timings = current.get();
+        ConnectionTimings result = new ConnectionTimings();
+        result.dnsTime = timings.dnsTime;
+        result.connectTime = timings.connectTime;
+        result.handshake = timings.handshake;
+        timings.dnsTime = 0;
+        timings.connectTime = 0;
+        timings.handshake = HANDSHAKE_NONE;
+        return result;
+    }
+
+    /** Обернуть фабрику сокетов, добавить замер времени соединения */
+    static ConnectionSocketFactory wrap(ConnectionSocketFactory factory) {
+        return new TimingSocketFactory(factory);
+    }
+
+    /** Обернуть фабрику SSL-сокетов, добавить замер времени соединения */
+    static LayeredConnectionSocketFactory wrap(LayeredConnectionSocketFactory factory) {
+        return new TimingLayeredSocketFactory(factory);
+    }
+
+    /** Обернуть DNS-резолвер, добавить замер времени разрешения имени */
+    static DnsResolver wrap(final DnsResolver resolver) {
+        return new DnsResolver() {
+            @Override
+            public InetAddress[] resolve(String host) throws UnknownHostException {
+                long start = System.nanoTime();
+                try {
+                    return resolver.resolve(host);
+                } finally {
+                    current.get().dnsTime += System.nanoTime() - start;
+                }
+            }
+        };
+    }
+
+    /**
+     * Учесть SSL-рукопожатие установленного соединения.
+     * Сессия, созданная раньше начала соединения, была взята из кэша (рукопожатие сокращённое).
+     * @param socket сокет соединения
+     * @param startTime время начала соединения (System.currentTimeMillis())
+     */
+    private static void countHandshake(Socket socket, long startTime) {
+        if (!(socket instanceof SSLSocket)) return;
+        SSLSession session = ((SSLSocket) socket).getSession();
+        if (session == null || !session.isValid()) return;
+        if (session.getCreationTime() < startTime) {
+            current.get().handshake = HANDSHAKE_RESUMED;
+            resumedHandshakes.incrementAndGet();
+        } else {
+            current.get().handshake = HANDSHAKE_FULL;
+            fullHandshakes.incrementAndGet();
+        }
+    }
+
+    private static class TimingSocketFactory implements ConnectionSocketFactory {
+        private final ConnectionSocketFactory factory;
+
+        public TimingSocketFactory(ConnectionSocketFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return factory.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+                InetSocketAddress localAddress, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            long startTime = System.currentTimeMillis();
+            try {
+                Socket socket = factory.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+                countHandshake(socket, startTime);
+                return socket;
+            } catch (IOException e) {
+                if (host != null) CachingDnsResolver.getInstance().evict(host.getHostName());
+                throw e;
+            } finally {
+                current.get().connectTime += System.nanoTime() - start;
+            }
+        }
+    }
+
+    private static class TimingLayeredSocketFactory extends TimingSocketFactory implements LayeredConnectionSocketFactory {
+        private final LayeredConnectionSocketFactory factory;
+
+        public TimingLayeredSocketFactory(LayeredConnectionSocketFactory factory) {
+            super(factory);
+            this.factory = factory;
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            long startTime = System.currentTimeMillis();
+            try {
+                Socket layeredSocket = factory.createLayeredSocket(socket, target, port, context);
+                countHandshake(layeredSocket, startTime);
+                return layeredSocket;
+            } finally {
+                current.get().connectTime += System.nanoTime() - start;
+            }
+        }
+    }
+}
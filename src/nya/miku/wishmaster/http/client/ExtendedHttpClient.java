@@ -33,12 +33,18 @@ import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.impl.client.BasicCookieStoreHC4;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 
 import android.os.Build;
 
@@ -106,30 +112,54 @@ public class ExtendedHttpClient extends HttpClientWrapper {
                 setUserAgent(HttpConstants.USER_AGENT_STRING).
                 setProxy(proxy).
                 setDefaultCookieStore(cookieStore).
-                setSSLSocketFactory(obtainSSLSocketFactory(safe)).
+                setConnectionManager(buildConnectionManager(safe)).
                 build();
     }
     
     /**
-     * Получить фабрику сокетов SSL
+     * Создать пул соединений. Фабрики сокетов и DNS-резолвер обёрнуты для замера времени установки соединений
+     * (см. {@link ConnectionTimings}). Кэш DNS ({@link CachingDnsResolver}) и фабрики SSL-сокетов (вместе с кэшем SSL-сессий)
+     * общие для всех клиентов, поэтому пересоздание клиента не приводит к повторному разрешению имён и полным SSL-рукопожатиям.
+     * @param safe безопасность, если false, проверка имени и сертификата SSL будет отключена
+     */
+    private static HttpClientConnectionManager buildConnectionManager(boolean safe) {
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create().
+                register("http", ConnectionTimings.wrap(PlainConnectionSocketFactory.getSocketFactory())).
+                register("https", ConnectionTimings.wrap(obtainSSLSocketFactory(safe))).
+                build();
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(registry, ConnectionTimings.wrap(CachingDnsResolver.getInstance()));
+        connectionManager.setDefaultMaxPerRoute(HttpConstants.MAX_CONNECTIONS_PER_ROUTE);
+        connectionManager.setMaxTotal(HttpConstants.MAX_CONNECTIONS_TOTAL);
+        return connectionManager;
+    }
+    
+    /**
+     * Получить фабрику сокетов SSL (общий экземпляр, создаётся при первом обращении)
      * @param safe безопасность, если false, проверка имени и сертификата будет отключена
      */
-    private static LayeredConnectionSocketFactory obtainSSLSocketFactory(boolean safe) {
+    private static synchronized LayeredConnectionSocketFactory obtainSSLSocketFactory(boolean safe) {
         fixSupportedProtocols();
         if (safe) {
-            return SSLConnectionSocketFactory.getSocketFactory();
+            if (safe_ssl_factory == null) safe_ssl_factory = SSLConnectionSocketFactory.getSocketFactory();
+            return safe_ssl_factory;
         } else {
-            try {
-                if (unsafe_ssl_context == null) unsafe_ssl_context = SSLContexts.custom().loadTrustMaterial(null, TRUST_ALL).build();
-                return new SSLConnectionSocketFactory(unsafe_ssl_context, SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-            } catch (Exception e) {
-                Logger.e(TAG, "cannot instantiate the unsafe SSL socket factory", e);
-                return SSLConnectionSocketFactory.getSocketFactory();
+            if (unsafe_ssl_factory == null) {
+                try {
+                    SSLContext unsafe_ssl_context = SSLContexts.custom().loadTrustMaterial(null, TRUST_ALL).build();
+                    unsafe_ssl_factory =
+                            new SSLConnectionSocketFactory(unsafe_ssl_context, SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+                } catch (Exception e) {
+                    Logger.e(TAG, "cannot instantiate the unsafe SSL socket factory", e);
+                    return obtainSSLSocketFactory(true);
+                }
             }
+            return unsafe_ssl_factory;
         }
     }
     
-    private static SSLContext unsafe_ssl_context = null;
+    private static LayeredConnectionSocketFactory safe_ssl_factory = null;
+    private static LayeredConnectionSocketFactory unsafe_ssl_factory = null;
     
     /** стратегия доверять всем без проверки сертификата */
     private static final TrustStrategy TRUST_ALL = new TrustStrategy() {
@@ -19,10 +19,9 @@
 package nya.miku.wishmaster.http.cloudflare;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 
 import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.common.BufferPool;
 import nya.miku.wishmaster.common.IOUtils;
 import nya.miku.wishmaster.common.Logger;
 import nya.miku.wishmaster.http.HttpConstants;
@@ -115,7 +114,8 @@ import android.webkit.WebViewClient;
                             return new WebResourceResponse("text/html", "UTF-8", new ByteArrayInputStream("cookie received".getBytes()));
                         }
                     }
-                    BufOutputStream output = new BufOutputStream();
+                    //буфер вернётся в пул, когда WebView закроет поток
+                    BufferPool.Sink output = new BufferPool.Sink(responseModel.contentLength);
                     IOUtils.copyStream(responseModel.stream, output);
                     return new WebResourceResponse(null, null, output.toInputStream());
                 } catch (Exception e) {
@@ -165,13 +165,4 @@ import android.webkit.WebViewClient;
         });
         return currentCookie;
     }
-    
-    private static class BufOutputStream extends ByteArrayOutputStream {
-        public BufOutputStream() {
-            super(1024);
-        }
-        public InputStream toInputStream() {
-            return new ByteArrayInputStream(buf, 0, count);
-        }
-    }
 }
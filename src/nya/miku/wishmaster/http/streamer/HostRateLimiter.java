@@ -0,0 +1,174 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.http.streamer;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+
+import nya.miku.wishmaster.api.interfaces.CancellableTask;
+
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Ограничение частоты запросов к хостам (token bucket).<br>
+ * Для каждого хоста хранится запас разрешений (не больше burst), который пополняется со скоростью rate разрешений в секунду.
+ * Каждый запрос {@link HttpStreamer} расходует одно разрешение, если запас исчерпан - запрос ожидает пополнения.<br>
+ * Ограничения для хостов задаются модулями (см. nya.miku.wishmaster.chans.AbstractChanModule#initRateLimits),
+ * для остальных хостов используются значения по умолчанию ({@link #DEFAULT_RATE}, {@link #DEFAULT_BURST}).
+ * Если сервер ответил 429 или 503 с заголовком Retry-After, запросы к хосту приостанавливаются на указанное время
+ * (не дольше {@link #MAX_RETRY_AFTER}).<br>
+ * Время ожидания запросов учитывается в статистике {@link HttpStatistics}.
+ * @author miku-nyan
+ *
+ */
+public class HostRateLimiter {
+    /** частота запросов по умолчанию, запросов в секунду */
+    public static final double DEFAULT_RATE = 10;
+    /** максимальное количество запросов подряд без ожидания по умолчанию */
+    public static final int DEFAULT_BURST = 20;
+    /** максимальное время приостановки запросов по заголовку Retry-After, мс */
+    public static final long MAX_RETRY_AFTER = 60000;
+    /** интервал проверки отмены задачи во время ожидания, мс */
+    private static final long CHECK_INTERVAL = 100;
+
+    private final HashMap<String, Bucket> buckets = new HashMap<String, Bucket>();
+    private final HashMap<String, double[]> limits = new HashMap<String, double[]>();
+
+    /**
+     * Установить ограничение частоты запросов к хосту
+     * @param host имя хоста (с портом, если порт нестандартный)
+     * @param rate частота запросов, запросов в секунду (0 - без ограничения)
+     * @param burst максимальное количество запросов подряд без ожидания
+     */
+    public void setLimit(String host, double rate, int burst) {
+        host = host.toLowerCase(Locale.US);
+        synchronized (buckets) {
+            limits.put(host, new double[] { rate, Math.max(burst, 1) });
+            Bucket bucket = buckets.get(host);
+            if (bucket != null) {
+                synchronized (bucket) {
+                    bucket.setLimit(rate, Math.max(burst, 1));
+                    bucket.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Получить разрешение на запрос к хосту, при необходимости ожидая пополнения запаса или окончания паузы Retry-After
+     * @param host имя хоста
+     * @param task задача, отмена которой прервёт ожидание (может принимать null)
+     * @return время ожидания, нс
+     * @throws InterruptedException если задача была отменена во время ожидания
+     */
+    long acquire(String host, CancellableTask task) throws InterruptedException {
+        long start = System.nanoTime();
+        Bucket bucket = getBucket(host);
+        synchronized (bucket) {
+            while (true) {
+                long now = System.nanoTime();
+                long delay = bucket.tryAcquire(now);
+                if (delay == 0) break;
+                if (task != null && task.isCancelled()) throw new InterruptedException();
+                bucket.wait(Math.max(1, Math.min(delay / 1000000, CHECK_INTERVAL)));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Приостановить запросы к хосту в соответствии со значением заголовка Retry-After
+     * @param host имя хоста
+     * @param retryAfter значение заголовка (количество секунд или дата HTTP)
+     * @return время приостановки, мс, или 0, если значение некорректно
+     */
+    long retryAfter(String host, String retryAfter) {
+        long delay = parseRetryAfter(retryAfter);
+        if (delay <= 0) return 0;
+        delay = Math.min(delay, MAX_RETRY_AFTER);
+        Bucket bucket = getBucket(host);
+        synchronized (bucket) {
+            bucket.pausedUntil = Math.max(bucket.pausedUntil, System.nanoTime() + delay * 1000000);
+            //после паузы запросы возобновляются постепенно, а не всем запасом сразу
+            bucket.tokens = 0;
+            bucket.lastRefill = bucket.pausedUntil;
+        }
+        return delay;
+    }
+
+    /** разобрать значение Retry-After, возвращает задержку в мс или -1 */
+    private static long parseRetryAfter(String value) {
+        if (value == null) return -1;
+        value = value.trim();
+        try {
+            return Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date == null ? -1 : date.getTime() - System.currentTimeMillis();
+        }
+    }
+
+    private Bucket getBucket(String host) {
+        synchronized (buckets) {
+            Bucket bucket = buckets.get(host);
+            if (bucket == null) {
+                double[] limit = limits.get(host);
+                bucket = limit == null ? new Bucket(DEFAULT_RATE, DEFAULT_BURST) : new Bucket(limit[0], (int) limit[1]);
+                buckets.put(host, bucket);
+            }
+            return bucket;
+        }
+    }
+
+    /**
+     * Запас разрешений одного хоста
+     */
+    private static class Bucket {
+        private double rate;
+        private int burst;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private long pausedUntil = lastRefill;
+
+        public Bucket(double rate, int burst) {
+            setLimit(rate, burst);
+            this.tokens = burst;
+        }
+
+        public void setLimit(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+            if (tokens > burst) tokens = burst;
+        }
+
+        /** израсходовать разрешение, возвращает 0 при успехе или оценку времени ожидания, нс */
+        public long tryAcquire(long now) {
+            if (now - pausedUntil < 0) return pausedUntil - now;
+            if (rate <= 0) return 0;
+            tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) ((1 - tokens) * 1e9 / rate));
+        }
+    }
+}
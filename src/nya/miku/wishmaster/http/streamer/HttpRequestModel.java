@@ -41,6 +41,19 @@ public class HttpRequestModel {
     static final int METHOD_GET = 0;
     static final int METHOD_POST = 1;
     
+    /** класс трафика определяется автоматически (по умолчанию), см. {@link Builder#setTrafficClass(int)} */
+    public static final int TRAFFIC_AUTO = -1;
+    /** класс трафика: интерактивная загрузка страницы (наивысший приоритет) */
+    public static final int TRAFFIC_INTERACTIVE = 0;
+    /** класс трафика: отправка поста (интерактивный) */
+    public static final int TRAFFIC_POSTING = 1;
+    /** класс трафика: миниатюры (фоновый) */
+    public static final int TRAFFIC_THUMBNAILS = 2;
+    /** класс трафика: оригиналы вложений (фоновый) */
+    public static final int TRAFFIC_ORIGINALS = 3;
+    /** класс трафика: фоновое обновление вкладок (фоновый) */
+    public static final int TRAFFIC_BACKGROUND = 4;
+    
     //package
     /** метод запроса (GET или POST) */
     final int method;
@@ -54,6 +67,8 @@ public class HttpRequestModel {
     final HttpEntity postEntity;
     /** значение таймаута (0 соответствует бесконечности). */
     final int timeoutValue;
+    /** класс трафика (константа TRAFFIC_*) */
+    final int trafficClass;
     
     private HttpRequestModel(
             int method,
@@ -61,13 +76,30 @@ public class HttpRequestModel {
             boolean noRedirect,
             Header[] customHeaders,
             HttpEntity postEntity,
-            int timeoutValue) {
+            int timeoutValue,
+            int trafficClass) {
         this.method = method;
         this.checkIfModified = checkIfModified;
         this.noRedirect = noRedirect;
         this.customHeaders = customHeaders;
         this.postEntity = postEntity;
         this.timeoutValue = timeoutValue;
+        this.trafficClass = trafficClass;
+    }
+    
+    /**
+     * Получить копию модели запроса с дополнительными HTTP-заголовками
+     */
+    HttpRequestModel withAdditionalHeaders(Header... headers) {
+        Header[] newHeaders;
+        if (customHeaders == null || customHeaders.length == 0) {
+            newHeaders = headers;
+        } else {
+            newHeaders = new Header[customHeaders.length + headers.length];
+            System.arraycopy(customHeaders, 0, newHeaders, 0, customHeaders.length);
+            System.arraycopy(headers, 0, newHeaders, customHeaders.length, headers.length);
+        }
+        return new HttpRequestModel(method, checkIfModified, noRedirect, newHeaders, postEntity, timeoutValue, trafficClass);
     }
     
     /**
@@ -84,6 +116,7 @@ public class HttpRequestModel {
         private Header[] customHeaders = null;
         private HttpEntity postEntity = null;
         private int timeoutValue = HttpConstants.DEFAULT_HTTP_TIMEOUT;
+        private int trafficClass = TRAFFIC_AUTO;
         
         private Builder() {}
         
@@ -142,13 +175,24 @@ public class HttpRequestModel {
             return this;
         }
         
+        /**
+         * Установить класс трафика (константа TRAFFIC_*). Пока выполняются интерактивные запросы ({@link #TRAFFIC_INTERACTIVE},
+         * {@link #TRAFFIC_POSTING}), запросы фоновых классов приостанавливаются.
+         * По умолчанию {@link #TRAFFIC_AUTO}: класс, заданный для текущего потока
+         * ({@link HttpStreamer#setThreadTrafficClass(int)}), иначе определяется по методу и виду запроса
+         */
+        public Builder setTrafficClass(int trafficClass) {
+            this.trafficClass = trafficClass;
+            return this;
+        }
+        
         /**
          * Построить объект
          */
         public HttpRequestModel build() {
             if (method == METHOD_UNDEFINED) throw new IllegalStateException("method not set");
             if (method == METHOD_POST && checkIfModified) throw new IllegalStateException("check if-modified is available only for GET method");
-            return new HttpRequestModel(method, checkIfModified, noRedirect, customHeaders, postEntity, timeoutValue);
+            return new HttpRequestModel(method, checkIfModified, noRedirect, customHeaders, postEntity, timeoutValue, trafficClass);
         }
         
     }
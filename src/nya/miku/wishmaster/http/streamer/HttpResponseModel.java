@@ -20,8 +20,12 @@ package nya.miku.wishmaster.http.streamer;
 
 import java.io.Closeable;
 import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+import nya.miku.wishmaster.api.interfaces.CancellableTask;
 import nya.miku.wishmaster.common.Logger;
+import nya.miku.wishmaster.common.PriorityThreadFactory;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -68,10 +72,19 @@ public class HttpResponseModel {
     HttpUriRequest request;
     /** оригинальный объект HTTP-ответа */
     HttpResponse response;
+    /** замер запроса для статистики, завершается при освобождении ресурсов */
+    HttpStatistics.Record record;
+    /** запрос в планировщике классов трафика, освобождается при освобождении ресурсов */
+    TrafficScheduler.Ticket ticket;
+    /** прерывание запроса при отмене задачи, отключается при освобождении ресурсов */
+    AbortOnCancel abortOnCancel;
     
     /** освободить ресурсы. Необоходимо вызывать всегда после работы с HTTP, даже в случае ошибки. */
     public void release() {
+        if (abortOnCancel != null) abortOnCancel.unregister();
         release(request, response);
+        if (record != null) record.finish();
+        if (ticket != null) ticket.release();
     }
     
     /** статический метод для освобождения ресурсов произвольных объектов HTTP-запроса и HTTP-ответа */
@@ -95,4 +108,52 @@ public class HttpResponseModel {
             Logger.e(TAG, e);
         }
     }
+    
+    /**
+     * Прерывание HTTP-запроса ({@link HttpUriRequest#abort()}) сразу при отмене задачи {@link CancellableTask.BaseCancellableTask}:
+     * прерывается установка соединения или блокирующее чтение, соединение закрывается и не возвращается в пул.<br>
+     * Закрытие соединения может блокироваться, поэтому прерывание выполняется в отдельном потоке,
+     * а отмена задачи (обычно из UI-потока) не ждёт его завершения.
+     */
+    static class AbortOnCancel implements CancellableTask.CancelListener, Runnable {
+        private static final Executor ABORT_EXECUTOR = Executors.newSingleThreadExecutor(PriorityThreadFactory.getFactory(Thread.NORM_PRIORITY));
+        
+        private final HttpUriRequest request;
+        private final CancellableTask.BaseCancellableTask task;
+        
+        private AbortOnCancel(HttpUriRequest request, CancellableTask.BaseCancellableTask task) {
+            this.request = request;
+            this.task = task;
+        }
+        
+        /**
+         * Подписать запрос на отмену задачи
+         * @return объект подписки, или null, если задача не поддерживает слушателей отмены
+         */
+        static AbortOnCancel register(HttpUriRequest request, CancellableTask task) {
+            if (!(task instanceof CancellableTask.BaseCancellableTask)) return null;
+            AbortOnCancel abortOnCancel = new AbortOnCancel(request, (CancellableTask.BaseCancellableTask) task);
+            abortOnCancel.task.addCancelListener(abortOnCancel);
+            return abortOnCancel;
+        }
+        
+        /** Отписаться от отмены задачи */
+        void unregister() {
+            task.removeCancelListener(this);
+        }
+        
+        @Override
+        public void onCancel() {
+            ABORT_EXECUTOR.execute(this);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                request.abort();
+            } catch (Exception e) {
+                Logger.e(TAG, e);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.http.streamer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import nya.miku.wishmaster.http.client.ConnectionTimings;
+
+/**
+ * Статистика HTTP-запросов по хостам и видам запросов: время разрешения DNS, установки соединения,
+ * получения первого байта (TTFB), ожидания в очереди {@link HostRateLimiter} и полное время запроса (гистограммы),
+ * объём данных, коды ответа, количество повторов и приостановок по заголовку Retry-After,
+ * доля ответов 304 (Not Modified), количество полных и сокращённых (возобновление сессии) SSL-рукопожатий.<br>
+ * Гистограммы логарифмические (по степеням двойки миллисекунд), запись замера - инкремент счётчика под блокировкой хоста.
+ * Собранные данные можно выгрузить в виде текста ({@link #dumpText()}), просмотр и отправка - в настройках (раздел "О программе").
+ * @author miku-nyan
+ *
+ */
+public class HttpStatistics {
+    /** вид запроса: страница (HTML, прочие данные) */
+    public static final int KIND_PAGE = 0;
+    /** вид запроса: JSON */
+    public static final int KIND_JSON = 1;
+    /** вид запроса: миниатюра (см. {@link HttpStreamer#setThreadDownloadKind(int)}) */
+    public static final int KIND_THUMBNAIL = 2;
+    /** вид запроса: оригинал вложения (см. {@link HttpStreamer#setThreadDownloadKind(int)}) */
+    public static final int KIND_ORIGINAL = 3;
+    /** вид запроса: отправка (POST) */
+    public static final int KIND_POST = 4;
+    /** вид загрузки файла не задан (учитывается как {@link #KIND_PAGE}), см. {@link HttpStreamer#setThreadDownloadKind(int)} */
+    public static final int KIND_AUTO = -1;
+
+    private static final String[] KIND_NAMES = new String[] { "page", "json", "thumbnail", "original", "post" };
+
+    /** количество интервалов гистограммы: [0, 1) мс, [1, 2) мс, [2, 4) мс ... [2^(N-2), ∞) мс */
+    private static final int HISTOGRAM_SIZE = 18;
+
+    private final HashMap<String, KindStatistics[]> hosts = new HashMap<String, KindStatistics[]>();
+
+    /**
+     * Начать замер запроса
+     * @param url адрес запроса
+     * @param kind вид запроса (одна из констант KIND_*)
+     * @return объект замера, заполняется по ходу выполнения запроса и завершается методом {@link Record#finish()}
+     */
+    Record startRecord(String url, int kind) {
+        return new Record(getKindStatistics(getHost(url), kind));
+    }
+
+    /** Очистить собранную статистику */
+    public void reset() {
+        synchronized (hosts) {
+            hosts.clear();
+        }
+    }
+
+    /** Выгрузить собранную статистику в текстовом виде (по строке на каждую метрику) */
+    public String dumpText() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, KindStatistics[]> entry : snapshot().entrySet()) {
+            for (int kind=0; kind<KIND_NAMES.length; ++kind) {
+                KindStatistics stat = entry.getValue()[kind];
+                if (stat == null) continue;
+                synchronized (stat) {
+                    if (stat.requests == 0) continue;
+                    sb.append(entry.getKey()).append(' ').append(KIND_NAMES[kind]).
+                            append(": requests=").append(stat.requests).
+                            append(" failures=").append(stat.failures).
+                            append(" retries=").append(stat.retries).
+                            append(" 304=").append(stat.notModified).
+                            append(String.format(Locale.US, " (%.1f%%)", stat.notModified * 100.0 / stat.requests)).
+                            append(" bytes=").append(stat.bytes).
+                            append(" tls=").append(stat.tlsFull).append('/').append(stat.tlsResumed).
+                            append(" retryAfter=").append(stat.retryAfter).
+                            append(" status=").append(new TreeMap<Integer, Long>(stat.statusCodes)).append('\n');
+                    appendHistogram(sb, "queue", stat.queue);
+                    appendHistogram(sb, "dns", stat.dns);
+                    appendHistogram(sb, "connect", stat.connect);
+                    appendHistogram(sb, "ttfb", stat.ttfb);
+                    appendHistogram(sb, "total", stat.total);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private TreeMap<String, KindStatistics[]> snapshot() {
+        synchronized (hosts) {
+            return new TreeMap<String, KindStatistics[]>(hosts);
+        }
+    }
+
+    private static void appendHistogram(StringBuilder sb, String name, Histogram histogram) {
+        if (histogram.count == 0) return;
+        sb.append(String.format(Locale.US, "  %-7s n=%d mean=%.1fms p50<%dms p90<%dms p99<%dms max=%dms\n",
+                name, histogram.count, (double) histogram.sum / histogram.count,
+                histogram.percentile(0.5), histogram.percentile(0.9), histogram.percentile(0.99), histogram.max));
+    }
+
+    private KindStatistics getKindStatistics(String host, int kind) {
+        synchronized (hosts) {
+            KindStatistics[] kinds = hosts.get(host);
+            if (kinds == null) hosts.put(host, kinds = new KindStatistics[KIND_NAMES.length]);
+            if (kinds[kind] == null) kinds[kind] = new KindStatistics();
+            return kinds[kind];
+        }
+    }
+
+    /** получить имя хоста (с портом) из адреса */
+    static String getHost(String url) {
+        int start = url.indexOf("://");
+        start = start == -1 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') break;
+            ++end;
+        }
+        return url.substring(start, end).toLowerCase(Locale.US);
+    }
+
+    /**
+     * Логарифмическая гистограмма времени (мс)
+     */
+    private static class Histogram {
+        private final long[] buckets = new long[HISTOGRAM_SIZE];
+        private long count;
+        private long sum;
+        private long max;
+
+        public void add(long millis) {
+            int bucket = millis <= 0 ? 0 : Math.min(64 - Long.numberOfLeadingZeros(millis), HISTOGRAM_SIZE - 1);
+            ++buckets[bucket];
+            ++count;
+            sum += millis;
+            if (millis > max) max = millis;
+        }
+
+        /** верхняя граница интервала, в который попадает заданный процентиль (для последнего интервала - максимум) */
+        public long percentile(double p) {
+            long threshold = (long) Math.ceil(count * p);
+            long accumulated = 0;
+            for (int i=0; i<HISTOGRAM_SIZE - 1; ++i) {
+                accumulated += buckets[i];
+                if (accumulated >= threshold) return 1L << i;
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Статистика запросов одного вида к одному хосту
+     */
+    private static class KindStatistics {
+        private final Histogram queue = new Histogram();
+        private final Histogram dns = new Histogram();
+        private final Histogram connect = new Histogram();
+        private final Histogram ttfb = new Histogram();
+        private final Histogram total = new Histogram();
+        private final HashMap<Integer, Long> statusCodes = new HashMap<Integer, Long>();
+        private long requests;
+        private long failures;
+        private long retries;
+        private long notModified;
+        private long bytes;
+        private long tlsFull;
+        private long tlsResumed;
+        private long retryAfter;
+    }
+
+    /**
+     * Замер одного запроса
+     */
+    static class Record {
+        private final KindStatistics stat;
+        private final long startTime = System.nanoTime();
+        private long ttfb = -1;
+        private long dnsTime;
+        private long connectTime;
+        private int handshake;
+        private long queueTime;
+        private boolean retryAfter;
+        private int statusCode = -1;
+        private int retries;
+        private long bytes;
+        private boolean finished = false;
+
+        private Record(KindStatistics stat) {
+            this.stat = stat;
+        }
+
+        /** Получены заголовки ответа */
+        void setResponse(int statusCode, int retries, ConnectionTimings timings) {
+            this.ttfb = System.nanoTime() - startTime;
+            this.statusCode = statusCode;
+            this.retries = retries;
+            this.dnsTime = timings.dnsTime;
+            this.connectTime = timings.connectTime;
+            this.handshake = timings.handshake;
+        }
+
+        /** Запрос ожидал в очереди {@link HostRateLimiter} (вызывается перед каждой попыткой) */
+        void addQueueTime(long nanos) {
+            this.queueTime += nanos;
+        }
+
+        /** Сервер потребовал приостановить запросы (Retry-After) */
+        void setRetryAfter() {
+            this.retryAfter = true;
+        }
+
+        /** Обернуть поток ответа для подсчёта объёма полученных данных */
+        InputStream countBytes(InputStream stream) {
+            return stream == null ? null : new FilterInputStream(stream) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) ++bytes;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int result = super.read(buffer, offset, count);
+                    if (result > 0) bytes += result;
+                    return result;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long result = super.skip(n);
+                    if (result > 0) bytes += result;
+                    return result;
+                }
+            };
+        }
+
+        /** Завершить замер (при освобождении ресурсов запроса), повторные вызовы игнорируются */
+        void finish() {
+            long totalTime = System.nanoTime() - startTime;
+            synchronized (stat) {
+                if (finished) return;
+                finished = true;
+                ++stat.requests;
+                stat.retries += retries;
+                stat.bytes += bytes;
+                stat.total.add(totalTime / 1000000);
+                stat.queue.add(queueTime / 1000000);
+                if (retryAfter) ++stat.retryAfter;
+                if (statusCode == -1) {
+                    ++stat.failures;
+                    return;
+                }
+                Long count = stat.statusCodes.get(statusCode);
+                stat.statusCodes.put(statusCode, count == null ? 1 : count + 1);
+                if (statusCode == 304) ++stat.notModified;
+                if (ttfb >= 0) stat.ttfb.add(ttfb / 1000000);
+                if (dnsTime > 0) stat.dns.add(dnsTime / 1000000);
+                if (connectTime > 0) stat.connect.add(connectTime / 1000000);
+                if (handshake == ConnectionTimings.HANDSHAKE_FULL) ++stat.tlsFull;
+                else if (handshake == ConnectionTimings.HANDSHAKE_RESUMED) ++stat.tlsResumed;
+            }
+        }
+    }
+}
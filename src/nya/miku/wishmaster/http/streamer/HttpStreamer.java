@@ -18,12 +18,11 @@
 
 package nya.miku.wishmaster.http.streamer;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
 
 import javax.net.ssl.SSLException;
@@ -32,10 +31,13 @@ import nya.miku.wishmaster.api.interfaces.CancellableTask;
 import nya.miku.wishmaster.api.interfaces.ProgressListener;
 import nya.miku.wishmaster.common.IOUtils;
 import nya.miku.wishmaster.common.Logger;
+import nya.miku.wishmaster.http.client.ConnectionTimings;
 import nya.miku.wishmaster.http.client.ExtendedHttpClient;
 import nya.miku.wishmaster.lib.org_json.JSONArray;
+import nya.miku.wishmaster.lib.org_json.JSONByteTokener;
 import nya.miku.wishmaster.lib.org_json.JSONException;
 import nya.miku.wishmaster.lib.org_json.JSONObject;
+import nya.miku.wishmaster.lib.org_json.JSONStreamReader;
 import nya.miku.wishmaster.lib.org_json.JSONTokener;
 
 import org.apache.http.Header;
@@ -82,6 +84,69 @@ public class HttpStreamer {
         return instance;
     }
     
+    /** статистика запросов */
+    private final HttpStatistics statistics = new HttpStatistics();
+    
+    /**
+     * Получить статистику HTTP-запросов (время соединения, ответа и загрузки, коды ответов и т.д. по хостам)
+     */
+    public HttpStatistics getStatistics() {
+        return statistics;
+    }
+    
+    /** ограничение частоты запросов к хостам */
+    private final HostRateLimiter rateLimiter = new HostRateLimiter();
+    
+    /**
+     * Получить объект ограничения частоты запросов к хостам (для установки ограничений модулями)
+     */
+    public HostRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+    
+    /** планировщик классов трафика */
+    private final TrafficScheduler trafficScheduler = new TrafficScheduler();
+    
+    /** класс трафика по умолчанию для запросов из текущего потока */
+    private final ThreadLocal<Integer> threadTrafficClass = new ThreadLocal<Integer>();
+    
+    /**
+     * Установить класс трафика по умолчанию для запросов, выполняемых в текущем потоке
+     * (если в модели запроса класс не задан явно, см. {@link HttpRequestModel.Builder#setTrafficClass(int)}).
+     * Например, поток фонового обновления вкладок помечает свои запросы как {@link HttpRequestModel#TRAFFIC_BACKGROUND}.
+     * @param trafficClass класс трафика, или {@link HttpRequestModel#TRAFFIC_AUTO}, чтобы сбросить значение
+     */
+    public void setThreadTrafficClass(int trafficClass) {
+        if (trafficClass == HttpRequestModel.TRAFFIC_AUTO) threadTrafficClass.remove(); else threadTrafficClass.set(trafficClass);
+    }
+    
+    /** вид файлов, загружаемых в текущем потоке */
+    private final ThreadLocal<Integer> threadDownloadKind = new ThreadLocal<Integer>();
+    
+    /**
+     * Установить вид файлов, загружаемых в текущем потоке методом
+     * {@link #downloadFileFromUrl(String, OutputStream, HttpRequestModel, HttpClient, ProgressListener, CancellableTask, boolean)}
+     * ({@link HttpStatistics#KIND_THUMBNAIL} или {@link HttpStatistics#KIND_ORIGINAL}).
+     * По виду загрузки ведётся статистика и определяется класс трафика; загрузки, вид которых не задан, учитываются как страницы.
+     * @param kind вид загрузки, или {@link HttpStatistics#KIND_AUTO}, чтобы сбросить значение
+     */
+    public void setThreadDownloadKind(int kind) {
+        if (kind == HttpStatistics.KIND_AUTO) threadDownloadKind.remove(); else threadDownloadKind.set(kind);
+    }
+    
+    /** определить класс трафика запроса */
+    private int getTrafficClass(HttpRequestModel requestModel, int kind) {
+        if (requestModel.trafficClass != HttpRequestModel.TRAFFIC_AUTO) return requestModel.trafficClass;
+        Integer threadClass = threadTrafficClass.get();
+        if (threadClass != null) return threadClass.intValue();
+        if (requestModel.method == HttpRequestModel.METHOD_POST) return HttpRequestModel.TRAFFIC_POSTING;
+        switch (kind) {
+            case HttpStatistics.KIND_THUMBNAIL: return HttpRequestModel.TRAFFIC_THUMBNAILS;
+            case HttpStatistics.KIND_ORIGINAL: return HttpRequestModel.TRAFFIC_ORIGINALS;
+            default: return HttpRequestModel.TRAFFIC_INTERACTIVE;
+        }
+    }
+    
     /** таблица с временами If-Modified-Since */
     private final HashMap<String, String> ifModifiedMap = new HashMap<String, String>();
     
@@ -112,7 +177,29 @@ public class HttpStreamer {
      */
     public HttpResponseModel getFromUrl(String url, HttpRequestModel requestModel, HttpClient httpClient, ProgressListener listener,
             CancellableTask task) throws HttpRequestException {
+        return getFromUrl(url, requestModel, httpClient, listener, task, HttpStatistics.KIND_PAGE);
+    }
+    
+    /**
+     * HTTP запрос по адресу с указанием вида запроса для статистики ({@link #getStatistics()}).
+     * См. {@link #getFromUrl(String, HttpRequestModel, HttpClient, ProgressListener, CancellableTask)}
+     * @param kind вид запроса (константа HttpStatistics.KIND_*), для POST-запросов всегда {@link HttpStatistics#KIND_POST}
+     */
+    HttpResponseModel getFromUrl(String url, HttpRequestModel requestModel, HttpClient httpClient, ProgressListener listener,
+            CancellableTask task, int kind) throws HttpRequestException {
+        return getFromUrl(url, requestModel, httpClient, listener, task, kind, false);
+    }
+    
+    /**
+     * HTTP запрос по адресу с указанием вида запроса для статистики.
+     * См. {@link #getFromUrl(String, HttpRequestModel, HttpClient, ProgressListener, CancellableTask, int)}
+     * @param segment запрос дополнительной части загрузки по частям (соединение уже выделено {@link SegmentedDownload})
+     */
+    HttpResponseModel getFromUrl(String url, HttpRequestModel requestModel, HttpClient httpClient, ProgressListener listener,
+            CancellableTask task, int kind, boolean segment) throws HttpRequestException {
         if (requestModel == null) requestModel = HttpRequestModel.builder().setGET().build();
+        HttpStatistics.Record record = statistics.startRecord(url,
+                requestModel.method == HttpRequestModel.METHOD_POST ? HttpStatistics.KIND_POST : kind);
         
         //подготавливаем Request
         HttpUriRequest request = null;
@@ -154,11 +241,20 @@ public class HttpStreamer {
         //делаем запрос
         HttpResponseModel responseModel = new HttpResponseModel();
         HttpResponse response = null;
+        String host = HttpStatistics.getHost(url);
+        TrafficScheduler.Ticket ticket = trafficScheduler.acquire(host, getTrafficClass(requestModel, kind), segment, task);
+        HttpResponseModel.AbortOnCancel abortOnCancel = null;
+        boolean success = false;
         try {
+            abortOnCancel = HttpResponseModel.AbortOnCancel.register(request, task);
             IOException responseException = null;
+            int retries = 0;
+            ConnectionTimings.reset();
             for (int i=0; i<5; ++i) {
                 try {
                     if (task != null && task.isCancelled()) throw new InterruptedException();
+                    retries = i;
+                    record.addQueueTime(rateLimiter.acquire(host, task));
                     response = httpClient.execute(request);
                     responseException = null;
                     break;
@@ -182,6 +278,11 @@ public class HttpStreamer {
             StatusLine status = response.getStatusLine();
             responseModel.statusCode = status.getStatusCode();
             responseModel.statusReason = status.getReasonPhrase();
+            record.setResponse(responseModel.statusCode, retries, ConnectionTimings.take());
+            if (responseModel.statusCode == 429 || responseModel.statusCode == 503) {
+                Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+                if (retryAfter != null && rateLimiter.retryAfter(host, retryAfter.getValue()) > 0) record.setRetryAfter();
+            }
             //обрабока полученных заголовков (headers)
             String lastModifiedValue = null;
             if (responseModel.statusCode == 200) {
@@ -197,21 +298,31 @@ public class HttpStreamer {
                 responseModel.contentLength = responseEntity.getContentLength();
                 if (listener != null) listener.setMaxValue(responseModel.contentLength);
                 InputStream stream = responseEntity.getContent();
-                responseModel.stream = IOUtils.modifyInputStream(stream, listener, task);
+                responseModel.stream = IOUtils.modifyInputStream(ticket.wrapStream(record.countBytes(stream), task), listener, task);
             }
+            //ответ без содержимого не занимает соединение
+            if (responseModel.stream == null) ticket.release();
             responseModel.request = request;
             responseModel.response = response;
+            responseModel.record = record;
+            responseModel.ticket = ticket;
+            responseModel.abortOnCancel = abortOnCancel;
             if (lastModifiedValue != null) {
                 synchronized (ifModifiedMap) {
                     ifModifiedMap.put(url, lastModifiedValue);
                 }
             }
+            success = true;
         } catch (Exception e) {
             Logger.e(TAG, e);
+            if (abortOnCancel != null) abortOnCancel.unregister();
             HttpResponseModel.release(request, response);
+            record.finish();
             boolean sslException = false;
             if (e instanceof SSLException) sslException = true;
             throw new HttpRequestException(e, sslException);
+        } finally {
+            if (!success) ticket.release();
         }
         
         return responseModel;
@@ -239,17 +350,13 @@ public class HttpStreamer {
             responseModel = getFromUrl(url, requestModel, httpClient, listener, task);
             if (responseModel.statusCode == 200) {
                 if (responseModel.stream == null) throw new HttpRequestException(new NullPointerException()); 
-                ByteArrayOutputStream output = new ByteArrayOutputStream(1024);
-                IOUtils.copyStream(responseModel.stream, output);
-                return output.toByteArray();
+                return IOUtils.readFully(responseModel.stream, responseModel.contentLength);
             } else {
                 if (responseModel.notModified()) return null;
                 if (anyCode) {
                     byte[] html = null;
                     try {
-                        ByteArrayOutputStream output = new ByteArrayOutputStream(1024);
-                        IOUtils.copyStream(responseModel.stream, output);
-                        html = output.toByteArray();
+                        html = IOUtils.readFully(responseModel.stream, responseModel.contentLength);
                     } catch (Exception e) {
                         Logger.e(TAG, e);
                     }
@@ -332,21 +439,83 @@ public class HttpStreamer {
     private Object getJSONFromUrl(String url, HttpRequestModel requestModel, HttpClient httpClient, ProgressListener listener, CancellableTask task,
             boolean anyCode, boolean isArray) throws IOException, HttpRequestException, HttpWrongStatusCodeException, JSONException {
         HttpResponseModel responseModel = null;
-        BufferedReader in = null;
         try {
-            responseModel = getFromUrl(url, requestModel, httpClient, listener, task);
+            responseModel = getFromUrl(url, requestModel, httpClient, listener, task, HttpStatistics.KIND_JSON);
+            if (responseModel.statusCode == 200) {
+                if (responseModel.stream == null) throw new HttpRequestException(new NullPointerException()); 
+                JSONTokener tokener = new JSONByteTokener(responseModel.stream);
+                return isArray ? new JSONArray(tokener) : new JSONObject(tokener);
+            } else {
+                if (responseModel.notModified()) return null;
+                if (anyCode) {
+                    byte[] html = null;
+                    try {
+                        html = IOUtils.readFully(responseModel.stream, responseModel.contentLength);
+                    } catch (Exception e) {
+                        Logger.e(TAG, e);
+                    }
+                    throw new HttpWrongStatusCodeException(responseModel.statusCode, responseModel.statusCode+" - "+responseModel.statusReason, html);
+                } else {
+                    throw new HttpWrongStatusCodeException(responseModel.statusCode, responseModel.statusCode+" - "+responseModel.statusReason);
+                }
+                
+            }
+        } catch (Exception e) {
+            if (responseModel != null) removeFromModifiedMap(url);
+            throw e;
+        } finally {
+            if (responseModel != null) responseModel.release();
+        }
+    }
+    
+    /**
+     * Интерфейс потокового преобразования JSON в модели данных
+     * @author miku-nyan
+     *
+     */
+    public interface JSONStreamMapper<T> {
+        /**
+         * Преобразовать документ JSON, прочитанный из парсера
+         * @param reader потоковый парсер, установленный на начало документа
+         * @return результат преобразования
+         * @throws JSONException в случае ошибки при парсинге JSON
+         */
+        T map(JSONStreamReader reader) throws JSONException;
+    }
+    
+    /**
+     * HTTP запрос по адресу, потоковое преобразование JSON без построения промежуточного дерева {@link JSONObject}/{@link JSONArray}
+     * @param url адрес страницы
+     * @param requestModel модель запроса (может принимать null, по умолчанию GET без проверки If-Modified)
+     * @param httpClient HTTP клиент, исполняющий запрос
+     * @param listener интерфейс отслеживания прогресса (может принимать null)
+     * @param task задача, отмена которой прервёт поток (может принимать null)
+     * @param anyCode загружать содержимое, даже если сервер не вернул HTTP 200, например, html страницы ошибок
+     * (данные будут переданы исключению {@link HttpWrongStatusCodeException})
+     * @param mapper объект, выполняющий преобразование JSON в модели
+     * @return результат преобразования, или NULL, если страница не была изменена (HTTP 304)
+     * @throws IOException ошибка ввода/вывода, в т.ч. если поток прерван отменой задачи (подкласс {@link IOUtils.InterruptedStreamException})
+     * @throws HttpRequestException если не удалось выполнить запрос, или содержимое отсутствует
+     * @throws HttpWrongStatusCodeException если сервер вернул код не 200. При anycode==true будет содержать также HTML содержимое ответа.
+     * @throws JSONException в случае ошибки при парсинге JSON
+     */
+    public <T> T getJSONStreamFromUrl(String url, HttpRequestModel requestModel, HttpClient httpClient, ProgressListener listener,
+            CancellableTask task, boolean anyCode, JSONStreamMapper<T> mapper)
+                    throws IOException, HttpRequestException, HttpWrongStatusCodeException, JSONException {
+        HttpResponseModel responseModel = null;
+        JSONStreamReader in = null;
+        try {
+            responseModel = getFromUrl(url, requestModel, httpClient, listener, task, HttpStatistics.KIND_JSON);
             if (responseModel.statusCode == 200) {
                 if (responseModel.stream == null) throw new HttpRequestException(new NullPointerException()); 
-                in = new BufferedReader(new InputStreamReader(responseModel.stream));
-                return isArray ? new JSONArray(new JSONTokener(in)) : new JSONObject(new JSONTokener(in));
+                in = new JSONStreamReader(responseModel.stream);
+                return mapper.map(in);
             } else {
                 if (responseModel.notModified()) return null;
                 if (anyCode) {
                     byte[] html = null;
                     try {
-                        ByteArrayOutputStream output = new ByteArrayOutputStream(1024);
-                        IOUtils.copyStream(responseModel.stream, output);
-                        html = output.toByteArray();
+                        html = IOUtils.readFully(responseModel.stream, responseModel.contentLength);
                     } catch (Exception e) {
                         Logger.e(TAG, e);
                     }
@@ -367,6 +536,12 @@ public class HttpStreamer {
     
     /**
      * Скачать файл (HTTP) по заданному адресу URL, записать в поток out.
+     * Если поток out является объектом {@link ResumableFileOutputStream}, загрузка будет продолжена с места обрыва
+     * (заголовки Range и If-Range); если сервер не поддерживает докачку, файл будет загружен полностью.
+     * Если для такого потока разрешена загрузка по частям ({@link ResumableFileOutputStream#setMaxSegments(int)}),
+     * большой файл будет загружен одновременно в несколько соединений (см. {@link SegmentedDownload}).
+     * Если целевой поток пишет в файл ({@link ResumableFileOutputStream} или {@link FileOutputStream}), данные копируются
+     * в канал файла блоками по 64КБ, прогресс и отмена задачи проверяются один раз на блок.
      * @param url адрес
      * @param out целевой поток
      * @param requestModel модель запроса (может принимать null, по умолчанию GET без проверки If-Modified)
@@ -381,18 +556,78 @@ public class HttpStreamer {
      */
     public void downloadFileFromUrl(String url, OutputStream out, HttpRequestModel requestModel, HttpClient httpClient, ProgressListener listener,
             CancellableTask task, boolean anyCode) throws IOException, HttpRequestException, HttpWrongStatusCodeException {
+        ResumableFileOutputStream resumable = null;
+        ProgressListener rangeListener = listener;
+        OffsetProgressListener offsetListener = null;
+        SegmentedDownload segmented = null;
+        HttpRequestModel rangeRequestModel = requestModel;
+        if (out instanceof ResumableFileOutputStream && (requestModel == null || requestModel.method == HttpRequestModel.METHOD_GET)) {
+            resumable = (ResumableFileOutputStream) out;
+            long offset = resumable.getResumeOffset();
+            if (offset > 0) {
+                if (rangeRequestModel == null) rangeRequestModel = HttpRequestModel.builder().setGET().build();
+                rangeRequestModel = rangeRequestModel.withAdditionalHeaders(
+                        new BasicHeader(HttpHeaders.RANGE, "bytes=" + offset + "-"),
+                        new BasicHeader(HttpHeaders.IF_RANGE, resumable.getValidator()));
+                if (listener != null) rangeListener = offsetListener = new OffsetProgressListener(listener, offset);
+            } else if (resumable.getMaxSegments() > 1) {
+                //пробный запрос: в ответе 206 будет полный размер файла, из этого же потока будет прочитана первая часть
+                if (rangeRequestModel == null) rangeRequestModel = HttpRequestModel.builder().setGET().build();
+                rangeRequestModel = rangeRequestModel.withAdditionalHeaders(new BasicHeader(HttpHeaders.RANGE, "bytes=0-"));
+                segmented = new SegmentedDownload(listener, resumable.getMaxSegments());
+                rangeListener = segmented.getSegmentListener(0);
+            }
+        }
+        
+        //при записи в файл прогресс передаётся при копировании в канал, а не при каждом чтении из потока ответа
+        boolean toFile = segmented == null && (resumable != null || out instanceof FileOutputStream);
+        
+        Integer kind = threadDownloadKind.get();
         HttpResponseModel responseModel = null;
+        boolean restart = false;
         try {
-            responseModel = getFromUrl(url, requestModel, httpClient, listener, task);
-            if (responseModel.statusCode == 200) {
-                IOUtils.copyStream(responseModel.stream, out);
+            responseModel = getFromUrl(url, rangeRequestModel, httpClient, toFile ? null : rangeListener, task,
+                    kind != null ? kind.intValue() : HttpStatistics.KIND_PAGE);
+            boolean partialContent = responseModel.statusCode == 206 && resumable != null &&
+                    (resumable.getResumeOffset() > 0 || segmented != null);
+            if (partialContent && getContentRangeStart(responseModel) != resumable.getResumeOffset()) {
+                Logger.d(TAG, "unexpected Content-Range, restarting download: " + url);
+                restart = true;
+            } else if (responseModel.statusCode == 416 && resumable != null && (resumable.getResumeOffset() > 0 || segmented != null)) {
+                Logger.d(TAG, "range not satisfiable, restarting download: " + url);
+                restart = true;
+            } else if (responseModel.statusCode == 200 || partialContent) {
+                if (resumable != null) {
+                    if (responseModel.statusCode == 200 && resumable.getResumeOffset() > 0) {
+                        resumable.restart();
+                        if (offsetListener != null) {
+                            offsetListener.offset = 0;
+                            listener.setMaxValue(responseModel.contentLength);
+                        }
+                    }
+                    if (segmented != null && partialContent) {
+                        //части файла пишутся вразнобой, такие недокачанные данные продолжить нельзя
+                        String validator = getValidator(responseModel);
+                        resumable.setValidator(null);
+                        if (segmented.download(url, requestModel, httpClient, task, responseModel.stream,
+                                getContentRangeTotal(responseModel), validator, resumable.getChannel())) return;
+                        resumable.setValidator(validator);
+                    } else {
+                        resumable.setValidator(getValidator(responseModel));
+                    }
+                }
+                if (toFile) {
+                    if (rangeListener != null) rangeListener.setMaxValue(responseModel.contentLength);
+                    FileChannel channel = resumable != null ? resumable.getChannel() : ((FileOutputStream) out).getChannel();
+                    IOUtils.copyStream(responseModel.stream, channel, rangeListener, task);
+                } else {
+                    IOUtils.copyStream(responseModel.stream, out);
+                }
             } else {
                 if (anyCode) {
                     byte[] html = null;
                     try {
-                        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(1024);
-                        IOUtils.copyStream(responseModel.stream, byteStream);
-                        html = byteStream.toByteArray();
+                        html = IOUtils.readFully(responseModel.stream, responseModel.contentLength);
                     } catch (Exception e) {
                         Logger.e(TAG, e);
                     }
@@ -407,5 +642,92 @@ public class HttpStreamer {
         } finally {
             if (responseModel != null) responseModel.release();
         }
+        
+        if (restart) {
+            resumable.restart();
+            resumable.setValidator(null);
+            resumable.setMaxSegments(1);
+            downloadFileFromUrl(url, out, requestModel, httpClient, listener, task, anyCode);
+        }
+    }
+    
+    /** получить валидатор ответа для заголовка If-Range: строгий ETag или Last-Modified, или null, если отсутствуют */
+    private static String getValidator(HttpResponseModel responseModel) {
+        if (responseModel.headers == null) return null;
+        String lastModified = null;
+        for (Header header : responseModel.headers) {
+            if (header.getName().equalsIgnoreCase(HttpHeaders.ETAG)) {
+                String value = header.getValue();
+                if (value != null && value.length() > 0 && !value.startsWith("W/")) return value;
+            } else if (header.getName().equalsIgnoreCase(HttpHeaders.LAST_MODIFIED)) {
+                lastModified = header.getValue();
+            }
+        }
+        return lastModified;
+    }
+    
+    /** получить начальную позицию из заголовка Content-Range ("bytes start-end/total"), или -1 */
+    static long getContentRangeStart(HttpResponseModel responseModel) {
+        if (responseModel.headers == null) return -1;
+        for (Header header : responseModel.headers) {
+            if (header.getName().equalsIgnoreCase(HttpHeaders.CONTENT_RANGE)) {
+                String value = header.getValue();
+                if (value == null || !value.startsWith("bytes ")) return -1;
+                int dash = value.indexOf('-', 6);
+                if (dash == -1) return -1;
+                try {
+                    return Long.parseLong(value.substring(6, dash).trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /** получить полный размер файла из заголовка Content-Range ("bytes start-end/total"), или -1, если неизвестен */
+    private static long getContentRangeTotal(HttpResponseModel responseModel) {
+        if (responseModel.headers == null) return -1;
+        for (Header header : responseModel.headers) {
+            if (header.getName().equalsIgnoreCase(HttpHeaders.CONTENT_RANGE)) {
+                String value = header.getValue();
+                int slash = value == null ? -1 : value.lastIndexOf('/');
+                if (slash == -1) return -1;
+                try {
+                    return Long.parseLong(value.substring(slash + 1).trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Прогресс загрузки с учётом уже загруженной (при докачке) части файла
+     */
+    private static class OffsetProgressListener implements ProgressListener {
+        private final ProgressListener listener;
+        private volatile long offset;
+        
+        public OffsetProgressListener(ProgressListener listener, long offset) {
+            this.listener = listener;
+            this.offset = offset;
+        }
+        
+        @Override
+        public void setMaxValue(long value) {
+            listener.setMaxValue(value > 0 ? value + offset : value);
+        }
+        
+        @Override
+        public void setProgress(long value) {
+            listener.setProgress(value + offset);
+        }
+        
+        @Override
+        public void setIndeterminate() {
+            listener.setIndeterminate();
+        }
     }
 }
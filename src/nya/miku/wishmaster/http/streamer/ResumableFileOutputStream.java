@@ -0,0 +1,277 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.http.streamer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+
+import nya.miku.wishmaster.common.IOUtils;
+import nya.miku.wishmaster.common.Logger;
+import nya.miku.wishmaster.http.cloudflare.InteractiveException;
+
+/**
+ * Поток записи файла с возможностью докачки.<br>
+ * Данные пишутся во временный файл (имя целевого файла + {@link #PARTIAL_SUFFIX}, по умолчанию в той же директории),
+ * рядом хранится валидатор ответа сервера (ETag или Last-Modified). Если загрузка прервалась, временный файл не удаляется, и при следующей попытке
+ * {@link HttpStreamer#downloadFileFromUrl(String, OutputStream, HttpRequestModel, org.apache.http.client.HttpClient,
+ * nya.miku.wishmaster.api.interfaces.ProgressListener, nya.miku.wishmaster.api.interfaces.CancellableTask, boolean)}
+ * продолжит загрузку с заголовками Range/If-Range.<br>
+ * После успешной загрузки необходимо вызвать {@link #commit()}, чтобы переименовать временный файл в целевой.<br>
+ * Если разрешена загрузка по частям ({@link #setMaxSegments(int)}), большой файл может быть загружен
+ * одновременно в несколько соединений, см. {@link SegmentedDownload}.
+ * @author miku-nyan
+ *
+ */
+public class ResumableFileOutputStream extends OutputStream {
+    private static final String TAG = "ResumableFileOutputStream";
+
+    /** суффикс имени временного файла (недокачанных данных) */
+    public static final String PARTIAL_SUFFIX = ".part";
+    /** количество частей при загрузке по частям, см. {@link #setMaxSegments(int)} */
+    public static final int DEFAULT_SEGMENTS = SegmentedDownload.MAX_CONNECTIONS_PER_HOST + 1;
+    /** суффикс имени файла с валидатором */
+    private static final String INFO_SUFFIX = ".part.info";
+
+    private final File target;
+    private final File partial;
+    private final File info;
+    private String validator;
+    private long resumeOffset;
+    private int maxSegments = 1;
+    private FileOutputStream out;
+
+    /**
+     * Конструктор. Если для целевого файла сохранены недокачанные данные с валидатором, запись будет продолжена в конец.
+     * Временные файлы хранятся рядом с целевым.
+     * @param target целевой файл
+     * @throws IOException если не удалось открыть временный файл
+     */
+    public ResumableFileOutputStream(File target) throws IOException {
+        this(target, null);
+    }
+
+    /**
+     * Конструктор. Если для целевого файла сохранены недокачанные данные с валидатором, запись будет продолжена в конец.
+     * @param target целевой файл
+     * @param partialDirectory директория временных файлов (например, в кэше, чтобы недокачанные данные не оставались
+     * в папке загрузок), или null, если временные файлы хранятся рядом с целевым
+     * @throws IOException если не удалось открыть временный файл
+     */
+    public ResumableFileOutputStream(File target, File partialDirectory) throws IOException {
+        this.target = target;
+        String partialPath = getPartialPath(target, partialDirectory);
+        this.partial = new File(partialPath + PARTIAL_SUFFIX);
+        this.info = new File(partialPath + INFO_SUFFIX);
+        this.validator = readValidator();
+        if (validator != null && partial.exists() && partial.length() > 0) {
+            resumeOffset = partial.length();
+            out = new FileOutputStream(partial, true);
+        } else {
+            resumeOffset = 0;
+            out = new FileOutputStream(partial);
+        }
+    }
+
+    /** Получить объём уже загруженных данных, с которого можно продолжить загрузку (0, если докачка невозможна) */
+    public long getResumeOffset() {
+        return resumeOffset;
+    }
+
+    /** Получить валидатор (ETag или Last-Modified), соответствующий уже загруженным данным */
+    public String getValidator() {
+        return validator;
+    }
+
+    /**
+     * Сохранить валидатор ответа сервера, соответствующий записываемым данным
+     * @param validator значение ETag или Last-Modified, или null, если сервер не передал валидатор (докачка будет невозможна)
+     */
+    public void setValidator(String validator) {
+        this.validator = validator;
+        if (validator == null) {
+            info.delete();
+            return;
+        }
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(info), "UTF-8");
+            writer.write(validator);
+        } catch (Exception e) {
+            Logger.e(TAG, e);
+            info.delete();
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    /** Получить максимальное количество частей, на которые может быть разбита загрузка */
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * Разрешить загрузку по частям (одновременно в несколько соединений, если сервер поддерживает запросы Range).
+     * Применяется только при загрузке файла с начала, недокачанные данные продолжают загружаться в одно соединение.
+     * @param maxSegments максимальное количество частей (1 - загрузка в одно соединение)
+     */
+    public void setMaxSegments(int maxSegments) {
+        this.maxSegments = Math.max(1, maxSegments);
+    }
+
+    /** Канал временного файла для записи по произвольным позициям (загрузка по частям) */
+    FileChannel getChannel() {
+        return out.getChannel();
+    }
+
+    /**
+     * Начать запись сначала (если сервер не поддерживает докачку или данные на сервере изменились)
+     */
+    public void restart() throws IOException {
+        out.close();
+        out = new FileOutputStream(partial);
+        resumeOffset = 0;
+    }
+
+    /**
+     * Завершить загрузку: закрыть поток и переименовать временный файл в целевой
+     * @throws IOException если не удалось переименовать файл
+     */
+    public void commit() throws IOException {
+        close();
+        if (target.exists() && !target.delete()) throw new IOException("Cannot delete " + target.getPath());
+        if (!partial.renameTo(target)) {
+            //временный файл в другой файловой системе (например, кэш во внутренней памяти)
+            copyFile(partial, target);
+            partial.delete();
+        }
+        info.delete();
+    }
+
+    /**
+     * Удалить недокачанные данные для данного целевого файла
+     * (если загрузка отменена пользователем или после ошибки её нет смысла продолжать, см. {@link #isResumableError(Exception)})
+     * @param target целевой файл
+     */
+    public static void discard(File target) {
+        discard(target, null);
+    }
+
+    /**
+     * Удалить недокачанные данные для данного целевого файла
+     * @param target целевой файл
+     * @param partialDirectory директория временных файлов, указанная в конструкторе
+     */
+    public static void discard(File target, File partialDirectory) {
+        String partialPath = getPartialPath(target, partialDirectory);
+        new File(partialPath + PARTIAL_SUFFIX).delete();
+        new File(partialPath + INFO_SUFFIX).delete();
+    }
+
+    /** путь временных файлов без суффикса: рядом с целевым файлом или в заданной директории (с хэшем пути целевого файла) */
+    private static String getPartialPath(File target, File partialDirectory) {
+        if (partialDirectory == null) return target.getPath();
+        String name = Integer.toHexString(target.getAbsolutePath().hashCode()) + "_" + target.getName();
+        return new File(partialDirectory, name).getPath();
+    }
+
+    private static void copyFile(File from, File to) throws IOException {
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        boolean success = false;
+        try {
+            in = new FileInputStream(from);
+            out = new FileOutputStream(to);
+            IOUtils.copyStream(in, out);
+            out.close();
+            success = true;
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+            if (!success) to.delete();
+        }
+    }
+
+    /**
+     * Проверить, является ли файл недокачанными данными (временный файл или файл с валидатором)
+     * @param fileName имя файла
+     */
+    public static boolean isPartialFile(String fileName) {
+        return fileName.endsWith(PARTIAL_SUFFIX) || fileName.endsWith(INFO_SUFFIX);
+    }
+
+    /**
+     * Проверить, имеет ли смысл сохранять недокачанные данные после ошибки загрузки: обрыв соединения или ошибка ввода/вывода,
+     * ошибка сервера (код 5xx), проверка на стороне сервиса (капча и т.п., после прохождения загрузка повторяется).
+     * При остальных ошибках (например, файл не найден на сервере или закончилось место на диске) данные нужно удалить.
+     * @param e исключение, возникшее при загрузке
+     */
+    public static boolean isResumableError(Exception e) {
+        if (IOUtils.isENOSPC(e)) return false;
+        if (e instanceof HttpWrongStatusCodeException) return ((HttpWrongStatusCodeException) e).getStatusCode() >= 500;
+        return e instanceof IOException || e instanceof HttpRequestException || e instanceof InteractiveException;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private String readValidator() {
+        if (!info.exists()) return null;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(info), "UTF-8"));
+            String line = reader.readLine();
+            return line == null || line.length() == 0 ? null : line;
+        } catch (Exception e) {
+            Logger.e(TAG, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.http.streamer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.api.interfaces.ProgressListener;
+import nya.miku.wishmaster.common.IOUtils;
+import nya.miku.wishmaster.common.Logger;
+import nya.miku.wishmaster.common.PriorityThreadFactory;
+import nya.miku.wishmaster.http.HttpConstants;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.HttpClient;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Загрузка файла по частям: диапазоны байтов загружаются одновременно в несколько соединений (запросы с заголовком Range)
+ * и записываются в заранее выделенный временный файл {@link ResumableFileOutputStream} по произвольным позициям.<br>
+ * Первая часть читается из ответа на пробный запрос (Range: bytes=0-), остальные запрашиваются отдельно.
+ * Прогресс всех частей суммируется и передаётся в один {@link ProgressListener}.<br>
+ * Если загрузка какой-либо из дополнительных частей не удалась (например, сервер ограничивает количество соединений),
+ * недостающие данные дочитываются последовательно из ответа на пробный запрос, как при загрузке в одно соединение.<br>
+ * Количество дополнительных соединений к одному хосту ограничено для всех одновременных загрузок
+ * ({@link #MAX_CONNECTIONS_PER_HOST}), части загружаются общим пулом потоков с низким приоритетом ({@link #MAX_THREADS} потоков),
+ * если свободных потоков нет, часть дочитывается из ответа на пробный запрос.
+ * @author miku-nyan
+ *
+ */
+
+/* Google пометила все классы и интерфейсы пакета org.apache.http как "deprecated" в API 22 (Android 5.1)
+ * На самом деле используется актуальная версия apache-hc httpclient 4.3.5.1-android
+ * Подробности: https://issues.apache.org/jira/browse/HTTPCLIENT-1632 */
+@SuppressWarnings("deprecation")
+
+class SegmentedDownload {
+    private static final String TAG = "SegmentedDownload";
+
+    /** минимальный размер одной части (файлы меньше 2 * MIN_SEGMENT_SIZE загружаются в одно соединение) */
+    static final long MIN_SEGMENT_SIZE = 512 * 1024;
+    /** максимальное количество дополнительных соединений к одному хосту (для всех загрузок по частям одновременно) */
+    static final int MAX_CONNECTIONS_PER_HOST = HttpConstants.MAX_SEGMENT_CONNECTIONS_PER_HOST;
+    /** максимальное количество потоков загрузки частей (для всех загрузок одновременно) */
+    private static final int MAX_THREADS = MAX_CONNECTIONS_PER_HOST * 2;
+
+    /** общий пул потоков загрузки частей: потоки создаются по необходимости и завершаются после простоя */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(0, MAX_THREADS, 10, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), PriorityThreadFactory.LOW_PRIORITY_FACTORY);
+
+    /** таблица количества занятых дополнительных соединений по хостам */
+    private static final HashMap<String, Integer> hostConnections = new HashMap<String, Integer>();
+
+    private final ProgressListener listener;
+    private final int maxSegments;
+    private final long[] progress;
+
+    private final List<HttpResponseModel> activeResponses = new ArrayList<HttpResponseModel>();
+    private volatile boolean failed = false;
+
+    /**
+     * Конструктор
+     * @param listener интерфейс отслеживания общего прогресса (может принимать null)
+     * @param maxSegments максимальное количество частей
+     */
+    SegmentedDownload(ProgressListener listener, int maxSegments) {
+        this.listener = listener;
+        this.maxSegments = maxSegments;
+        this.progress = new long[maxSegments];
+    }
+
+    /**
+     * Получить интерфейс отслеживания прогресса для части с заданным номером.
+     * Для части 0 (пробный запрос) также передаются максимальное значение и неопределённое состояние.
+     * @return интерфейс, или null, если общий интерфейс отслеживания прогресса не задан
+     */
+    ProgressListener getSegmentListener(int index) {
+        return listener == null ? null : new SegmentProgressListener(index);
+    }
+
+    /**
+     * Загрузить файл по частям.
+     * @param url адрес файла
+     * @param requestModel исходная модель запроса (может принимать null)
+     * @param httpClient HTTP клиент, исполняющий запросы
+     * @param task задача, отмена которой прервёт загрузку (может принимать null)
+     * @param firstStream поток ответа на пробный запрос (Range: bytes=0-), из него будет прочитана первая часть
+     * @param totalLength полный размер файла
+     * @param validator валидатор ответа (ETag или Last-Modified) для заголовка If-Range (может принимать null)
+     * @param channel канал временного файла
+     * @return false, если загрузка по частям невозможна (файл слишком мал, или превышен лимит соединений к хосту),
+     * в этом случае из потока firstStream ничего не прочитано
+     * @throws IOException ошибка ввода/вывода при чтении из потока firstStream или записи в файл, в т.ч. при отмене задачи
+     */
+    boolean download(String url, HttpRequestModel requestModel, HttpClient httpClient, CancellableTask task,
+            InputStream firstStream, long totalLength, String validator, FileChannel channel) throws IOException {
+        int segments = (int) Math.min(maxSegments, totalLength / MIN_SEGMENT_SIZE);
+        if (segments < 2) return false;
+        String host = new URL(url).getHost();
+        int extraConnections = acquireConnections(host, segments - 1);
+        if (extraConnections == 0) return false;
+        segments = extraConnections + 1;
+        Logger.d(TAG, "downloading " + url + " (" + totalLength + " bytes) in " + segments + " segments");
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(extraConnections);
+        try {
+            if (requestModel == null) requestModel = HttpRequestModel.builder().setGET().build();
+            channel.write(ByteBuffer.wrap(new byte[1]), totalLength - 1);
+
+            long segmentLength = totalLength / segments;
+            long[] ends = new long[segments];
+            //конец последней незагруженной части, до него данные дочитываются из первого потока
+            long fallbackEnd = -1;
+            for (int i=1; i<segments; ++i) {
+                long start = segmentLength * i;
+                ends[i] = i == segments - 1 ? totalLength - 1 : start + segmentLength - 1;
+                if (fallbackEnd != -1) continue;
+                try {
+                    futures.add(EXECUTOR.submit(new SegmentTask(url, requestModel, httpClient, task, validator, channel, i, start, ends[i])));
+                } catch (RejectedExecutionException e) {
+                    //все потоки заняты другими загрузками, оставшиеся части дочитываются из первого потока
+                    Logger.d(TAG, "no free threads for segment " + i);
+                    fallbackEnd = totalLength - 1;
+                }
+            }
+
+            copyRange(firstStream, channel, 0, segmentLength);
+
+            for (int i=1; i<=futures.size(); ++i) {
+                try {
+                    futures.get(i - 1).get();
+                } catch (ExecutionException e) {
+                    Logger.d(TAG, "segment " + i + " failed: " + e.getCause());
+                    fallbackEnd = Math.max(fallbackEnd, ends[i]);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOUtils.InterruptedStreamException();
+                }
+            }
+            if (fallbackEnd != -1) {
+                if (task != null && task.isCancelled()) throw new IOUtils.InterruptedStreamException();
+                Logger.d(TAG, "continuing " + url + " in one connection up to " + fallbackEnd);
+                synchronized (progress) {
+                    for (int i=1; i<segments; ++i) if (ends[i] <= fallbackEnd) progress[i] = 0;
+                }
+                copyRange(firstStream, channel, segmentLength, fallbackEnd + 1 - segmentLength);
+            }
+            return true;
+        } finally {
+            //соединения освобождаются и канал отдаётся вызывающему только после завершения всех частей
+            for (Future<Void> future : futures) {
+                if (!future.isDone()) {
+                    abort();
+                    break;
+                }
+            }
+            awaitAll(futures);
+            releaseConnections(host, extraConnections);
+        }
+    }
+
+    /** дождаться завершения всех задач (независимо от результата) */
+    private static void awaitAll(List<Future<Void>> futures) {
+        boolean interrupted = false;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (ExecutionException e) {
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /** прервать загрузку всех частей */
+    private void abort() {
+        failed = true;
+        synchronized (activeResponses) {
+            for (HttpResponseModel response : activeResponses) response.release();
+        }
+    }
+
+    /** записать в канал length байт из потока, начиная с позиции position */
+    private void copyRange(InputStream in, FileChannel channel, long position, long length) throws IOException {
+        byte[] data = new byte[8192];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (length > 0) {
+            if (failed) throw new IOUtils.InterruptedStreamException();
+            int count = in.read(data, 0, (int) Math.min(data.length, length));
+            if (count == -1) throw new IOException("Unexpected end of stream");
+            buffer.clear();
+            buffer.limit(count);
+            while (buffer.hasRemaining()) position += channel.write(buffer, position);
+            length -= count;
+        }
+    }
+
+    /**
+     * Занять дополнительные соединения к хосту
+     * @param host имя хоста
+     * @param wanted требуемое количество соединений
+     * @return количество выделенных соединений (возможно 0)
+     */
+    private static int acquireConnections(String host, int wanted) {
+        synchronized (hostConnections) {
+            Integer used = hostConnections.get(host);
+            int granted = Math.min(wanted, MAX_CONNECTIONS_PER_HOST - (used == null ? 0 : used.intValue()));
+            if (granted <= 0) return 0;
+            hostConnections.put(host, (used == null ? 0 : used.intValue()) + granted);
+            return granted;
+        }
+    }
+
+    /** освободить дополнительные соединения к хосту */
+    private static void releaseConnections(String host, int count) {
+        synchronized (hostConnections) {
+            Integer used = hostConnections.get(host);
+            int left = (used == null ? 0 : used.intValue()) - count;
+            if (left > 0) hostConnections.put(host, left); else hostConnections.remove(host);
+        }
+    }
+
+    /**
+     * Загрузка одной части (диапазон байтов start-end включительно)
+     */
+    private class SegmentTask implements Callable<Void> {
+        private final String url;
+        private final HttpRequestModel requestModel;
+        private final HttpClient httpClient;
+        private final CancellableTask task;
+        private final FileChannel channel;
+        private final int index;
+        private final long start;
+        private final long end;
+
+        public SegmentTask(String url, HttpRequestModel requestModel, HttpClient httpClient, CancellableTask task, String validator,
+                FileChannel channel, int index, long start, long end) {
+            this.url = url;
+            BasicHeader range = new BasicHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + end);
+            this.requestModel = validator == null ? requestModel.withAdditionalHeaders(range) :
+                requestModel.withAdditionalHeaders(range, new BasicHeader(HttpHeaders.IF_RANGE, validator));
+            this.httpClient = httpClient;
+            this.task = task;
+            this.channel = channel;
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            if (failed) throw new IOUtils.InterruptedStreamException();
+            HttpResponseModel responseModel =
+                    HttpStreamer.getInstance().getFromUrl(url, requestModel, httpClient, getSegmentListener(index), task,
+                            HttpStatistics.KIND_ORIGINAL, true);
+            try {
+                synchronized (activeResponses) {
+                    activeResponses.add(responseModel);
+                }
+                if (failed) throw new IOUtils.InterruptedStreamException();
+                if (responseModel.statusCode != 206 || HttpStreamer.getContentRangeStart(responseModel) != start) {
+                    throw new IOException("Segment " + index + ": unexpected response " + responseModel.statusCode + " - " +
+                            responseModel.statusReason);
+                }
+                copyRange(responseModel.stream, channel, start, end - start + 1);
+                return null;
+            } finally {
+                synchronized (activeResponses) {
+                    activeResponses.remove(responseModel);
+                }
+                responseModel.release();
+            }
+        }
+    }
+
+    /**
+     * Прогресс одной части, передаёт в общий интерфейс сумму прогресса всех частей
+     */
+    private class SegmentProgressListener implements ProgressListener {
+        private final int index;
+
+        public SegmentProgressListener(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void setMaxValue(long value) {
+            if (index == 0) listener.setMaxValue(value);
+        }
+
+        @Override
+        public void setProgress(long value) {
+            long sum = 0;
+            synchronized (progress) {
+                progress[index] = value;
+                for (long segmentProgress : progress) sum += segmentProgress;
+            }
+            listener.setProgress(sum);
+        }
+
+        @Override
+        public void setIndeterminate() {
+            if (index == 0) listener.setIndeterminate();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.http.streamer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import nya.miku.wishmaster.api.interfaces.CancellableTask;
+import nya.miku.wishmaster.http.HttpConstants;
+
+/**
+ * Планировщик классов трафика {@link HttpStreamer}.<br>
+ * Пока к хосту выполняются интерактивные запросы (загрузка страниц, отправка постов), запросы фоновых классов
+ * к тому же хосту приостанавливаются: новые запросы ожидают начала выполнения (миниатюры не дольше {@link #MAX_THUMBNAIL_START_DELAY},
+ * оригиналы вложений и фоновое обновление вкладок не дольше {@link #MAX_START_DELAY}), а чтение уже полученных ответов
+ * оригиналов и фонового обновления замедляется. Запросы к другим хостам не затрагиваются.<br>
+ * Кроме того, фоновым классам доступно не более {@link HttpConstants#MAX_CONNECTIONS_PER_HOST} соединений к одному хосту
+ * (новые фоновые запросы ожидают освобождения соединения), остальные соединения пула зарезервированы для интерактивных запросов
+ * и дополнительных частей загрузки по частям (такие запросы не учитываются, их количество ограничивает {@link SegmentedDownload}).<br>
+ * Запрос завершается при закрытии или дочитывании потока ответа, либо при освобождении ресурсов ответа.
+ * Интерактивный запрос, выполняющийся дольше {@link #INTERACTIVE_TIMEOUT}, перестаёт учитываться,
+ * поэтому фоновый трафик замедляется, но никогда не останавливается полностью.
+ * @author miku-nyan
+ *
+ */
+class TrafficScheduler {
+    /** максимальное время ожидания завершения интерактивных запросов перед началом фонового запроса, мс */
+    private static final long MAX_START_DELAY = 5000;
+    /** максимальное время ожидания завершения интерактивных запросов перед началом загрузки миниатюры, мс */
+    private static final long MAX_THUMBNAIL_START_DELAY = 500;
+    /** максимальная пауза перед чтением очередного блока данных фонового запроса, мс */
+    private static final long MAX_READ_DELAY = 1000;
+    /** интервал проверки отмены задачи во время ожидания, мс */
+    private static final long CHECK_INTERVAL = 100;
+    /**
+     * время с начала интерактивного запроса, после которого он перестаёт учитываться, мс
+     * (защита от запросов, ресурсы которых не были освобождены)
+     */
+    private static final long INTERACTIVE_TIMEOUT = 30000;
+
+    private final Object lock = new Object();
+    /** выполняющиеся интерактивные запросы по хостам */
+    private final HashMap<String, List<Ticket>> activeInteractive = new HashMap<String, List<Ticket>>();
+    /** общее количество выполняющихся интерактивных запросов (для проверки без блокировки) */
+    private volatile int interactiveCount = 0;
+    /** количество фоновых соединений по хостам */
+    private final HashMap<String, Integer> activeBulk = new HashMap<String, Integer>();
+
+    /** возвращает true, если класс трафика является интерактивным (имеет приоритет) */
+    static boolean isInteractive(int trafficClass) {
+        return trafficClass == HttpRequestModel.TRAFFIC_INTERACTIVE || trafficClass == HttpRequestModel.TRAFFIC_POSTING;
+    }
+
+    /**
+     * Начать запрос. Для фоновых классов ожидает (ограниченное время) завершения интерактивных запросов к тому же хосту,
+     * затем освобождения соединения к хосту (до отмены задачи).
+     * @param host имя хоста
+     * @param trafficClass класс трафика (константа HttpRequestModel.TRAFFIC_*)
+     * @param segment запрос дополнительной части загрузки по частям (соединение выделено {@link SegmentedDownload},
+     * ограничение фоновых соединений не применяется)
+     * @param task задача, отмена которой прервёт ожидание (может принимать null)
+     * @return объект, который необходимо освободить ({@link Ticket#release()}) после завершения запроса
+     */
+    Ticket acquire(String host, int trafficClass, boolean segment, CancellableTask task) {
+        synchronized (lock) {
+            if (isInteractive(trafficClass)) {
+                Ticket ticket = new Ticket(host, trafficClass, false);
+                List<Ticket> tickets = activeInteractive.get(host);
+                if (tickets == null) activeInteractive.put(host, tickets = new ArrayList<Ticket>());
+                tickets.add(ticket);
+                ++interactiveCount;
+                return ticket;
+            }
+            long delay = trafficClass == HttpRequestModel.TRAFFIC_THUMBNAILS ? MAX_THUMBNAIL_START_DELAY : MAX_START_DELAY;
+            long deadline = System.currentTimeMillis() + delay;
+            while (isInteractiveActive(host)) {
+                if (!await(deadline, task)) break;
+            }
+            if (segment) return new Ticket(host, trafficClass, false);
+            while (getBulk(host) >= HttpConstants.MAX_CONNECTIONS_PER_HOST) {
+                if (!await(Long.MAX_VALUE, task)) break;
+            }
+            activeBulk.put(host, getBulk(host) + 1);
+            return new Ticket(host, trafficClass, true);
+        }
+    }
+
+    /**
+     * возвращает true, если к хосту выполняются интерактивные запросы (вызывается под блокировкой).
+     * Запросы старше {@link #INTERACTIVE_TIMEOUT} перестают учитываться
+     */
+    private boolean isInteractiveActive(String host) {
+        List<Ticket> tickets = activeInteractive.get(host);
+        if (tickets == null) return false;
+        long now = System.currentTimeMillis();
+        for (int i=tickets.size()-1; i>=0; --i) {
+            if (now - tickets.get(i).startTime >= INTERACTIVE_TIMEOUT) {
+                tickets.remove(i);
+                --interactiveCount;
+            }
+        }
+        if (!tickets.isEmpty()) return true;
+        activeInteractive.remove(host);
+        return false;
+    }
+
+    private int getBulk(String host) {
+        Integer count = activeBulk.get(host);
+        return count == null ? 0 : count.intValue();
+    }
+
+    /** ожидание изменения состояния (вызывается под блокировкой), возвращает false, если время истекло или задача отменена */
+    private boolean await(long deadline, CancellableTask task) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0 || (task != null && task.isCancelled())) return false;
+        try {
+            lock.wait(Math.min(remaining, CHECK_INTERVAL));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /** пауза фонового запроса, пока к хосту выполняются интерактивные (не дольше {@link #MAX_READ_DELAY}) */
+    private void yieldToInteractive(String host, CancellableTask task) {
+        if (interactiveCount == 0) return;
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + MAX_READ_DELAY;
+            while (isInteractiveActive(host)) {
+                if (!await(deadline, task)) break;
+            }
+        }
+    }
+
+    /**
+     * Выполняющийся запрос
+     */
+    class Ticket {
+        private final String host;
+        private final int trafficClass;
+        /** учитывается в количестве фоновых соединений к хосту */
+        private final boolean counted;
+        /** время начала запроса */
+        private final long startTime = System.currentTimeMillis();
+        private boolean released = false;
+
+        private Ticket(String host, int trafficClass, boolean counted) {
+            this.host = host;
+            this.trafficClass = trafficClass;
+            this.counted = counted;
+        }
+
+        /**
+         * Обернуть поток ответа: запрос завершается при закрытии или дочитывании потока;
+         * чтение оригиналов и фонового обновления приостанавливается, пока к хосту выполняются интерактивные запросы
+         * @param task задача, отмена которой прервёт ожидание (может принимать null)
+         */
+        InputStream wrapStream(InputStream stream, final CancellableTask task) {
+            if (stream == null) return null;
+            final boolean yield = !isInteractive(trafficClass) && trafficClass != HttpRequestModel.TRAFFIC_THUMBNAILS;
+            return new FilterInputStream(stream) {
+                @Override
+                public int read() throws IOException {
+                    if (yield) yieldToInteractive(host, task);
+                    int result = super.read();
+                    if (result == -1) release();
+                    return result;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    if (yield) yieldToInteractive(host, task);
+                    int result = super.read(buffer, offset, count);
+                    if (result == -1) release();
+                    return result;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release();
+                    }
+                }
+            };
+        }
+
+        /** Завершить запрос, повторные вызовы игнорируются */
+        void release() {
+            synchronized (lock) {
+                if (released) return;
+                released = true;
+                if (isInteractive(trafficClass)) {
+                    List<Ticket> tickets = activeInteractive.get(host);
+                    if (tickets != null && tickets.remove(this)) {
+                        --interactiveCount;
+                        if (tickets.isEmpty()) activeInteractive.remove(host);
+                    }
+                } else if (counted) {
+                    int left = getBulk(host) - 1;
+                    if (left > 0) activeBulk.put(host, left); else activeBulk.remove(host);
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+}
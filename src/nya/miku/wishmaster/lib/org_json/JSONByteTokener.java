@@ -0,0 +1,539 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.lib.org_json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Реализация {@link JSONTokener}, работающая непосредственно с массивом байт (без {@link java.io.Reader}).
+ * Данные явно декодируются как UTF-8. Строки в кодировке ASCII и целые числа читаются блоками из буфера,
+ * короткие строки (в т.ч. ключи объектов) переиспользуются через кэш.<br>
+ * Результат разбора совпадает с результатом {@link JSONTokener}, читающего поток через {@link java.io.InputStreamReader}
+ * в кодировке UTF-8, в том числе для недопустимых последовательностей байт.
+ * @author miku-nyan
+ *
+ */
+public class JSONByteTokener extends JSONTokener {
+    private static final int BUFFER_SIZE = 8192;
+    /** размер кэша строк (степень двойки) */
+    private static final int STRING_CACHE_SIZE = 512;
+    /** максимальная длина строки, помещаемой в кэш */
+    private static final int STRING_CACHE_MAX_LENGTH = 32;
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+    private static final String DELIMITERS = ",:]}/\\\"[{;=#";
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+    /** начало отмеченной области буфера, которая не должна быть вытеснена (для {@link #skipTo(char)}), или -1 */
+    private int mark = -1;
+
+    private char[] chars = new char[128];
+    private final String[] stringCache = new String[STRING_CACHE_SIZE];
+    /** вторая половина суррогатной пары, если последний декодированный символ находится вне BMP */
+    private char pendingSurrogate = 0;
+
+    private long character = 1;
+    private boolean eof = false;
+    private long index = 0;
+    private long line = 1;
+    private char previous = 0;
+    private boolean usePrevious = false;
+
+    /**
+     * Конструктор
+     * @param inputStream поток данных в кодировке UTF-8 (буферизация не требуется)
+     */
+    public JSONByteTokener(InputStream inputStream) {
+        super();
+        if (inputStream == null) throw new NullPointerException();
+        this.in = inputStream;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.pos = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Конструктор
+     * @param data массив данных в кодировке UTF-8 (не копируется и не изменяется)
+     * @param offset начальная позиция
+     * @param length длина данных
+     */
+    public JSONByteTokener(byte[] data, int offset, int length) {
+        super();
+        if (offset < 0 || length < 0 || offset + length > data.length) throw new IndexOutOfBoundsException();
+        this.in = null;
+        this.buffer = data;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    public void back() throws JSONException {
+        if (this.usePrevious || this.index <= 0) {
+            throw new JSONException("Stepping back two steps is not supported");
+        }
+        this.index -= 1;
+        this.character -= 1;
+        this.usePrevious = true;
+        this.eof = false;
+    }
+
+    @Override
+    public boolean end() {
+        return this.eof && !this.usePrevious;
+    }
+
+    @Override
+    public boolean more() throws JSONException {
+        this.next();
+        if (this.end()) {
+            return false;
+        }
+        this.back();
+        return true;
+    }
+
+    @Override
+    public char next() throws JSONException {
+        int c;
+        if (this.usePrevious) {
+            this.usePrevious = false;
+            c = this.previous;
+        } else {
+            c = readChar();
+            if (c <= 0) {
+                this.eof = true;
+                c = 0;
+            }
+        }
+        this.index += 1;
+        if (this.previous == '\r') {
+            this.line += 1;
+            this.character = c == '\n' ? 0 : 1;
+        } else if (c == '\n') {
+            this.line += 1;
+            this.character = 0;
+        } else {
+            this.character += 1;
+        }
+        this.previous = (char) c;
+        return this.previous;
+    }
+
+    @Override
+    public char next(char c) throws JSONException {
+        char n = this.next();
+        if (n != c) {
+            throw this.syntaxError("Expected '" + c + "' and instead saw '" + n + "'");
+        }
+        return n;
+    }
+
+    @Override
+    public String next(int n) throws JSONException {
+        if (n == 0) {
+            return "";
+        }
+        char[] result = new char[n];
+        for (int i=0; i<n; ++i) {
+            result[i] = this.next();
+            if (this.end()) {
+                throw this.syntaxError("Substring bounds error");
+            }
+        }
+        return new String(result);
+    }
+
+    @Override
+    public char nextClean() throws JSONException {
+        for (;;) {
+            char c = this.next();
+            if (c == 0 || c > ' ') {
+                return c;
+            }
+        }
+    }
+
+    @Override
+    public String nextString(char quote) throws JSONException {
+        char[] out = this.chars;
+        int len = 0;
+        for (;;) {
+            if (!this.usePrevious && this.pendingSurrogate == 0) {
+                byte[] buf = this.buffer;
+                int p = this.pos;
+                int l = this.limit;
+                while (p < l) {
+                    int b = buf[p];
+                    if (b == quote || b == '\\' || b <= '\r') break;
+                    if (len == out.length) out = growChars();
+                    out[len++] = (char) b;
+                    ++p;
+                }
+                int count = p - this.pos;
+                if (count > 0) {
+                    this.index += count;
+                    this.character += count;
+                    this.previous = out[len - 1];
+                    this.pos = p;
+                }
+            }
+            char c = this.next();
+            switch (c) {
+                case 0:
+                case '\n':
+                case '\r':
+                    throw this.syntaxError("Unterminated string");
+                case '\\':
+                    c = this.next();
+                    switch (c) {
+                        case 'b':
+                            c = '\b';
+                            break;
+                        case 't':
+                            c = '\t';
+                            break;
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 'f':
+                            c = '\f';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                        case 'u':
+                            c = readUnicodeEscape();
+                            break;
+                        case '"':
+                        case '\'':
+                        case '\\':
+                        case '/':
+                            break;
+                        default:
+                            throw this.syntaxError("Illegal escape.");
+                    }
+                    break;
+                default:
+                    if (c == quote) {
+                        return makeString(out, len);
+                    }
+            }
+            if (len == out.length) out = growChars();
+            out[len++] = c;
+        }
+    }
+
+    @Override
+    public String nextTo(char delimiter) throws JSONException {
+        StringBuilder sb = new StringBuilder();
+        for (;;) {
+            char c = this.next();
+            if (c == delimiter || c == 0 || c == '\n' || c == '\r') {
+                if (c != 0) {
+                    this.back();
+                }
+                return sb.toString().trim();
+            }
+            sb.append(c);
+        }
+    }
+
+    @Override
+    public String nextTo(String delimiters) throws JSONException {
+        StringBuilder sb = new StringBuilder();
+        for (;;) {
+            char c = this.next();
+            if (delimiters.indexOf(c) >= 0 || c == 0 || c == '\n' || c == '\r') {
+                if (c != 0) {
+                    this.back();
+                }
+                return sb.toString().trim();
+            }
+            sb.append(c);
+        }
+    }
+
+    @Override
+    public Object nextValue() throws JSONException {
+        char c = this.nextClean();
+
+        switch (c) {
+            case '"':
+            case '\'':
+                return this.nextString(c);
+            case '{':
+                this.back();
+                return new JSONObject(this);
+            case '[':
+                this.back();
+                return new JSONArray(this);
+        }
+
+        char[] out = this.chars;
+        int len = 0;
+        if (((c >= '0' && c <= '9') || c == '-') && !this.usePrevious && this.pendingSurrogate == 0) {
+            /* целое число без ведущих нулей, полностью находящееся в буфере,
+             * разбирается без создания строки (результат совпадает с JSONObject.stringToValue) */
+            out[len++] = c;
+            boolean negative = c == '-';
+            long value = negative ? 0 : c - '0';
+            byte[] buf = this.buffer;
+            int p = this.pos;
+            int l = this.limit;
+            while (p < l && len < 19) {
+                int b = buf[p];
+                if (b < '0' || b > '9') break;
+                value = value * 10 + (b - '0');
+                out[len++] = (char) b;
+                ++p;
+            }
+            int count = p - this.pos;
+            if (count > 0) {
+                this.index += count;
+                this.character += count;
+                this.previous = out[len - 1];
+                this.pos = p;
+            }
+            if (p < l) {
+                int b = buf[p];
+                int digits = negative ? len - 1 : len;
+                boolean terminated = (b >= 0 && b < ' ') || DELIMITERS.indexOf(b) >= 0;
+                boolean leadingZero = out[negative ? 1 : 0] == '0' && (digits > 1 || negative);
+                if (terminated && digits > 0 && digits < 19 && !leadingZero) {
+                    if (negative) value = -value;
+                    if (value == (int) value) return Integer.valueOf((int) value);
+                    return Long.valueOf(value);
+                }
+            }
+            c = this.next();
+        }
+
+        /*
+         * Handle unquoted text. This could be the values true, false, or
+         * null, or it can be a number.
+         */
+        while (c >= ' ' && DELIMITERS.indexOf(c) < 0) {
+            if (len == out.length) out = growChars();
+            out[len++] = c;
+            c = this.next();
+        }
+        this.back();
+
+        String string = new String(out, 0, len).trim();
+        if ("".equals(string)) {
+            throw this.syntaxError("Missing value");
+        }
+        return JSONObject.stringToValue(string);
+    }
+
+    @Override
+    public char skipTo(char to) throws JSONException {
+        long startIndex = this.index;
+        long startCharacter = this.character;
+        long startLine = this.line;
+        char startPrevious = this.previous;
+        boolean startUsePrevious = this.usePrevious;
+        boolean startEof = this.eof;
+        char startPendingSurrogate = this.pendingSurrogate;
+        char c;
+        this.mark = this.pos;
+        try {
+            do {
+                c = this.next();
+                if (c == 0) {
+                    this.pos = this.mark;
+                    this.index = startIndex;
+                    this.character = startCharacter;
+                    this.line = startLine;
+                    this.previous = startPrevious;
+                    this.usePrevious = startUsePrevious;
+                    this.eof = startEof;
+                    this.pendingSurrogate = startPendingSurrogate;
+                    return c;
+                }
+            } while (c != to);
+        } finally {
+            this.mark = -1;
+        }
+        this.back();
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return " at " + this.index + " [character " + this.character + " line " + this.line + "]";
+    }
+
+    private char[] growChars() {
+        this.chars = Arrays.copyOf(this.chars, this.chars.length * 2);
+        return this.chars;
+    }
+
+    private String makeString(char[] value, int length) {
+        if (length > STRING_CACHE_MAX_LENGTH) return new String(value, 0, length);
+        int hash = 0;
+        for (int i=0; i<length; ++i) hash = 31 * hash + value[i];
+        int slot = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+        String cached = this.stringCache[slot];
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == value[i]) ++i;
+            if (i == length) return cached;
+        }
+        String result = new String(value, 0, length);
+        this.stringCache[slot] = result;
+        return result;
+    }
+
+    private char readUnicodeEscape() throws JSONException {
+        int result = 0;
+        for (int i=0; i<4; ++i) {
+            char c = this.next();
+            if (this.end()) {
+                throw this.syntaxError("Substring bounds error");
+            }
+            int digit = dehexchar(c);
+            if (digit == -1) {
+                throw this.syntaxError("Illegal escape.");
+            }
+            result = (result << 4) + digit;
+        }
+        return (char) result;
+    }
+
+    /**
+     * Прочитать следующий символ из буфера (UTF-8), или -1 в случае конца потока.<br>
+     * Недопустимые последовательности (неполные, избыточные формы, суррогаты, значения больше U+10FFFF, байты C0, C1, F5-FF)
+     * заменяются символом U+FFFD по тем же правилам, что и в декодере UTF-8 {@link java.io.InputStreamReader}:
+     * замена на каждый байт, с которого не может начинаться допустимая последовательность,
+     * или одна замена на начало последовательности, оборванное недопустимым байтом или концом потока.
+     */
+    private int readChar() throws JSONException {
+        if (this.pendingSurrogate != 0) {
+            char c = this.pendingSurrogate;
+            this.pendingSurrogate = 0;
+            return c;
+        }
+        if (this.pos == this.limit && !fill()) return -1;
+        byte[] buf = this.buffer;
+        int b1 = buf[this.pos++] & 0xFF;
+        if (b1 < 0x80) return b1;
+
+        if (b1 >= 0xC2 && b1 <= 0xDF) {
+            if (!ensure(1)) return REPLACEMENT_CHAR;
+            buf = this.buffer;
+            int b2 = buf[this.pos] & 0xFF;
+            if (!isContinuation(b2)) return REPLACEMENT_CHAR;
+            ++this.pos;
+            return ((b1 & 0x1F) << 6) | (b2 & 0x3F);
+        }
+        if (b1 >= 0xE0 && b1 <= 0xEF) {
+            if (!ensure(1)) return REPLACEMENT_CHAR;
+            buf = this.buffer;
+            int b2 = buf[this.pos] & 0xFF;
+            if (!isContinuation(b2) || (b1 == 0xE0 && b2 < 0xA0)) return REPLACEMENT_CHAR; //избыточная форма
+            if (!ensure(2)) {
+                this.pos = this.limit;
+                return REPLACEMENT_CHAR;
+            }
+            buf = this.buffer;
+            int b3 = buf[this.pos + 1] & 0xFF;
+            if (!isContinuation(b3)) {
+                ++this.pos;
+                return REPLACEMENT_CHAR;
+            }
+            this.pos += 2;
+            int c = ((b1 & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F);
+            return c >= 0xD800 && c <= 0xDFFF ? REPLACEMENT_CHAR : c;
+        }
+        if (b1 >= 0xF0 && b1 <= 0xF4) {
+            if (!ensure(1)) return REPLACEMENT_CHAR;
+            buf = this.buffer;
+            int b2 = buf[this.pos] & 0xFF;
+            //F0: избыточная форма при b2 < 0x90, F4: значение больше U+10FFFF при b2 > 0x8F
+            if (!isContinuation(b2) || (b1 == 0xF0 && b2 < 0x90) || (b1 == 0xF4 && b2 > 0x8F)) return REPLACEMENT_CHAR;
+            if (!ensure(2)) {
+                this.pos = this.limit;
+                return REPLACEMENT_CHAR;
+            }
+            buf = this.buffer;
+            int b3 = buf[this.pos + 1] & 0xFF;
+            if (!isContinuation(b3)) {
+                ++this.pos;
+                return REPLACEMENT_CHAR;
+            }
+            if (!ensure(3)) {
+                this.pos = this.limit;
+                return REPLACEMENT_CHAR;
+            }
+            buf = this.buffer;
+            int b4 = buf[this.pos + 2] & 0xFF;
+            if (!isContinuation(b4)) {
+                this.pos += 2;
+                return REPLACEMENT_CHAR;
+            }
+            this.pos += 3;
+            int codePoint = (((b1 & 0x07) << 18) | ((b2 & 0x3F) << 12) | ((b3 & 0x3F) << 6) | (b4 & 0x3F)) - 0x10000;
+            this.pendingSurrogate = (char) (0xDC00 + (codePoint & 0x3FF));
+            return 0xD800 + (codePoint >>> 10);
+        }
+        return REPLACEMENT_CHAR; //80-C1, F5-FF
+    }
+
+    private static boolean isContinuation(int b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    /** обеспечить наличие в буфере count байт после текущей позиции; false, если поток закончился раньше */
+    private boolean ensure(int count) throws JSONException {
+        while (this.limit - this.pos < count) {
+            if (!fill()) return false;
+        }
+        return true;
+    }
+
+    /** загрузить данные из потока в буфер (вызывается, когда все данные буфера прочитаны) */
+    private boolean fill() throws JSONException {
+        if (this.in == null) return false;
+        int shift = this.mark >= 0 ? this.mark : this.pos;
+        if (shift > 0) {
+            System.arraycopy(this.buffer, shift, this.buffer, 0, this.limit - shift);
+            this.limit -= shift;
+            this.pos -= shift;
+            if (this.mark >= 0) this.mark = 0;
+        }
+        if (this.limit == this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+        }
+        try {
+            int count;
+            while ((count = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit)) == 0);
+            if (count == -1) return false;
+            this.limit += count;
+            return true;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+}
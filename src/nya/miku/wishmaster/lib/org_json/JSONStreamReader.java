@@ -0,0 +1,588 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.lib.org_json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Потоковый (pull) парсер JSON. В отличие от {@link JSONTokener}, не строит промежуточное дерево
+ * {@link JSONObject}/{@link JSONArray}: значения читаются по одному непосредственно из потока,
+ * что позволяет заполнять модели во время чтения.<br>
+ * Допускаются те же вольности, что и у {@link JSONObject}: числа и логические значения в строках
+ * ({@link #nextLong()}, {@link #nextInt()}, {@link #nextBoolean()}), числовые значения через {@link #nextString()}.
+ * Ошибки ввода/вывода и синтаксиса передаются как {@link JSONException}.
+ * @author miku-nyan
+ *
+ */
+public class JSONStreamReader implements Closeable {
+    /** Начало объекта: <b>{</b> */
+    public static final int BEGIN_OBJECT = 0;
+    /** Конец объекта: <b>}</b> */
+    public static final int END_OBJECT = 1;
+    /** Начало массива: <b>[</b> */
+    public static final int BEGIN_ARRAY = 2;
+    /** Конец массива: <b>]</b> */
+    public static final int END_ARRAY = 3;
+    /** Имя (ключ) свойства объекта */
+    public static final int NAME = 4;
+    /** Строковое значение */
+    public static final int STRING = 5;
+    /** Числовое значение */
+    public static final int NUMBER = 6;
+    /** Логическое значение */
+    public static final int BOOLEAN = 7;
+    /** Значение null */
+    public static final int NULL = 8;
+    /** Конец документа */
+    public static final int END_DOCUMENT = 9;
+
+    private static final int PEEKED_NONE = -1;
+
+    private static final int SCOPE_EMPTY_ARRAY = 0;
+    private static final int SCOPE_NONEMPTY_ARRAY = 1;
+    private static final int SCOPE_EMPTY_OBJECT = 2;
+    private static final int SCOPE_DANGLING_NAME = 3;
+    private static final int SCOPE_NONEMPTY_OBJECT = 4;
+    private static final int SCOPE_EMPTY_DOCUMENT = 5;
+    private static final int SCOPE_NONEMPTY_DOCUMENT = 6;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+    /** количество символов, вытесненных из буфера (для сообщений об ошибках) */
+    private long consumed = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+    private int peeked = PEEKED_NONE;
+
+    /**
+     * Конструктор
+     * @param in поток символов (буферизация не требуется)
+     */
+    public JSONStreamReader(Reader in) {
+        if (in == null) throw new NullPointerException("in == null");
+        this.in = in;
+        stack[stackSize++] = SCOPE_EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Конструктор, данные декодируются как UTF-8
+     * @param in поток байтов (буферизация не требуется)
+     */
+    public JSONStreamReader(InputStream in) {
+        this(new InputStreamReader(in, UTF8));
+    }
+
+    /**
+     * Получить тип следующего токена, не поглощая его
+     * @return одна из констант {@link #BEGIN_OBJECT}, {@link #END_OBJECT}, {@link #BEGIN_ARRAY}, {@link #END_ARRAY},
+     * {@link #NAME}, {@link #STRING}, {@link #NUMBER}, {@link #BOOLEAN}, {@link #NULL}, {@link #END_DOCUMENT}
+     */
+    public int peek() throws JSONException {
+        if (peeked == PEEKED_NONE) peeked = doPeek();
+        return peeked;
+    }
+
+    /**
+     * Возвращает true, если в текущем объекте или массиве есть ещё элементы
+     */
+    public boolean hasNext() throws JSONException {
+        int p = peek();
+        return p != END_OBJECT && p != END_ARRAY && p != END_DOCUMENT;
+    }
+
+    /** Поглотить начало объекта */
+    public void beginObject() throws JSONException {
+        expect(BEGIN_OBJECT);
+        push(SCOPE_EMPTY_OBJECT);
+        peeked = PEEKED_NONE;
+    }
+
+    /** Поглотить конец объекта */
+    public void endObject() throws JSONException {
+        expect(END_OBJECT);
+        --stackSize;
+        peeked = PEEKED_NONE;
+    }
+
+    /** Поглотить начало массива */
+    public void beginArray() throws JSONException {
+        expect(BEGIN_ARRAY);
+        push(SCOPE_EMPTY_ARRAY);
+        peeked = PEEKED_NONE;
+    }
+
+    /** Поглотить конец массива */
+    public void endArray() throws JSONException {
+        expect(END_ARRAY);
+        --stackSize;
+        peeked = PEEKED_NONE;
+    }
+
+    /** Прочитать имя (ключ) следующего свойства объекта */
+    public String nextName() throws JSONException {
+        expect(NAME);
+        peeked = PEEKED_NONE;
+        return readString();
+    }
+
+    /**
+     * Прочитать строковое значение. Числовые и логические значения возвращаются в виде строки,
+     * для значения null возвращается null.
+     */
+    public String nextString() throws JSONException {
+        int p = peek();
+        String result;
+        switch (p) {
+            case STRING:
+                result = readString();
+                break;
+            case NUMBER:
+            case BOOLEAN:
+                result = readLiteral();
+                break;
+            case NULL:
+                readLiteral();
+                result = null;
+                break;
+            default:
+                throw syntaxError("Expected a string value");
+        }
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    /** Прочитать числовое значение типа long (допускается число в строке) */
+    public long nextLong() throws JSONException {
+        String value = nextNumberString();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException e1) {
+                throw syntaxError("Expected a number, got \"" + value + "\"");
+            }
+        }
+    }
+
+    /** Прочитать числовое значение типа int (допускается число в строке) */
+    public int nextInt() throws JSONException {
+        return (int) nextLong();
+    }
+
+    /** Прочитать числовое значение типа double (допускается число в строке) */
+    public double nextDouble() throws JSONException {
+        String value = nextNumberString();
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number, got \"" + value + "\"");
+        }
+    }
+
+    /** Прочитать логическое значение (допускаются строки "true" и "false") */
+    public boolean nextBoolean() throws JSONException {
+        int p = peek();
+        if (p != BOOLEAN && p != STRING) throw syntaxError("Expected a boolean value");
+        String value = p == STRING ? readString() : readLiteral();
+        peeked = PEEKED_NONE;
+        if (value.equalsIgnoreCase("true")) return true;
+        if (value.equalsIgnoreCase("false")) return false;
+        throw syntaxError("Expected a boolean value, got \"" + value + "\"");
+    }
+
+    /**
+     * Прочитать необязательное строковое значение (аналогично {@link JSONObject#optString(String, String)}).
+     * Если значение null, объект или массив, оно пропускается и возвращается defaultValue.
+     */
+    public String optString(String defaultValue) throws JSONException {
+        int p = peek();
+        if (p == STRING || p == NUMBER || p == BOOLEAN) return nextString();
+        skipValue();
+        return defaultValue;
+    }
+
+    /**
+     * Прочитать необязательное значение типа int (аналогично {@link JSONObject#optInt(String, int)}).
+     * Если значение не является числом, оно пропускается и возвращается defaultValue.
+     */
+    public int optInt(int defaultValue) throws JSONException {
+        return (int) optLong(defaultValue);
+    }
+
+    /**
+     * Прочитать необязательное значение типа long (аналогично {@link JSONObject#optLong(String, long)}).
+     * Если значение не является числом, оно пропускается и возвращается defaultValue.
+     */
+    public long optLong(long defaultValue) throws JSONException {
+        int p = peek();
+        if (p == NUMBER || p == STRING) {
+            String value = nextNumberString();
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                try {
+                    return (long) Double.parseDouble(value);
+                } catch (NumberFormatException e1) {
+                    return defaultValue;
+                }
+            }
+        }
+        skipValue();
+        return defaultValue;
+    }
+
+    /** Поглотить значение null */
+    public void nextNull() throws JSONException {
+        expect(NULL);
+        readLiteral();
+        peeked = PEEKED_NONE;
+    }
+
+    /**
+     * Пропустить следующее значение (в т.ч. вложенные объекты и массивы целиком), не создавая строк.
+     * Если следующий токен - имя свойства, пропускается имя вместе со значением.
+     */
+    public void skipValue() throws JSONException {
+        int depth = 0;
+        for (;;) {
+            int p = peek();
+            switch (p) {
+                case BEGIN_OBJECT:
+                    push(SCOPE_EMPTY_OBJECT);
+                    ++depth;
+                    break;
+                case BEGIN_ARRAY:
+                    push(SCOPE_EMPTY_ARRAY);
+                    ++depth;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    if (depth == 0) throw syntaxError("Expected a value");
+                    --stackSize;
+                    --depth;
+                    break;
+                case NAME:
+                    skipString();
+                    peeked = PEEKED_NONE;
+                    continue;
+                case STRING:
+                    skipString();
+                    break;
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    skipLiteral();
+                    break;
+                default:
+                    throw syntaxError("Expected a value");
+            }
+            peeked = PEEKED_NONE;
+            if (depth == 0) return;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = PEEKED_NONE;
+        stackSize = 0;
+        in.close();
+    }
+
+    /**
+     * Создать исключение синтаксической ошибки с указанием позиции
+     * @param message сообщение
+     */
+    public JSONException syntaxError(String message) {
+        return new JSONException(message + toString());
+    }
+
+    @Override
+    public String toString() {
+        return " at " + (consumed + pos);
+    }
+
+    private void expect(int token) throws JSONException {
+        if (peek() != token) throw syntaxError("Unexpected token " + peeked + ", expected " + token);
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private String nextNumberString() throws JSONException {
+        int p = peek();
+        String value;
+        if (p == NUMBER) value = readLiteral();
+        else if (p == STRING) value = readString();
+        else throw syntaxError("Expected a number");
+        peeked = PEEKED_NONE;
+        return value;
+    }
+
+    private int doPeek() throws JSONException {
+        if (stackSize == 0) throw new JSONException("JSONStreamReader is closed");
+        int scope = stack[stackSize - 1];
+        int c;
+        switch (scope) {
+            case SCOPE_EMPTY_ARRAY:
+                stack[stackSize - 1] = SCOPE_NONEMPTY_ARRAY;
+                break;
+            case SCOPE_NONEMPTY_ARRAY:
+                c = nextNonWhitespace(true);
+                if (c == ']') return END_ARRAY;
+                if (c != ',') throw syntaxError("Expected a ',' or ']'");
+                break;
+            case SCOPE_EMPTY_OBJECT:
+            case SCOPE_NONEMPTY_OBJECT:
+                stack[stackSize - 1] = SCOPE_DANGLING_NAME;
+                if (scope == SCOPE_NONEMPTY_OBJECT) {
+                    c = nextNonWhitespace(true);
+                    if (c == '}') return END_OBJECT;
+                    if (c != ',') throw syntaxError("Expected a ',' or '}'");
+                }
+                c = nextNonWhitespace(true);
+                if (c == '"') return NAME;
+                if (c == '}' && scope == SCOPE_EMPTY_OBJECT) return END_OBJECT;
+                throw syntaxError("A JSONObject text must begin with '{' and keys must be strings");
+            case SCOPE_DANGLING_NAME:
+                stack[stackSize - 1] = SCOPE_NONEMPTY_OBJECT;
+                c = nextNonWhitespace(true);
+                if (c != ':') throw syntaxError("Expected a ':' after a key");
+                break;
+            case SCOPE_EMPTY_DOCUMENT:
+                stack[stackSize - 1] = SCOPE_NONEMPTY_DOCUMENT;
+                break;
+            case SCOPE_NONEMPTY_DOCUMENT:
+                c = nextNonWhitespace(false);
+                if (c == -1) return END_DOCUMENT;
+                throw syntaxError("Unexpected data after the end of document");
+        }
+
+        c = nextNonWhitespace(true);
+        switch (c) {
+            case '{':
+                return BEGIN_OBJECT;
+            case '[':
+                return BEGIN_ARRAY;
+            case '"':
+                return STRING;
+            case ']':
+                if (scope == SCOPE_EMPTY_ARRAY) {
+                    return END_ARRAY;
+                }
+                throw syntaxError("Missing value");
+            case 't':
+            case 'f':
+                --pos;
+                return BOOLEAN;
+            case 'n':
+                --pos;
+                return NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    --pos;
+                    return NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private boolean fill(int minimum) throws JSONException {
+        consumed += pos;
+        if (pos != limit) {
+            limit -= pos;
+            System.arraycopy(buffer, pos, buffer, 0, limit);
+        } else {
+            limit = 0;
+        }
+        pos = 0;
+        try {
+            int count;
+            while ((count = in.read(buffer, limit, buffer.length - limit)) != -1) {
+                limit += count;
+                if (limit >= minimum) return true;
+            }
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        return false;
+    }
+
+    private int nextNonWhitespace(boolean throwOnEof) throws JSONException {
+        for (;;) {
+            if (pos == limit && !fill(1)) {
+                if (throwOnEof) throw syntaxError("Unexpected end of input");
+                return -1;
+            }
+            char c = buffer[pos++];
+            if (c > ' ') return c;
+        }
+    }
+
+    /** чтение строки после открывающей кавычки (включая закрывающую кавычку) */
+    private String readString() throws JSONException {
+        StringBuilder builder = null;
+        for (;;) {
+            int p = pos;
+            int l = limit;
+            int start = p;
+            while (p < l) {
+                char c = buffer[p++];
+                if (c == '"') {
+                    pos = p;
+                    if (builder == null) return new String(buffer, start, p - start - 1);
+                    builder.append(buffer, start, p - start - 1);
+                    return builder.toString();
+                } else if (c == '\\') {
+                    pos = p;
+                    if (builder == null) builder = new StringBuilder(Math.max((p - start) * 2, 16));
+                    builder.append(buffer, start, p - start - 1);
+                    builder.append(readEscapeCharacter());
+                    p = pos;
+                    l = limit;
+                    start = p;
+                } else if (c == '\n' || c == '\r') {
+                    pos = p;
+                    throw syntaxError("Unterminated string");
+                }
+            }
+            if (builder == null) builder = new StringBuilder(Math.max((p - start) * 2, 16));
+            builder.append(buffer, start, p - start);
+            pos = p;
+            if (!fill(1)) throw syntaxError("Unterminated string");
+        }
+    }
+
+    /** пропуск строки после открывающей кавычки */
+    private void skipString() throws JSONException {
+        for (;;) {
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    return;
+                } else if (c == '\\') {
+                    readEscapeCharacter();
+                } else if (c == '\n' || c == '\r') {
+                    throw syntaxError("Unterminated string");
+                }
+            }
+            if (!fill(1)) throw syntaxError("Unterminated string");
+        }
+    }
+
+    private char readEscapeCharacter() throws JSONException {
+        if (pos == limit && !fill(1)) throw syntaxError("Unterminated escape sequence");
+        char c = buffer[pos++];
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                if (limit - pos < 4 && !fill(4)) throw syntaxError("Unterminated escape sequence");
+                int result = 0;
+                for (int i=0; i<4; ++i) {
+                    int digit = JSONTokener.dehexchar(buffer[pos++]);
+                    if (digit == -1) throw syntaxError("Illegal escape.");
+                    result = (result << 4) + digit;
+                }
+                return (char) result;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Illegal escape.");
+        }
+    }
+
+    private static boolean isLiteral(char c) {
+        if (c <= ' ') return false;
+        switch (c) {
+            case ',':
+            case ':':
+            case ']':
+            case '}':
+            case '/':
+            case '\\':
+            case '"':
+            case '[':
+            case '{':
+            case ';':
+            case '=':
+            case '#':
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /** чтение числа или литерала true, false, null */
+    private String readLiteral() throws JSONException {
+        StringBuilder builder = null;
+        for (;;) {
+            int start = pos;
+            while (pos < limit) {
+                if (!isLiteral(buffer[pos])) {
+                    if (builder == null) return new String(buffer, start, pos - start);
+                    builder.append(buffer, start, pos - start);
+                    return builder.toString();
+                }
+                ++pos;
+            }
+            if (builder == null) builder = new StringBuilder(32);
+            builder.append(buffer, start, pos - start);
+            if (!fill(1)) return builder.toString();
+        }
+    }
+
+    private void skipLiteral() throws JSONException {
+        for (;;) {
+            while (pos < limit) {
+                if (!isLiteral(buffer[pos])) return;
+                ++pos;
+            }
+            if (!fill(1)) return;
+        }
+    }
+
+}
@@ -55,6 +55,14 @@ public class JSONTokener {
     private boolean usePrevious;
 
 
+    /**
+     * Constructor for subclasses that read the source by themselves
+     * and override all reading methods.
+     */
+    JSONTokener() {
+    }
+
+
     /**
      * Construct a JSONTokener from a Reader.
      *
@@ -51,6 +51,9 @@ import nya.miku.wishmaster.common.PriorityThreadFactory;
 import nya.miku.wishmaster.containers.ReadableContainer;
 import nya.miku.wishmaster.http.cloudflare.InteractiveException;
 import nya.miku.wishmaster.http.streamer.HttpRequestException;
+import nya.miku.wishmaster.http.streamer.HttpStatistics;
+import nya.miku.wishmaster.http.streamer.HttpStreamer;
+import nya.miku.wishmaster.http.streamer.ResumableFileOutputStream;
 import nya.miku.wishmaster.lib.gallery.FixedSubsamplingScaleImageView;
 import nya.miku.wishmaster.lib.gallery.Jpeg;
 import nya.miku.wishmaster.lib.gallery.TouchGifView;
@@ -681,19 +684,30 @@ public class GalleryActivity extends Activity implements View.OnClickListener {
                 InputStream fromLocal = null;
                 OutputStream out = null;
                 boolean success = false;
+                boolean discard = false;
                 try {
-                    out = new FileOutputStream(file);
                     String localName = DownloadingService.ORIGINALS_FOLDER + "/" +
                             ChanModels.getAttachmentLocalFileName(tag.attachmentModel, boardModel);
                     if (localFile != null && localFile.hasFile(localName)) {
+                        out = new FileOutputStream(file);
                         fromLocal = IOUtils.modifyInputStream(localFile.openStream(localName), null, this);
                         IOUtils.copyStream(fromLocal, out);
                     } else {
-                        chan.downloadFile(tag.attachmentModel.path, out, progressListener, this);
+                        ResumableFileOutputStream resumableOut = new ResumableFileOutputStream(file);
+                        if (settings.isSegmentedDownload()) resumableOut.setMaxSegments(ResumableFileOutputStream.DEFAULT_SEGMENTS);
+                        out = resumableOut;
+                        HttpStreamer.getInstance().setThreadDownloadKind(HttpStatistics.KIND_ORIGINAL);
+                        try {
+                            chan.downloadFile(tag.attachmentModel.path, resumableOut, progressListener, this);
+                        } finally {
+                            HttpStreamer.getInstance().setThreadDownloadKind(HttpStatistics.KIND_AUTO);
+                        }
+                        resumableOut.commit();
                     }
                     fileCache.put(file);
                     success = true;
                 } catch (final Exception e) {
+                    discard = isCancelled() || !ResumableFileOutputStream.isResumableError(e);
                     if (isCancelled()) return;
                     runOnUiThread(new Runnable() {
                         @Override
@@ -755,6 +769,7 @@ public class GalleryActivity extends Activity implements View.OnClickListener {
                     IOUtils.closeQuietly(fromLocal);
                     IOUtils.closeQuietly(out);
                     if (file != null && !success) file.delete();
+                    if (discard) ResumableFileOutputStream.discard(file);
                     downloadingLocker.unlock(filename);
                 }
             }
@@ -52,6 +52,9 @@ import nya.miku.wishmaster.common.MainApplication;
 import nya.miku.wishmaster.common.PriorityThreadFactory;
 import nya.miku.wishmaster.containers.WriteableContainer;
 import nya.miku.wishmaster.http.cloudflare.InteractiveException;
+import nya.miku.wishmaster.http.streamer.HttpStatistics;
+import nya.miku.wishmaster.http.streamer.HttpStreamer;
+import nya.miku.wishmaster.http.streamer.ResumableFileOutputStream;
 import nya.miku.wishmaster.ui.settings.ApplicationSettings;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
@@ -358,19 +361,30 @@ public class DownloadingService extends Service {
                             continue;
                         }
                         boolean success = false;
-                        FileOutputStream out = null;
+                        boolean discard = false;
+                        File partialDirectory = fileCache.getPartialDownloadsDirectory();
+                        ResumableFileOutputStream out = null;
                         try {
-                            out = new FileOutputStream(target);
-                            MainApplication.getInstance().getChanModule(item.chanName).downloadFile(item.attachment.path, out, listener, this);
+                            out = new ResumableFileOutputStream(target, partialDirectory);
+                            if (settings.isSegmentedDownload()) out.setMaxSegments(ResumableFileOutputStream.DEFAULT_SEGMENTS);
+                            HttpStreamer.getInstance().setThreadDownloadKind(HttpStatistics.KIND_ORIGINAL);
+                            try {
+                                MainApplication.getInstance().getChanModule(item.chanName).downloadFile(item.attachment.path, out, listener, this);
+                            } finally {
+                                HttpStreamer.getInstance().setThreadDownloadKind(HttpStatistics.KIND_AUTO);
+                            }
+                            out.commit();
                             success = true;
                         } catch (Exception e) {
                             Logger.e(TAG, e);
+                            discard = isCancelled() || !ResumableFileOutputStream.isResumableError(e);
                             if (!isCancelled()) addError(elementName, e instanceof InteractiveException ?
                                     getString(R.string.downloading_error_interactive_format, ((InteractiveException) e).getServiceName()) :
                                         e.getMessage());
                         } finally {
                             IOUtils.closeQuietly(out);
                             if (!success) target.delete();
+                            if (discard) ResumableFileOutputStream.discard(target, partialDirectory);
                             downloadingLocker.unlock(targetFilename);
                         }
                     }
@@ -580,7 +594,12 @@ public class DownloadingService extends Service {
                                         boolean success = true;
                                         try {
                                             out = new FileOutputStream(cur);
-                                            MainApplication.getInstance().getChanModule(item.chanName).downloadFile(attachment.path, out, null, this);
+                                            HttpStreamer.getInstance().setThreadDownloadKind(HttpStatistics.KIND_ORIGINAL);
+                                            try {
+                                                MainApplication.getInstance().getChanModule(item.chanName).downloadFile(attachment.path, out, null, this);
+                                            } finally {
+                                                HttpStreamer.getInstance().setThreadDownloadKind(HttpStatistics.KIND_AUTO);
+                                            }
                                             fileCache.put(cur);
                                         } catch (Exception e) {
                                             Logger.e(TAG, e);
@@ -43,7 +43,7 @@ import nya.miku.wishmaster.api.models.SendPostModel;
 import nya.miku.wishmaster.api.models.UrlPageModel;
 import nya.miku.wishmaster.api.util.ChanModels;
 import nya.miku.wishmaster.api.util.PageLoaderFromChan;
-import nya.miku.wishmaster.api.util.PageLoaderFromChan.PageLoaderCallback;
+import nya.miku.wishmaster.api.util.PageLoaderFromChan.PageLoaderStreamCallback;
 import nya.miku.wishmaster.cache.BitmapCache;
 import nya.miku.wishmaster.cache.PagesCache;
 import nya.miku.wishmaster.cache.SerializablePage;
@@ -977,6 +977,8 @@ public class BoardFragment extends Fragment implements AdapterView.OnItemClickLi
         
         private PageLoaderFromChan pageLoader = null;
         private final boolean isThreadPage;
+        /** список показан по части постов, загрузка продолжается (модель может обновляться в момент показа) */
+        private volatile boolean streaming = false;
         
         public PageGetter(boolean forceUpdate, boolean silent) {
             this.forceUpdate = forceUpdate;
@@ -988,7 +990,8 @@ public class BoardFragment extends Fragment implements AdapterView.OnItemClickLi
         public void run() {
             if (forceUpdate) saveHistory();
             
-            while (TabsTrackerService.currentUpdatingTabId == tabModel.id) Thread.yield();
+            //если страница сейчас загружается (например, фоновым обновлением вкладок), дождаться результата
+            if (tabModel.type != TabModel.TYPE_LOCAL) PageLoaderFromChan.awaitPendingLoad(tabModel.hash, this);
             
             //обработать случай, когда вкладка - локально сохранённая страница
             if (tabModel.type == TabModel.TYPE_LOCAL) {
@@ -1066,11 +1069,61 @@ public class BoardFragment extends Fragment implements AdapterView.OnItemClickLi
             final int itemsCountBefore =
                     pageFromChan.posts != null ? pageFromChan.posts.length :
                         (pageFromChan.threads != null ? pageFromChan.threads.length : 0);
-            pageLoader = new PageLoaderFromChan(pageFromChan, new PageLoaderCallback() {
+            pageLoader = new PageLoaderFromChan(pageFromChan, new PageLoaderStreamCallback() {
+                /** модель, показанная до завершения загрузки (по первым полученным постам) */
+                private PresentationModel streamedModel = null;
+                
+                @Override
+                public void onPostsParsed() {
+                    if (isCancelled()) return;
+                    if (streamedModel == null) {
+                        presentationModel = streamedModel = newPresentationModel(pageFromChan);
+                        presentationModel.updateViewModels(isThreadPage, PageGetter.this, null);
+                        if (isCancelled()) return;
+                        streaming = true;
+                        toListView(false);
+                    } else {
+                        streamedModel.updateViewModels(isThreadPage, PageGetter.this, null);
+                        if (isCancelled()) return;
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (adapter != null) adapter.notifyDataSetChanged();
+                            }
+                        });
+                    }
+                }
+                
                 @Override
                 public void onSuccess() {
                     if (isCancelled()) return;
-                    if (fromScratch) {
+                    if (fromScratch && streamedModel != null && presentationModel == streamedModel) {
+                        //список уже показан, добавить оставшиеся посты
+                        presentationModel.updateViewModels(isThreadPage, PageGetter.this, null);
+                        presentationModel = new PresentationModel(presentationModel); //обновить immutable-значение size
+                        pagesCache.putPresentationModel(tabModel.hash, presentationModel, true);
+                        streaming = false;
+                        if (isCancelled()) return;
+                        if (startItem != null) {
+                            for (int i=0; i<presentationModel.presentationList.size(); ++i) {
+                                if (presentationModel.presentationList.get(i).sourceModel.number.equals(startItem)) {
+                                    startItemPosition = i;
+                                    break;
+                                }
+                            }
+                            startItem = null;
+                        }
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (adapter != null) adapter.notifyDataSetChanged();
+                                if (startItemPosition != -1) {
+                                    listView.setSelectionFromTop(startItemPosition, startItemTop);
+                                    startItemPosition = -1;
+                                }
+                            }
+                        });
+                    } else if (fromScratch) {
                         createPresentationModel(pageFromChan, false, true);
                     } else {
                         presentationModel.updateViewModels(isThreadPage, PageGetter.this, new PresentationModel.RebuildCallback() {
@@ -1152,6 +1205,7 @@ public class BoardFragment extends Fragment implements AdapterView.OnItemClickLi
                 }
                 @Override
                 public void onError(final String message) {
+                    streaming = false;
                     if (isCancelled()) return;
                     handler.post(new Runnable() {
                         @Override
@@ -1162,6 +1216,7 @@ public class BoardFragment extends Fragment implements AdapterView.OnItemClickLi
                 }
                 @Override
                 public void onInteractiveException(final InteractiveException e) {
+                    streaming = false;
                     if (isCancelled()) return;
                     if (silent && activity.isPaused()) {
                         setPullableNoRefreshing();
@@ -1184,7 +1239,16 @@ public class BoardFragment extends Fragment implements AdapterView.OnItemClickLi
          * @param putToFileCache положить соответствующую сериализованную модель SerializablePage в файловый кэш
          */
         private void createPresentationModel(SerializablePage serializablePage, boolean needUpdateAfter, boolean putToFileCache) {
-            presentationModel = new PresentationModel(
+            presentationModel = newPresentationModel(serializablePage);
+            presentationModel.updateViewModels(isThreadPage, PageGetter.this, null);
+            pagesCache.putPresentationModel(tabModel.hash, presentationModel, putToFileCache);
+            if (isCancelled()) return;
+            toListView(needUpdateAfter);
+        }
+        
+        /** Создаёт (не построенную) {@link PresentationModel} для страницы с текущими настройками */
+        private PresentationModel newPresentationModel(SerializablePage serializablePage) {
+            return new PresentationModel(
                     serializablePage,
                     settings.isLocalTime(),
                     settings.isReduceNames(),
@@ -1192,10 +1256,6 @@ public class BoardFragment extends Fragment implements AdapterView.OnItemClickLi
                     imageGetter,
                     activity.getTheme(),
                     pageType == TYPE_THREADSLIST ? null : floatingModels);
-            presentationModel.updateViewModels(isThreadPage, PageGetter.this, null);
-            pagesCache.putPresentationModel(tabModel.hash, presentationModel, putToFileCache);
-            if (isCancelled()) return;
-            toListView(needUpdateAfter);
         }
         
         private volatile boolean nullAdapterFlag;
@@ -1250,7 +1310,7 @@ public class BoardFragment extends Fragment implements AdapterView.OnItemClickLi
             handler.post(new Runnable() {
                 @Override
                 public void run() {
-                    if (presentationModel == null || presentationModel.isNotReady())
+                    if (presentationModel == null || (presentationModel.isNotReady() && !streaming))
                         Toast.makeText(activity, R.string.error_unknown, Toast.LENGTH_LONG).show();
                     
                     listView.setAdapter(adapter);
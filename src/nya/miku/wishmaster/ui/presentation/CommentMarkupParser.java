@@ -0,0 +1,474 @@
+/*
+ * Overchan Android (Meta Imageboard Client)
+ * Copyright (C) 2014-2015  miku-nyan <https://github.com/miku-nyan>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nya.miku.wishmaster.ui.presentation;
+
+import org.ccil.cowan.tagsoup.Schema;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Быстрый разбор разметки комментариев (небольшое подмножество HTML: ссылки, переносы строк, span, b, i, code, blockquote,
+ * &lt;aibquote&gt; и &lt;aibspoiler&gt; и т.п.) за один проход, без построения дерева и без лишних объектов.<br>
+ * Обработчику передаётся та же последовательность событий SAX, что и при разборе TagSoup
+ * (с учётом только тех атрибутов, которые используются при построении Spanned-строки).
+ * Если строка содержит что-либо, обработка чего в TagSoup сложнее простого вложения элементов
+ * (неизвестные тэги, комментарии, неправильная вложенность, редкие сущности и т.д.), метод {@link #parse(String, ContentHandler)}
+ * возвращает false, ничего не передав обработчику, и строку нужно разобрать с помощью TagSoup.<br>
+ * Объект не потокобезопасен.
+ * @author miku-nyan
+ *
+ */
+class CommentMarkupParser {
+    private static final String XHTML = "http://www.w3.org/1999/xhtml";
+    private static final String CDATA = "CDATA";
+
+    /** максимальная глубина вложенности элементов */
+    private static final int MAX_DEPTH = 32;
+    /** буфер большего размера не сохраняется между вызовами */
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+
+    private static final int TYPE_VOID = 0;
+    private static final int TYPE_PARAGRAPH = 1;
+    private static final int TYPE_BLOCK = 2;
+    private static final int TYPE_INLINE = 3;
+    private static final int TYPE_ANCHOR = 4;
+    private static final int TYPE_CUSTOM = 5;
+
+    private static final String[] NAMES = {
+        "br", "p", "div", "blockquote", "a", "b", "i", "em", "strong", "s", "u", "span", "code",
+        "sub", "sup", "del", "strike", "small", "big", "tt", "font", "aibquote", "aibspoiler"
+    };
+    private static final int[] TYPES = {
+        TYPE_VOID, TYPE_PARAGRAPH, TYPE_BLOCK, TYPE_BLOCK, TYPE_ANCHOR, TYPE_INLINE, TYPE_INLINE, TYPE_INLINE, TYPE_INLINE,
+        TYPE_INLINE, TYPE_INLINE, TYPE_INLINE, TYPE_INLINE, TYPE_INLINE, TYPE_INLINE, TYPE_INLINE, TYPE_INLINE, TYPE_INLINE,
+        TYPE_INLINE, TYPE_INLINE, TYPE_INLINE, TYPE_CUSTOM, TYPE_CUSTOM
+    };
+    private static final int ELEMENT_BR = 0;
+    private static final int ELEMENT_DEL = 15;
+
+    /** атрибуты, значения которых используются при построении строки (остальные только проверяются) */
+    private static final String ATTR_HREF = "href";
+    private static final String ATTR_CLASS = "class";
+    private static final String ATTR_STYLE = "style";
+    private static final String ATTR_COLOR = "color";
+    private static final String ATTR_FACE = "face";
+
+    private final Schema schema;
+    private final AttributesImpl attributes = new AttributesImpl();
+    private final AttributesImpl noAttributes = new AttributesImpl();
+    private final int[] stack = new int[MAX_DEPTH];
+    private char[] buf = new char[1024];
+    private char[] text = new char[256];
+    private int length;
+
+    //состояние текущего прохода
+    private ContentHandler handler;
+    private int pos;
+    private int depth;
+    private int inlineDepth;
+    private int paragraphDepth;
+    private int anchorDepth;
+    private boolean started;
+    private int textLength;
+
+    /**
+     * Конструктор
+     * @param schema схема TagSoup (используется для поиска именованных сущностей)
+     */
+    public CommentMarkupParser(Schema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Разобрать строку
+     * @param source исходная строка (может принимать null)
+     * @param handler обработчик событий SAX
+     * @return true, если строка разобрана, false, если разметка не поддерживается (в этом случае обработчик не вызывался)
+     */
+    public boolean parse(String source, ContentHandler handler) throws SAXException {
+        length = source == null ? 0 : source.length();
+        if (buf.length < length) buf = new char[Math.max(length, buf.length * 2)];
+        if (length > 0) source.getChars(0, length, buf, 0);
+        try {
+            //первый проход только проверяет разметку, чтобы при неудаче обработчик не получил часть событий
+            if (!run(null)) return false;
+            run(handler);
+            return true;
+        } finally {
+            this.handler = null;
+            attributes.clear();
+            if (buf.length > MAX_RETAINED_BUFFER) buf = new char[1024];
+            if (text.length > MAX_RETAINED_BUFFER) text = new char[256];
+        }
+    }
+
+    private boolean run(ContentHandler handler) throws SAXException {
+        this.handler = handler;
+        pos = 0;
+        depth = 0;
+        inlineDepth = 0;
+        paragraphDepth = 0;
+        anchorDepth = 0;
+        started = false;
+        if (handler != null) {
+            handler.startDocument();
+            handler.startPrefixMapping("html", XHTML);
+        }
+        while (pos < length) {
+            if (buf[pos] == '<') {
+                if (!readTag()) return false;
+            } else {
+                if (!readText()) return false;
+            }
+        }
+        if (handler != null) {
+            startBody();
+            while (depth > 0) handler.endElement(XHTML, NAMES[stack[--depth]], NAMES[stack[depth]]);
+            handler.endElement(XHTML, "body", "body");
+            handler.endElement(XHTML, "html", "html");
+            handler.endPrefixMapping("html");
+            handler.endDocument();
+        }
+        return true;
+    }
+
+    /** открыть элементы html и body (перед первым элементом или непробельным текстом) */
+    private void startBody() throws SAXException {
+        if (started) return;
+        started = true;
+        if (handler != null) {
+            handler.startElement(XHTML, "html", "html", noAttributes);
+            handler.startElement(XHTML, "body", "body", noAttributes);
+        }
+    }
+
+    private boolean readText() throws SAXException {
+        char[] buf = this.buf;
+        int start = pos;
+        int end = start;
+        boolean entities = false;
+        boolean whitespace = true;
+        for (; end < length; ++end) {
+            char ch = buf[end];
+            if (ch == '<') break;
+            if (ch < ' ') {
+                if (ch != '\n' && ch != '\t') return false;
+            } else if (ch == '&') {
+                entities = true;
+                whitespace = false;
+            } else if (ch != ' ') {
+                whitespace = false;
+            }
+        }
+        pos = end;
+        if (!started) {
+            //пробельные символы до первого элемента TagSoup пропускает (в том числе перед сущностью в начале текста)
+            if (whitespace) return true;
+            int i = start;
+            while (isWhitespace(buf[i])) ++i;
+            if (buf[i] == '&') start = i;
+            startBody();
+        }
+        if (!entities) {
+            if (handler != null) handler.characters(buf, start, end - start);
+            return true;
+        }
+        textLength = 0;
+        if (!decode(start, end)) return false;
+        if (handler != null) handler.characters(text, 0, textLength);
+        return true;
+    }
+
+    /** раскрыть сущности в буфере text (начиная с позиции textLength), false, если сущность не поддерживается */
+    private boolean decode(int start, int end) {
+        char[] buf = this.buf;
+        if (text.length < textLength + end - start) {
+            char[] newText = new char[Math.max(textLength + end - start, text.length * 2)];
+            System.arraycopy(text, 0, newText, 0, textLength);
+            text = newText;
+        }
+        char[] text = this.text;
+        int len = textLength;
+        int i = start;
+        while (i < end) {
+            char ch = buf[i];
+            if (ch != '&') {
+                text[len++] = ch;
+                ++i;
+                continue;
+            }
+            int nameStart = i + 1;
+            if (nameStart < end && buf[nameStart] == '#') {
+                int code = 0;
+                int radix = 10;
+                int j = nameStart + 1;
+                if (j < end && (buf[j] == 'x' || buf[j] == 'X')) {
+                    radix = 16;
+                    ++j;
+                }
+                int digitsStart = j;
+                for (; j < end; ++j) {
+                    int digit = Character.digit(buf[j], radix);
+                    if (digit < 0 || buf[j] > 'f') break;
+                    code = code * radix + digit;
+                    if (code > 0xFFFF) return false;
+                }
+                if (j == digitsStart || j >= end || buf[j] != ';') return false;
+                if (code == 0 || (code >= 0x80 && code < 0xA0) || (code >= 0xD800 && code < 0xE000)) return false;
+                text[len++] = (char) code;
+                i = j + 1;
+                continue;
+            }
+            int j = nameStart;
+            while (j < end && isNameChar(buf[j])) ++j;
+            int code = j == nameStart ? 0 : getEntity(nameStart, j);
+            if (code == 0) {
+                //не сущность: TagSoup оставляет символы как есть
+                text[len++] = '&';
+                ++i;
+                continue;
+            }
+            if (code < 0 || code > 0xFFFF || j >= end || buf[j] != ';') return false;
+            text[len++] = (char) code;
+            i = j + 1;
+        }
+        textLength = len;
+        return true;
+    }
+
+    private int getEntity(int start, int end) {
+        switch (end - start) {
+            case 2:
+                if (buf[start + 1] == 't') {
+                    if (buf[start] == 'g') return '>';
+                    if (buf[start] == 'l') return '<';
+                }
+                break;
+            case 3:
+                if (buf[start] == 'a' && buf[start + 1] == 'm' && buf[start + 2] == 'p') return '&';
+                break;
+        }
+        return schema.getEntity(new String(buf, start, end - start));
+    }
+
+    private boolean readTag() throws SAXException {
+        char[] buf = this.buf;
+        int i = pos + 1;
+        if (i >= length) return false;
+        boolean endTag = buf[i] == '/';
+        if (endTag) ++i;
+        int nameStart = i;
+        while (i < length && isNameChar(buf[i])) ++i;
+        if (i == nameStart || !isLetter(buf[nameStart])) return false;
+        int element = findElement(nameStart, i);
+        if (element == -1) return false;
+
+        if (endTag) {
+            //</br> TagSoup обрабатывает по-разному в зависимости от предшествующего <br>
+            if (element == ELEMENT_BR) return false;
+            while (i < length && isWhitespace(buf[i])) ++i;
+            if (i >= length || buf[i] != '>') return false;
+            pos = i + 1;
+            return endElement(element);
+        }
+
+        boolean known = TYPES[element] != TYPE_CUSTOM;
+        attributes.clear();
+        boolean selfClosing = false;
+        while (true) {
+            if (i >= length) return false;
+            char ch = buf[i];
+            if (ch == '>') {
+                ++i;
+                break;
+            }
+            if (ch == '/') {
+                if (i + 1 >= length || buf[i + 1] != '>') return false;
+                selfClosing = true;
+                i += 2;
+                break;
+            }
+            if (!isWhitespace(ch)) return false;
+            while (i < length && isWhitespace(buf[i])) ++i;
+            if (i >= length || !isLetter(buf[i])) continue;
+            i = readAttribute(i, known);
+            if (i == -1) return false;
+        }
+        pos = i;
+        if (!startElement(element)) return false;
+        if (selfClosing || element == ELEMENT_BR) return endElement(element);
+        return true;
+    }
+
+    /** разобрать атрибут name="value", возвращает позицию после атрибута или -1, если атрибут не поддерживается */
+    private int readAttribute(int i, boolean known) {
+        char[] buf = this.buf;
+        int nameStart = i;
+        while (i < length && (isNameChar(buf[i]) || buf[i] == '-' || buf[i] == '_')) ++i;
+        int nameEnd = i;
+        if (i + 1 >= length || buf[i] != '=') return -1;
+        char quote = buf[++i];
+        if (quote != '"' && quote != '\'') return -1;
+        int valueStart = ++i;
+        boolean entities = false;
+        for (; i < length; ++i) {
+            char ch = buf[i];
+            if (ch == quote) break;
+            if (ch < ' ' || ch == '<' || ch == '>') return -1;
+            if (ch == '&') entities = true;
+        }
+        if (i >= length) return -1;
+        int valueEnd = i++;
+        if (i < length && buf[i] != '>' && buf[i] != '/' && !isWhitespace(buf[i])) return -1;
+
+        String name = getAttributeName(nameStart, nameEnd);
+        if (name == null || !known) return i;
+        if (attributes.getIndex(name) != -1) return -1;
+        textLength = 0;
+        if (entities) {
+            if (!decode(valueStart, valueEnd)) return -1;
+        } else if (handler == null) {
+            //при проверке значения не нужны
+            attributes.addAttribute("", name, name, CDATA, null);
+            return i;
+        } else {
+            if (text.length < valueEnd - valueStart) text = new char[Math.max(valueEnd - valueStart, text.length * 2)];
+            System.arraycopy(buf, valueStart, text, 0, valueEnd - valueStart);
+            textLength = valueEnd - valueStart;
+        }
+        String value;
+        if (name == ATTR_CLASS) {
+            //значения атрибутов class TagSoup нормализует (как NMTOKENS)
+            value = normalize(text, textLength);
+        } else {
+            value = new String(text, 0, textLength);
+        }
+        attributes.addAttribute("", name, name, CDATA, value);
+        return i;
+    }
+
+    private String getAttributeName(int start, int end) {
+        switch (end - start) {
+            case 4:
+                if (equalsIgnoreCase(start, ATTR_HREF)) return ATTR_HREF;
+                if (equalsIgnoreCase(start, ATTR_FACE)) return ATTR_FACE;
+                break;
+            case 5:
+                if (equalsIgnoreCase(start, ATTR_CLASS)) return ATTR_CLASS;
+                if (equalsIgnoreCase(start, ATTR_STYLE)) return ATTR_STYLE;
+                if (equalsIgnoreCase(start, ATTR_COLOR)) return ATTR_COLOR;
+                break;
+        }
+        return null;
+    }
+
+    private static String normalize(char[] value, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i=0; i<length; ++i) {
+            char ch = value[i];
+            if (isWhitespace(ch)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') sb.append(' ');
+            } else {
+                sb.append(ch);
+            }
+        }
+        int len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == ' ') sb.setLength(len - 1);
+        return sb.toString();
+    }
+
+    private boolean startElement(int element) throws SAXException {
+        int type = TYPES[element];
+        //<del> внутри ссылки TagSoup закрывает ссылку
+        if (element == ELEMENT_DEL && anchorDepth > 0) return false;
+        switch (type) {
+            case TYPE_PARAGRAPH:
+            case TYPE_BLOCK:
+                //блочный элемент внутри строчного или абзаца TagSoup перестраивает
+                if (inlineDepth > 0 || paragraphDepth > 0) return false;
+                break;
+            case TYPE_ANCHOR:
+                if (anchorDepth > 0) return false;
+                break;
+            case TYPE_CUSTOM:
+                //неизвестный элемент в начале документа TagSoup делает корневым
+                if (!started) return false;
+                break;
+        }
+        if (element != ELEMENT_BR) {
+            if (depth == MAX_DEPTH) return false;
+            stack[depth++] = element;
+            if (type == TYPE_PARAGRAPH) ++paragraphDepth;
+            else if (type == TYPE_INLINE) ++inlineDepth;
+            else if (type == TYPE_ANCHOR) {
+                ++inlineDepth;
+                ++anchorDepth;
+            }
+        }
+        startBody();
+        if (handler != null) handler.startElement(XHTML, NAMES[element], NAMES[element], attributes);
+        return true;
+    }
+
+    private boolean endElement(int element) throws SAXException {
+        if (element != ELEMENT_BR) {
+            //закрывающий тэг без открывающего или с неправильной вложенностью
+            if (depth == 0 || stack[depth - 1] != element) return false;
+            --depth;
+            int type = TYPES[element];
+            if (type == TYPE_PARAGRAPH) --paragraphDepth;
+            else if (type == TYPE_INLINE) --inlineDepth;
+            else if (type == TYPE_ANCHOR) {
+                --inlineDepth;
+                --anchorDepth;
+            }
+        }
+        if (handler != null) handler.endElement(XHTML, NAMES[element], NAMES[element]);
+        return true;
+    }
+
+    private int findElement(int start, int end) {
+        int len = end - start;
+        for (int i=0; i<NAMES.length; ++i) {
+            if (NAMES[i].length() == len && equalsIgnoreCase(start, NAMES[i])) return i;
+        }
+        return -1;
+    }
+
+    /** сравнение символов буфера (латинские буквы и цифры) со строкой в нижнем регистре */
+    private boolean equalsIgnoreCase(int start, String lowerCase) {
+        for (int i=0; i<lowerCase.length(); ++i) {
+            if ((buf[start + i] | 0x20) != lowerCase.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isLetter(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+
+    private static boolean isNameChar(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9');
+    }
+
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\n' || ch == '\t';
+    }
+}
@@ -119,6 +119,31 @@ public class FlowTextHelper {
             this.textFullWidth = textFullWidth;
             this.textPaint = textPaint;
         }
+        
+        /**
+         * Получить ширину textview, для которой была измерена модель
+         */
+        public int getTextFullWidth() {
+            return textFullWidth;
+        }
+        
+        /**
+         * Проверить, что при одинаковой ширине текста обтекание по этой модели и по другой будет одинаковым
+         * (совпадают размеры обтекаемого объекта и параметры кисти, влияющие на размеры текста).
+         * Модели, измеренные заново (например, после поворота экрана), считаются одинаковыми, если ничего не изменилось.
+         * @param other другая модель обтекания
+         */
+        public boolean hasSameMetrics(FloatingModel other) {
+            if (other == this) return true;
+            if (other == null || other.width != width || other.height != height) return false;
+            if (other.textPaint == textPaint) return true;
+            return other.textPaint.getTextSize() == textPaint.getTextSize() &&
+                    other.textPaint.getTextScaleX() == textPaint.getTextScaleX() &&
+                    other.textPaint.getTextSkewX() == textPaint.getTextSkewX() &&
+                    other.textPaint.getFlags() == textPaint.getFlags() &&
+                    (other.textPaint.getTypeface() == null ?
+                            textPaint.getTypeface() == null : other.textPaint.getTypeface().equals(textPaint.getTypeface()));
+        }
     }
     
     /**
@@ -57,8 +57,9 @@ import android.text.style.TypefaceSpan;
 import android.text.style.URLSpan;
 import android.text.style.UnderlineSpan;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -141,6 +142,98 @@ public class HtmlParser {
     private static class HtmlParserHolder {
         private static final HTMLSchema schema = new HTMLSchema();
     }
+    
+    /**
+     * Парсеры TagSoup, используемые повторно в пределах одного потока (создание парсера для каждого поста
+     * обходится дороже разбора короткого комментария). Parser сбрасывает своё состояние в начале каждого разбора.
+     */
+    private static final ThreadLocal<PooledParser> PARSERS = new ThreadLocal<PooledParser>() {
+        @Override
+        protected PooledParser initialValue() {
+            return new PooledParser();
+        }
+    };
+    
+    private static class PooledParser {
+        private final CommentMarkupParser markupParser = new CommentMarkupParser(HtmlParserHolder.schema);
+        private final Parser parser = new Parser();
+        private final SourceReader source = new SourceReader();
+        private final BufferedReader reader = new BufferedReader(source);
+        private boolean inUse = false;
+        
+        public PooledParser() {
+            try {
+                parser.setProperty(Parser.schemaProperty, HtmlParserHolder.schema);
+            } catch (org.xml.sax.SAXNotRecognizedException e) {
+                // Should not happen.
+                throw new RuntimeException(e);
+            } catch (org.xml.sax.SAXNotSupportedException e) {
+                // Should not happen.
+                throw new RuntimeException(e);
+            }
+        }
+        
+        /** освободить парсер после разбора, не сохраняя ссылок на обработчик и исходный текст */
+        public void release() {
+            parser.setContentHandler(null);
+            source.setSource(null);
+            try {
+                //если разбор был прерван, отбросить оставшиеся в буфере символы старой строки
+                reader.skip(Long.MAX_VALUE);
+            } catch (IOException e) {
+                // Should not happen.
+            }
+            inUse = false;
+        }
+    }
+    
+    /**
+     * Чтение исходной строки, которую можно заменять для повторного использования объекта.<br>
+     * Сканер TagSoup оборачивает в новый BufferedReader любой Reader, не являющийся BufferedReader,
+     * поэтому парсеру передаётся BufferedReader, созданный поверх этого объекта один раз для {@link PooledParser}
+     * (после конца строки BufferedReader продолжает читать из этого объекта, т.е. уже из новой строки).
+     */
+    private static class SourceReader extends Reader {
+        private String source;
+        private int pos;
+        private int length;
+        
+        public void setSource(String source) {
+            this.source = source;
+            this.pos = 0;
+            this.length = source == null ? 0 : source.length();
+        }
+        
+        @Override
+        public int read() {
+            return pos < length ? source.charAt(pos++) : -1;
+        }
+        
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            if (count == 0) return 0;
+            if (pos >= length) return -1;
+            int n = Math.min(count, length - pos);
+            source.getChars(pos, pos + n, buffer, offset);
+            pos += n;
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.min(Math.max(n, 0), length - pos);
+            pos += skipped;
+            return skipped;
+        }
+        
+        @Override
+        public boolean ready() {
+            return true;
+        }
+        
+        @Override
+        public void close() {}
+    }
 
     /**
      * Returns displayable styled text from the provided HTML string.
@@ -150,21 +243,20 @@ public class HtmlParser {
      * (specify null if you don't want this).
      *
      * <p>This uses TagSoup to handle real HTML, including all of the brokenness found in the wild.
+     * Обычная разметка комментариев разбирается без TagSoup ({@link CommentMarkupParser}), с тем же результатом.
      */
     private static SpannableStringBuilder fromHtml(String subject, String source, ThemeColors colors, ImageGetter imageGetter, boolean openSpoilers) {
-        Parser parser = new Parser();
+        PooledParser pooled = PARSERS.get();
+        if (pooled.inUse) pooled = new PooledParser(); //повторный вход (из обработчика во время разбора)
+        pooled.inUse = true;
         try {
-            parser.setProperty(Parser.schemaProperty, HtmlParserHolder.schema);
-        } catch (org.xml.sax.SAXNotRecognizedException e) {
-            // Should not happen.
-            throw new RuntimeException(e);
-        } catch (org.xml.sax.SAXNotSupportedException e) {
-            // Should not happen.
-            throw new RuntimeException(e);
+            HtmlToSpannedConverter converter = new HtmlToSpannedConverter(subject, colors, imageGetter, openSpoilers);
+            if (converter.convert(pooled.markupParser, source)) return converter.finish();
+            pooled.source.setSource(source);
+            return converter.convert(pooled.parser, new InputSource(pooled.reader));
+        } finally {
+            pooled.release();
         }
-
-        HtmlToSpannedConverter converter = new HtmlToSpannedConverter(subject, source, colors, imageGetter, openSpoilers, parser);
-        return converter.convert();
     }
 
 }
@@ -178,8 +270,6 @@ class HtmlToSpannedConverter implements ContentHandler {
     private static final Pattern CSS_STYLE_COLOR_RGB_PATTERN = Pattern.compile(".*?color: ?rgb\\((\\d+), ?(\\d+), ?(\\d+)\\).*");
     private static final Pattern CSS_STYLE_COLOR_COMMON_PATTERN = Pattern.compile(".*?color: ?(#?\\w+).*");
 
-    private String mSource;
-    private XMLReader mReader;
     private SpannableStringBuilder mSpannableStringBuilder;
     //костыли для правильной обработки (обрезки) <p>...</p> в начале и в конце
     private int mStartLength = 0; //длина subject + '\n'
@@ -189,9 +279,7 @@ class HtmlToSpannedConverter implements ContentHandler {
     private boolean mOpenSpoilers;
     private HtmlParser.ImageGetter mImageGetter;
     
-    public HtmlToSpannedConverter(String subject, String source, ThemeColors colors, HtmlParser.ImageGetter imageGetter, boolean openSpoilers,
-            Parser parser) {
-        mSource = source;
+    public HtmlToSpannedConverter(String subject, ThemeColors colors, HtmlParser.ImageGetter imageGetter, boolean openSpoilers) {
         mSpannableStringBuilder = new SpannableStringBuilder();
         if (!TextUtils.isEmpty(subject)) {
             mSpannableStringBuilder.append(subject);
@@ -207,13 +295,12 @@ class HtmlToSpannedConverter implements ContentHandler {
         mColors = colors;
         mOpenSpoilers = openSpoilers;
         mImageGetter = imageGetter;
-        mReader = parser;
     }
 
-    public SpannableStringBuilder convert() {
-        mReader.setContentHandler(this);
+    public SpannableStringBuilder convert(XMLReader reader, InputSource source) {
+        reader.setContentHandler(this);
         try {
-            mReader.parse(new InputSource(new StringReader(mSource)));
+            reader.parse(source);
         } catch (IOException e) {
             // We are reading from a string. There should not be IO problems.
             throw new RuntimeException(e);
@@ -221,7 +308,25 @@ class HtmlToSpannedConverter implements ContentHandler {
             // TagSoup doesn't throw parse exceptions.
             throw new RuntimeException(e);
         }
-
+        return finish();
+    }
+    
+    /**
+     * Разобрать строку быстрым парсером разметки комментариев
+     * @return true, если строка разобрана (результат нужно получить методом {@link #finish()}),
+     * false, если разметка не поддерживается (построение строки не начато, нужно использовать {@link #convert(XMLReader, InputSource)})
+     */
+    public boolean convert(CommentMarkupParser parser, String source) {
+        try {
+            return parser.parse(source, this);
+        } catch (SAXException e) {
+            // The handler doesn't throw exceptions.
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /** завершить построение строки после разбора */
+    public SpannableStringBuilder finish() {
         // Fix flags and range for paragraph-type markup.
         Object[] obj = mSpannableStringBuilder.getSpans(0, mSpannableStringBuilder.length(), ParagraphStyle.class);
         for (int i = 0; i < obj.length; i++) {
@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -56,6 +57,12 @@ public class PresentationItemModel {
     
     public static final String ALL_REFERENCES_URI = "references://all?from=";
     
+    /** максимальное количество строк с обтеканием для нестандартной ширины, хранимых в одном элементе
+     *  (их размер добавляется к размеру {@link PresentationModel}, см. {@link PresentationModel#getFullSize()}) */
+    private static final int FLOW_CACHE_SIZE = 2;
+    /** поколение кэшей строк с обтеканием, увеличивается при сбросе всех кэшей (см. {@link #invalidateFlowCaches()}) */
+    private static final AtomicInteger flowCacheGeneration = new AtomicInteger();
+    
     private Resources resources = MainApplication.getInstance().resources;
     private URLSpanClickListener spanClickListener;
     private ImageGetter imageGetter;
@@ -66,6 +73,12 @@ public class PresentationItemModel {
     private ChanModule chanModule;
     private String boardName;
     private String threadNumber;
+    /** строки с обтеканием для нестандартной ширины, от последней использованной к первой (создаётся при первом обращении) */
+    private FlowCacheEntry[] flowCache = null;
+    /** примерный размер {@link #flowCache} в байтах */
+    private int flowCacheBytes = 0;
+    /** учёт размера строк с обтеканием в модели страницы, которой принадлежит элемент (может быть null) */
+    private PresentationModel.FlowCacheSize flowCacheSize = null;
     
     /** Исходная модель поста */
     public PostModel sourceModel;
@@ -186,16 +199,102 @@ public class PresentationItemModel {
             return new SpannedCommentContainer(spannedComment, false);
         }
         
-        boolean flow;
+        int attachmentType = sourceModel.attachments[0].type;
+        int modelIndex = (attachmentType == AttachmentModel.TYPE_IMAGE_STATIC || attachmentType == AttachmentModel.TYPE_OTHER_NOTFILE) ? 0 : 1;
+        FloatingModel floatingModel = floatingModels[modelIndex];
+        if (this.floatingModels != null && this.floatingModels[modelIndex].getTextFullWidth() == textFullWidth &&
+                this.floatingModels[modelIndex].hasSameMetrics(floatingModel)) {
+            return new SpannedCommentContainer(spannedComment, floating);
+        }
+        
+        //поколение запоминается до построения строки, чтобы сброс во время построения не оставил устаревшую запись
+        int generation = flowCacheGeneration.get();
+        SpannedCommentContainer cached = getFlowCache(textFullWidth, floatingModel, generation);
+        if (cached != null) return cached;
         SpannableStringBuilder builder =
                 HtmlParser.createSpanned(sourceModel.subject, sourceModel.comment, spanClickListener, imageGetter, themeColors, openSpoilers);
-        int attachmentType = sourceModel.attachments[0].type;
-        if (attachmentType == AttachmentModel.TYPE_IMAGE_STATIC || attachmentType == AttachmentModel.TYPE_OTHER_NOTFILE) {
-            flow = FlowTextHelper.flowText(builder, floatingModels[0], textFullWidth);
-        } else {
-            flow = FlowTextHelper.flowText(builder, floatingModels[1], textFullWidth);
+        boolean flow = FlowTextHelper.flowText(builder, floatingModel, textFullWidth);
+        SpannedCommentContainer container = new SpannedCommentContainer(builder, flow);
+        PresentationModel.FlowCacheSize sizeCounter = putFlowCache(textFullWidth, floatingModel, generation, container);
+        if (sizeCounter != null) sizeCounter.notifyChanged();
+        return container;
+    }
+    
+    private synchronized SpannedCommentContainer getFlowCache(int textFullWidth, FloatingModel floatingModel, int generation) {
+        if (flowCache == null) return null;
+        for (int i=0; i<flowCache.length; ++i) {
+            FlowCacheEntry entry = flowCache[i];
+            if (entry == null) break;
+            if (entry.generation != generation) {
+                //записи упорядочены по времени использования, все следующие записи тоже устарели
+                for (int j=i; j<flowCache.length && flowCache[j] != null; ++j) {
+                    addFlowCacheBytes(-flowCache[j].size);
+                    flowCache[j] = null;
+                }
+                break;
+            }
+            if (entry.textFullWidth == textFullWidth && entry.floatingModel.hasSameMetrics(floatingModel)) {
+                System.arraycopy(flowCache, 0, flowCache, 1, i);
+                flowCache[0] = entry;
+                return entry.container;
+            }
+        }
+        return null;
+    }
+    
+    /** добавить запись, возвращает объект учёта размера, который нужно уведомить об изменении (или null) */
+    private synchronized PresentationModel.FlowCacheSize putFlowCache(int textFullWidth, FloatingModel floatingModel, int generation,
+            SpannedCommentContainer container) {
+        if (flowCache == null) {
+            flowCache = new FlowCacheEntry[FLOW_CACHE_SIZE];
+            addFlowCacheBytes(12 + (FLOW_CACHE_SIZE * 4));
+        }
+        FlowCacheEntry removed = flowCache[flowCache.length - 1];
+        if (removed != null) addFlowCacheBytes(-removed.size);
+        System.arraycopy(flowCache, 0, flowCache, 1, flowCache.length - 1);
+        flowCache[0] = new FlowCacheEntry(textFullWidth, floatingModel, generation, container);
+        addFlowCacheBytes(flowCache[0].size);
+        return flowCacheSize;
+    }
+    
+    private void addFlowCacheBytes(int delta) {
+        flowCacheBytes += delta;
+        if (flowCacheSize != null) flowCacheSize.add(delta);
+    }
+    
+    /**
+     * Задать объект учёта размера строк с обтеканием модели страницы, которой принадлежит элемент
+     * (вызывается моделью страницы; при передаче null размер уже созданных строк вычитается из прежнего объекта)
+     */
+    synchronized void setFlowCacheSize(PresentationModel.FlowCacheSize flowCacheSize) {
+        if (this.flowCacheSize != null) this.flowCacheSize.add(-flowCacheBytes);
+        this.flowCacheSize = flowCacheSize;
+        if (flowCacheSize != null) flowCacheSize.add(flowCacheBytes);
+    }
+    
+    /**
+     * Сбросить кэши строк с обтеканием для нестандартной ширины во всех элементах (записи старого поколения больше не используются).
+     * Вызывать при смене темы или других параметров отображения.
+     */
+    public static void invalidateFlowCaches() {
+        flowCacheGeneration.incrementAndGet();
+    }
+    
+    private static class FlowCacheEntry {
+        private final int textFullWidth;
+        private final FloatingModel floatingModel;
+        private final int generation;
+        private final SpannedCommentContainer container;
+        /** примерный размер записи в памяти в байтах */
+        private final int size;
+        
+        public FlowCacheEntry(int textFullWidth, FloatingModel floatingModel, int generation, SpannedCommentContainer container) {
+            this.textFullWidth = textFullWidth;
+            this.floatingModel = floatingModel;
+            this.generation = generation;
+            this.container = container;
+            this.size = 64 + (container.spanned.length() * 2);
         }
-        return new SpannedCommentContainer(builder, flow);
     }
     
     private void tryFlow(FloatingModel[] floatingModels) {
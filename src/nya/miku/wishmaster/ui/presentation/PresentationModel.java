@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.tuple.Triple;
 
@@ -72,10 +73,16 @@ public class PresentationModel {
      * Примерный размер данного объекта в памяти в байтах.
      * Неизменяемый параметр, измеряется один раз - при создании объекта.
      * После обновления страницы, перед помещением в LRU кэш необходимь создать новый объект,
-     * с помощью конструктора {@link #PresentationModel(PresentationModel)}
+     * с помощью конструктора {@link #PresentationModel(PresentationModel)}.
+     * Строки с обтеканием, которые элементы создают позже, учитываются отдельно (см. {@link #getFullSize()})
      */
     public final int size;
     
+    /** размер строк с обтеканием, хранимых в элементах {@link #presentationList} (общий для копий модели) */
+    private final FlowCacheSize flowCacheSize;
+    /** размер, учтённый в LRU-кэше (см. {@link #updateAccountedSize()}) */
+    private volatile int accountedSize;
+    
     /**
      * Список готовых к показу объектов для загрузки в адаптер.
      * Необходимо обновить (построить) данный список методом {@link #updateViewModels()} перед использованием,
@@ -134,6 +141,7 @@ public class PresentationModel {
         dateFormat.setTimeZone(localTime ? TimeZone.getDefault() : TimeZone.getTimeZone(source.boardModel.timeZoneId));
         this.dateFormat = dateFormat;
         this.size = getSerializablePageSize(source);
+        this.flowCacheSize = new FlowCacheSize();
     }
     
     /**
@@ -151,6 +159,7 @@ public class PresentationModel {
         isHiddenDelegate = model.isHiddenDelegate;
         autohideRules = model.autohideRules;
         size = getSerializablePageSize(source);
+        flowCacheSize = model.flowCacheSize;
         presentationList = model.presentationList;
         attachments = model.attachments;
         postNumbersMap = model.postNumbersMap;
@@ -161,6 +170,65 @@ public class PresentationModel {
         void onRebuild();
     }
     
+    /**
+     * Интерфейс уведомления об изменении полного размера модели ({@link #getFullSize()})
+     */
+    public interface SizeListener {
+        void onSizeChanged();
+    }
+    
+    /**
+     * Примерный полный размер данного объекта в памяти в байтах: {@link #size} и строки с обтеканием для нестандартной ширины,
+     * созданные элементами к этому моменту (размер увеличивается после помещения модели в кэш, см. {@link #setSizeListener(SizeListener)})
+     */
+    public int getFullSize() {
+        return size + flowCacheSize.get();
+    }
+    
+    /**
+     * Размер, учтённый в LRU-кэше. Не меняется, пока модель находится в кэше:
+     * перед изменением модель необходимо удалить из кэша и поместить обратно после вызова {@link #updateAccountedSize()}
+     */
+    public int getAccountedSize() {
+        return accountedSize;
+    }
+    
+    /** Зафиксировать текущий полный размер ({@link #getFullSize()}) как размер, учтённый в LRU-кэше */
+    public void updateAccountedSize() {
+        accountedSize = getFullSize();
+    }
+    
+    /**
+     * Задать объект, который будет уведомляться об изменении полного размера модели (и её копий, созданных конструктором
+     * {@link #PresentationModel(PresentationModel)}), когда элементы создают строки с обтеканием
+     * @param listener объект {@link SizeListener} (может принимать null)
+     */
+    public void setSizeListener(SizeListener listener) {
+        flowCacheSize.listener = listener;
+    }
+    
+    /**
+     * Учёт размера строк с обтеканием, хранимых в элементах модели
+     */
+    static class FlowCacheSize {
+        private final AtomicInteger bytes = new AtomicInteger();
+        private volatile SizeListener listener;
+        
+        int get() {
+            return bytes.get();
+        }
+        
+        void add(int delta) {
+            bytes.addAndGet(delta);
+        }
+        
+        /** уведомить об изменении размера (вызывается не под блокировкой элемента) */
+        void notifyChanged() {
+            SizeListener listener = this.listener;
+            if (listener != null) listener.onSizeChanged();
+        }
+    }
+    
     /**
      * Определение примерного размера данной страницы в памяти в байтах
      */
@@ -245,6 +313,7 @@ public class PresentationModel {
         
         if (rebuild) {
             if (rebuildCallback != null) rebuildCallback.onRebuild();
+            for (PresentationItemModel model : presentationList) model.setFlowCacheSize(null);
             presentationList.clear();
             postNumbersMap.clear();
             attachments.clear();
@@ -265,6 +334,7 @@ public class PresentationModel {
                     ThemeUtils.ThemeColors.getInstance(theme),
                     openSpoilers,
                     floatingModels);
+            model.setFlowCacheSize(flowCacheSize);
             postNumbersMap.put(posts[i].number, i);
             if (source.pageModel.type == UrlPageModel.TYPE_THREADPAGE) {
                 for (String ref : model.referencesTo) {
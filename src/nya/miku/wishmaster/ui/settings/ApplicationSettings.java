@@ -81,6 +81,10 @@ public class ApplicationSettings {
         return preferences.getBoolean(resources.getString(R.string.pref_key_download_thumbs), true);
     }
     
+    public boolean isSegmentedDownload() {
+        return preferences.getBoolean(resources.getString(R.string.pref_key_segmented_download), false);
+    }
+    
     public boolean isPopupLinks() {
         return true;
     }
@@ -23,9 +23,13 @@ import nya.miku.wishmaster.api.ChanModule;
 import nya.miku.wishmaster.common.CompatibilityImpl;
 import nya.miku.wishmaster.common.CurrentBuild;
 import nya.miku.wishmaster.common.MainApplication;
+import nya.miku.wishmaster.http.streamer.HttpStatistics;
+import nya.miku.wishmaster.http.streamer.HttpStreamer;
 import nya.miku.wishmaster.ui.BoardsListFragment;
 import nya.miku.wishmaster.ui.tabs.TabsTrackerService;
 import nya.miku.wishmaster.ui.tabs.UrlHandler;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Build;
@@ -115,6 +119,15 @@ public class PreferencesActivity extends PreferenceActivity {
             }
         });
         
+        getPreferenceManager().findPreference(getString(R.string.pref_key_about_http_statistics)).setOnPreferenceClickListener(
+                new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                showHttpStatistics();
+                return true;
+            }
+        });
+        
         getPreferenceManager().findPreference(getString(R.string.pref_key_autohide)).setOnPreferenceClickListener(
                 new Preference.OnPreferenceClickListener() {
             @Override
@@ -218,4 +231,34 @@ public class PreferencesActivity extends PreferenceActivity {
         ListPreference preference = (ListPreference) getPreferenceManager().findPreference(prefKey);
         preference.setSummary(preference.getEntry());
     }
+    
+    private void showHttpStatistics() {
+        final HttpStatistics statistics = HttpStreamer.getInstance().getStatistics();
+        final String text = statistics.dumpText();
+        if (text.length() == 0) {
+            Toast.makeText(this, R.string.pref_about_http_statistics_empty, Toast.LENGTH_LONG).show();
+            return;
+        }
+        new AlertDialog.Builder(this).
+                setTitle(R.string.pref_about_http_statistics_title).
+                setMessage(text).
+                setPositiveButton(R.string.menu_share, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                        shareIntent.setType("text/plain");
+                        shareIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.pref_about_http_statistics_title));
+                        shareIntent.putExtra(Intent.EXTRA_TEXT, text);
+                        startActivity(Intent.createChooser(shareIntent, getString(R.string.share_via)));
+                    }
+                }).
+                setNeutralButton(R.string.pref_about_http_statistics_reset, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        statistics.reset();
+                    }
+                }).
+                setNegativeButton(android.R.string.cancel, null).
+                show();
+    }
 }
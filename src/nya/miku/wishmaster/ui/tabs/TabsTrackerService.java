@@ -32,6 +32,8 @@ import nya.miku.wishmaster.common.Logger;
 import nya.miku.wishmaster.common.MainApplication;
 import nya.miku.wishmaster.common.PriorityThreadFactory;
 import nya.miku.wishmaster.http.cloudflare.InteractiveException;
+import nya.miku.wishmaster.http.streamer.HttpRequestModel;
+import nya.miku.wishmaster.http.streamer.HttpStreamer;
 import nya.miku.wishmaster.ui.MainActivity;
 import nya.miku.wishmaster.ui.presentation.BoardFragment;
 import nya.miku.wishmaster.ui.presentation.PresentationModel;
@@ -244,6 +246,7 @@ public class TabsTrackerService extends Service {
         
         @Override
         public void run() {
+            HttpStreamer.getInstance().setThreadTrafficClass(HttpRequestModel.TRAFFIC_BACKGROUND);
             while (true) {
                 if (isCancelled()) {
                     cancelForeground(TRACKER_NOTIFICATION_ID);